@@ -0,0 +1,124 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bitcoinj.core;
+
+import org.libdohj.benchmarks.Fixtures;
+import org.libdohj.core.AltcoinSerializer;
+import org.libdohj.params.DogecoinMainNetParams;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing and serializing Dogecoin blocks and headers, for a plain block
+ * (250,000) and a merge-mined one (371,337). Lives in org.bitcoinj.core to
+ * drop the serialization cache between runs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AltcoinBlockBenchmark {
+    @Param({"dogecoin_block250000.bin", "dogecoin_block371337.bin"})
+    public String fixture;
+
+    private final NetworkParameters params = DogecoinMainNetParams.get();
+    private MessageSerializer serializer;
+    private byte[] blockBytes;
+    /** Header as it appears in a headers message: header, AuxPoW if any, zero transactions. */
+    private byte[] headerBytes;
+    /** Merkleblock message matching the coinbase transaction. */
+    private byte[] merkleBlockBytes;
+    private AltcoinBlock block;
+    private AltcoinBlock header;
+    /** Header parsed with the payload retained, so it can be copied back out. */
+    private AltcoinBlock retainedHeader;
+    private final byte[] headerScratch = new byte[Block.HEADER_SIZE];
+
+    @Setup
+    public void setUp() {
+        Context.propagate(new Context(params));
+        serializer = params.getDefaultSerializer();
+        blockBytes = Fixtures.load("/org/bitcoinj/core/" + fixture);
+        block = (AltcoinBlock) serializer.makeBlock(blockBytes);
+
+        final int headerLength = Block.HEADER_SIZE
+            + (block.getAuxPoW() == null ? 0 : block.getAuxPoW().getMessageSize());
+        headerBytes = new byte[headerLength + 1];
+        System.arraycopy(blockBytes, 0, headerBytes, 0, headerLength);
+        header = (AltcoinBlock) serializer.makeBlock(headerBytes);
+        retainedHeader = (AltcoinBlock) new AltcoinSerializer(params, true).makeBlock(
+            Arrays.copyOf(headerBytes, headerBytes.length + 1), 0, headerBytes.length);
+
+        final List<Sha256Hash> txHashes = new ArrayList<>();
+        for (Transaction tx : block.getTransactions()) {
+            txHashes.add(tx.getTxId());
+        }
+        final byte[] pmtBytes = PartialMerkleTree.buildFromLeaves(params, new byte[] {1}, txHashes).bitcoinSerialize();
+        merkleBlockBytes = new byte[headerLength + pmtBytes.length];
+        System.arraycopy(blockBytes, 0, merkleBlockBytes, 0, headerLength);
+        System.arraycopy(pmtBytes, 0, merkleBlockBytes, headerLength, pmtBytes.length);
+    }
+
+    @Benchmark
+    public Block parseBlock() {
+        return serializer.makeBlock(blockBytes);
+    }
+
+    @Benchmark
+    public Block parseHeader() {
+        return serializer.makeBlock(headerBytes);
+    }
+
+    @Benchmark
+    public List<Sha256Hash> parseFilteredBlock() {
+        return serializer.makeFilteredBlock(merkleBlockBytes).getTransactionHashes();
+    }
+
+    @Benchmark
+    public byte[] encodeHeader() {
+        header.encodeHeader(headerScratch, 0);
+        return headerScratch;
+    }
+
+    @Benchmark
+    public byte[] serializeBlock() {
+        block.unCache();
+        return block.bitcoinSerialize();
+    }
+
+    @Benchmark
+    public byte[] serializeHeader() {
+        // The default serializer does not retain the payload, so this always
+        // serializes the header from its fields (unCache() would discard the
+        // merkle root, which a header cannot recalculate)
+        return header.bitcoinSerialize();
+    }
+
+    @Benchmark
+    public byte[] serializeRetainedHeader() {
+        return retainedHeader.bitcoinSerialize();
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bitcoinj.core;
+
+import org.libdohj.benchmarks.Fixtures;
+import org.libdohj.params.DogecoinMainNetParams;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AuxPoW checks on the header from Dogecoin block 403,931. Lives in
+ * org.bitcoinj.core as {@link AuxPoW#checkProofOfWork(Sha256Hash, BigInteger, boolean)}
+ * is protected.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AuxPoWBenchmark {
+    private static final Sha256Hash AUX_BLOCK_HASH
+        = Sha256Hash.wrap("0c836b86991631d34a8a68054e2f62db919b39d1ee43c27ab3344d6aa82fa609");
+    private static final BigInteger TARGET = Utils.decodeCompactBits(0x1b06f8f0);
+
+    private final NetworkParameters params = DogecoinMainNetParams.get();
+    private byte[] auxpowBytes;
+    private AuxPoW auxpow;
+
+    @Setup
+    public void setUp() {
+        Context.propagate(new Context(params));
+        auxpowBytes = Fixtures.load("/org/bitcoinj/core/auxpow_header.bin");
+        auxpow = new AuxPoW(params, auxpowBytes, null, params.getDefaultSerializer());
+    }
+
+    /**
+     * Check an already parsed AuxPoW. The parent header's scrypt hash is
+     * remembered after the first call, so this measures the structural
+     * checks (merkle branches, coinbase script) alone.
+     */
+    @Benchmark
+    public boolean checkProofOfWork() {
+        return auxpow.checkProofOfWork(AUX_BLOCK_HASH, TARGET, true);
+    }
+
+    /**
+     * Parse and check a fresh AuxPoW, including the parent header scrypt hash.
+     */
+    @Benchmark
+    public boolean parseAndCheckProofOfWork() {
+        return new AuxPoW(params, auxpowBytes, null, params.getDefaultSerializer())
+            .checkProofOfWork(AUX_BLOCK_HASH, TARGET, true);
+    }
+}
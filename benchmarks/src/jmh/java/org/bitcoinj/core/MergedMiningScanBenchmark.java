@@ -0,0 +1,101 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bitcoinj.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Search of the parent coinbase script for the merged mining header and chain
+ * merkle root, against the per-offset scan it replaced. Lives in
+ * org.bitcoinj.core as {@link MergedMiningScanner} is package private.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MergedMiningScanBenchmark {
+    /**
+     * Script length in bytes. Real coinbase scripts are at most 100 bytes,
+     * the longer script is for adversarial input.
+     */
+    @Param({"100", "10000"})
+    public int scriptLength;
+
+    /**
+     * "typical" has the header and root near the start of random bytes;
+     * "adversarial" repeats the first 31 bytes of the root, so every offset
+     * is a near match, with the root at the very end.
+     */
+    @Param({"typical", "adversarial"})
+    public String shape;
+
+    private final MergedMiningScanner scanner = new MergedMiningScanner();
+    private byte[] root;
+    private byte[] script;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(scriptLength);
+        root = new byte[32];
+        script = new byte[scriptLength];
+        if ("typical".equals(shape)) {
+            random.nextBytes(root);
+            random.nextBytes(script);
+            System.arraycopy(AuxPoW.MERGED_MINING_HEADER, 0, script, 4, 4);
+            System.arraycopy(root, 0, script, 8, root.length);
+        } else {
+            root[root.length - 1] = 1;
+            Arrays.fill(script, (byte) 0);
+            System.arraycopy(root, 0, script, scriptLength - root.length, root.length);
+        }
+    }
+
+    @Benchmark
+    public int scan() {
+        scanner.scan(script, 0, script.length, root);
+        return scanner.getRootIndex();
+    }
+
+    /**
+     * The scan formerly done by AuxPoW.checkProofOfWork(), for comparison.
+     */
+    @Benchmark
+    public int naiveScan() {
+        int pcHead = -1;
+        int pc = -1;
+        for (int scriptIdx = 0; scriptIdx < script.length; scriptIdx++) {
+            if (AuxPoW.arrayMatch(script, scriptIdx, AuxPoW.MERGED_MINING_HEADER)) {
+                if (pcHead >= 0) {
+                    return -1;
+                }
+                pcHead = scriptIdx;
+            } else if (AuxPoW.arrayMatch(script, scriptIdx, root)) {
+                pc = scriptIdx;
+            }
+        }
+        return pc;
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bitcoinj.core;
+
+import org.libdohj.benchmarks.Fixtures;
+import org.libdohj.params.DogecoinMainNetParams;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merkle root calculation from the AuxPoW merkle branch fixture.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MerkleBranchBenchmark {
+    private static final Sha256Hash LEAF
+        = Sha256Hash.wrap("be079078869399faccaa764c10e9df6e9981701759ad18e13724d9ca58831348");
+
+    private final NetworkParameters params = DogecoinMainNetParams.get();
+    private MerkleBranch branch;
+
+    @Setup
+    public void setUp() {
+        Context.propagate(new Context(params));
+        branch = new MerkleBranch(params, null, Fixtures.load("/org/bitcoinj/core/auxpow_merkle_branch.bin"), 0);
+    }
+
+    @Benchmark
+    public Sha256Hash calculateMerkleRoot() {
+        return branch.calculateMerkleRoot(LEAF);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bitcoinj.core;
+
+import org.libdohj.params.DogecoinMainNetParams;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing a synthetic block with many transactions, on the calling thread
+ * and with transactions parsed on the common fork/join pool.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TransactionParseBenchmark {
+    @Param({"4000"})
+    public int txCount;
+
+    private final NetworkParameters params = DogecoinMainNetParams.get();
+    private MessageSerializer serializer;
+    private byte[] blockBytes;
+
+    @Setup
+    public void setUp() {
+        Context.propagate(new Context(params));
+        serializer = params.getDefaultSerializer();
+        final List<Transaction> transactions = new ArrayList<>(txCount);
+        for (int txIdx = 0; txIdx < txCount; txIdx++) {
+            final Transaction tx = new Transaction(params);
+            if (txIdx == 0) {
+                tx.addInput(new TransactionInput(params, tx, new byte[] {1, 2}));
+            } else {
+                tx.addInput(new TransactionInput(params, tx, new byte[107],
+                    new TransactionOutPoint(params, 0, Sha256Hash.of(new byte[] {(byte) txIdx, (byte) (txIdx >> 8)}))));
+            }
+            tx.addOutput(new TransactionOutput(params, tx, Coin.COIN, new byte[25]));
+            tx.addOutput(new TransactionOutput(params, tx, Coin.CENT, new byte[25]));
+            transactions.add(tx);
+        }
+        blockBytes = new AltcoinBlock(params, 1, Sha256Hash.ZERO_HASH, null, 0, 0x1e0ffff0L, 0, transactions)
+            .bitcoinSerialize();
+    }
+
+    @TearDown
+    public void tearDown() {
+        AltcoinBlock.setTransactionPool(null);
+    }
+
+    @Benchmark
+    public Block callingThread() {
+        AltcoinBlock.setTransactionPool(null);
+        return serializer.makeBlock(blockBytes);
+    }
+
+    @Benchmark
+    public Block commonPool() {
+        AltcoinBlock.setTransactionPool(ForkJoinPool.commonPool());
+        return serializer.makeBlock(blockBytes);
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.libdohj.benchmarks;
+
+import org.libdohj.core.Utils;
+import org.libdohj.crypto.ScryptProviders;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scrypt hashing of 80 byte headers through {@link Utils#scryptDigest(byte[])}
+ * and the batch entry point, for each built-in provider.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ScryptBenchmark {
+    private static final int BATCH_SIZE = 8;
+
+    @Param({"java", "java-vector", "lambdaworks-native", "bouncycastle"})
+    public String provider;
+
+    private byte[] header;
+    private byte[][] headers;
+
+    @Setup
+    public void setUp() {
+        ScryptProviders.setDefault(ScryptProviders.select(ScryptProviders.getBuiltInProviders(), provider));
+        header = new byte[80];
+        System.arraycopy(Fixtures.load("/org/bitcoinj/core/dogecoin_block250000.bin"), 0, header, 0, header.length);
+        headers = new byte[BATCH_SIZE][];
+        for (int headerIdx = 0; headerIdx < BATCH_SIZE; headerIdx++) {
+            headers[headerIdx] = header.clone();
+            headers[headerIdx][76] = (byte) headerIdx;
+        }
+    }
+
+    @Benchmark
+    public byte[] scryptDigest() throws GeneralSecurityException {
+        return Utils.scryptDigest(header);
+    }
+
+    /**
+     * Hash a batch of 8 headers; divide by 8 to compare with
+     * {@link #scryptDigest()}.
+     */
+    @Benchmark
+    public byte[][] scryptDigestBatch() throws GeneralSecurityException {
+        return Utils.scryptDigest(headers);
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.libdohj.core;
+
+import org.bitcoinj.core.AltcoinBlock;
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.HeadersMessage;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.VarInt;
+import org.libdohj.benchmarks.Fixtures;
+import org.libdohj.params.DogecoinMainNetParams;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing a full headers message of merge-mined Dogecoin headers (block
+ * 371,337 repeated) with {@link HeadersMessage} against
+ * {@link HeadersMessageReader}, both for the whole message and for the first
+ * header, which is when verification can start.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HeadersMessageBenchmark {
+    private final NetworkParameters params = DogecoinMainNetParams.get();
+    private AltcoinSerializer serializer;
+    private byte[] message;
+
+    @Setup
+    public void setUp() throws IOException {
+        Context.propagate(new Context(params));
+        serializer = (AltcoinSerializer) params.getDefaultSerializer();
+        final AltcoinBlock block = (AltcoinBlock) serializer.makeBlock(
+            Fixtures.load("/org/bitcoinj/core/dogecoin_block371337.bin"));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(new VarInt(HeadersMessage.MAX_HEADERS).encode());
+        for (int headerIdx = 0; headerIdx < HeadersMessage.MAX_HEADERS; headerIdx++) {
+            out.write(block.bitcoinSerialize(), 0, Block.HEADER_SIZE);
+            out.write(block.getAuxPoWBytes());
+            out.write(0);
+        }
+        message = out.toByteArray();
+    }
+
+    @Benchmark
+    public List<Block> headersMessage() {
+        return new HeadersMessage(params, message).getBlockHeaders();
+    }
+
+    @Benchmark
+    public Block headersMessageFirstHeader() {
+        return new HeadersMessage(params, message).getBlockHeaders().get(0);
+    }
+
+    @Benchmark
+    public Block readerAll() {
+        final HeadersMessageReader reader = serializer.makeHeadersReader(new ByteArrayInputStream(message));
+        Block header = null;
+        while (reader.hasNext()) {
+            header = reader.next();
+        }
+        return header;
+    }
+
+    @Benchmark
+    public Block readerAllFromBuffer() {
+        final HeadersMessageReader reader = serializer.makeHeadersReader(ByteBuffer.wrap(message));
+        Block header = null;
+        while (reader.hasNext()) {
+            header = reader.next();
+        }
+        return header;
+    }
+
+    @Benchmark
+    public Block readerFirstHeader() {
+        return serializer.makeHeadersReader(new ByteArrayInputStream(message)).next();
+    }
+}
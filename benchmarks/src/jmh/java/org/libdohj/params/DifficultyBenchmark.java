@@ -0,0 +1,49 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.libdohj.params;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dogecoin difficulty retargeting, using the mainnet cases from
+ * AbstractDogecoinParamsTest. Lives in org.libdohj.params as
+ * calculateNewDifficultyTargetInner() is protected.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DifficultyBenchmark {
+    private final AbstractDogecoinParams params = DogecoinMainNetParams.get();
+
+    /** Retarget at block 9,600, before Digishield. */
+    @Benchmark
+    public long bitcoinLikeRetarget() {
+        return params.calculateNewDifficultyTargetInner(9599, 1386954113L, 0x1c1a1206L, 1386942008L, 0x1c15ea59L);
+    }
+
+    /** Per-block Digishield retarget at block 145,001. */
+    @Benchmark
+    public long digishieldRetarget() {
+        return params.calculateNewDifficultyTargetInner(145000, 1395094679L, 0x1b499dfdL, 1395094427L, 0x1b671062L);
+    }
+}
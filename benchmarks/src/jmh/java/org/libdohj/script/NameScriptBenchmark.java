@@ -0,0 +1,70 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.libdohj.script;
+
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.script.Script;
+import org.libdohj.benchmarks.Fixtures;
+import org.libdohj.params.NamecoinMainNetParams;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing Namecoin name operations from the name output of each of the
+ * NameScriptTest transactions.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class NameScriptBenchmark {
+    @Param({"namecoin_name_new_d_bitcoin.bin", "namecoin_name_firstupdate_d_bitcoin.bin",
+        "namecoin_name_update_d_bitcoin.bin"})
+    public String fixture;
+
+    private final NetworkParameters params = NamecoinMainNetParams.get();
+    private byte[] scriptBytes;
+    private Script script;
+
+    @Setup
+    public void setUp() {
+        Context.propagate(new Context(params));
+        final Transaction tx = new Transaction(params, Fixtures.load("/org/libdohj/script/" + fixture));
+        scriptBytes = tx.getOutputs().get(1).getScriptBytes();
+        script = new Script(scriptBytes);
+    }
+
+    /** Name operation parsing from an already parsed script. */
+    @Benchmark
+    public NameScript parseNameScript() {
+        return new NameScript(script);
+    }
+
+    /** Script and name operation parsing from the raw output script. */
+    @Benchmark
+    public NameScript parseScriptAndNameScript() {
+        return new NameScript(new Script(scriptBytes));
+    }
+}
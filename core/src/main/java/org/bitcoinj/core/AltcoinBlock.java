@@ -19,16 +19,23 @@ package org.bitcoinj.core;
 
 import org.libdohj.core.AltcoinNetworkParameters;
 import org.libdohj.core.AuxPoWNetworkParameters;
+import org.libdohj.core.AuxPoWVerificationCache;
+import org.libdohj.core.ScryptHashCache;
+import org.libdohj.core.ScryptNetworkParameters;
+import org.libdohj.core.UInt256;
 
 import javax.annotation.Nullable;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.math.BigInteger;
 import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.bitcoinj.core.Utils.reverseBytes;
 import static org.libdohj.core.Utils.scryptDigest;
@@ -44,14 +51,67 @@ import static org.libdohj.core.Utils.scryptDigest;
  * specifically using {@link Peer#getBlock(Sha256Hash)}, or grab one from a downloaded {@link BlockChain}.
  */
 public class AltcoinBlock extends org.bitcoinj.core.Block {
+    /**
+     * Minimum number of transactions for {@link #verifyTransactions(int, EnumSet)}
+     * to calculate transaction IDs for the merkle root on the pool set by
+     * {@link #setTransactionPool(ForkJoinPool)}.
+     */
+    public static final int PARALLEL_MERKLE_ROOT_THRESHOLD = 2 * MerkleRootTask.SEQUENTIAL_LEAVES;
+
+    /**
+     * Minimum number of transactions in a block for them to be parsed on the
+     * pool set by {@link #setTransactionPool(ForkJoinPool)}.
+     */
+    public static final int PARALLEL_PARSE_THRESHOLD = 256;
+
     private static final int BYTE_BITS = 8;
 
+    /** Shared cache of scrypt hashes, if one has been configured. */
+    @Nullable private static volatile ScryptHashCache scryptHashCache;
+
+    /** Shared cache of verified AuxPoW headers, if one has been configured. */
+    @Nullable private static volatile AuxPoWVerificationCache auxpowVerificationCache;
+
+    /** Pool to parse and check the transactions of large blocks on, if one has been configured. */
+    @Nullable private static volatile ForkJoinPool transactionPool;
+
     private boolean auxpowParsed = false;
-    private boolean auxpowBytesValid = false;
 
-    /** AuxPoW header element, if applicable. */
+    /**
+     * AuxPoW header element, if applicable. When the block is parsed this is
+     * left null and only the location of the serialized header is recorded
+     * (see {@link #auxpowBytes}); it is then built on first use.
+     */
     @Nullable private AuxPoW auxpow;
 
+    /**
+     * Serialized AuxPoW header, if one was parsed and has not yet been
+     * replaced. This is the block payload if the serializer retains it, and
+     * otherwise a copy of just the AuxPoW header.
+     */
+    @Nullable private byte[] auxpowBytes;
+    private int auxpowOffset;
+    private int auxpowLength;
+
+    /**
+     * Scrypt hash of the parent header within {@link #auxpowBytes}, if
+     * calculated before the AuxPoW header was built. Handed to the parent
+     * header if the AuxPoW header is later built.
+     */
+    @Nullable private Sha256Hash auxpowParentScryptHash;
+
+    /**
+     * Whether the retained payload still holds this block's AuxPoW header
+     * (or lack of one) exactly as parsed, so the header, AuxPoW header and
+     * transactions can be serialized with a single copy. Cleared once the
+     * AuxPoW header is replaced, released or built, as the built object can
+     * be modified.
+     */
+    private boolean auxpowInPayload = false;
+
+    /** Offset of the transaction count within the payload, if parsed. */
+    private int transactionsOffset;
+
     /**
      * Whether the chain this block belongs to support AuxPoW, used to avoid
      * repeated instanceof checks. Initialised in parseTransactions()
@@ -60,6 +120,12 @@ public class AltcoinBlock extends org.bitcoinj.core.Block {
 
     private Sha256Hash scryptHash;
 
+    /**
+     * Whether this header is known to be an ancestor of (or is) a trusted
+     * checkpoint, in which case proof of work is not checked.
+     */
+    private transient boolean checkpointed = false;
+
     /** Special case constructor, used for the genesis node, cloneAsHeader and unit tests.
      * @param params NetworkParameters object.
      */
@@ -112,20 +178,129 @@ public class AltcoinBlock extends org.bitcoinj.core.Block {
 
     private Sha256Hash calculateScryptHash() {
         try {
-            ByteArrayOutputStream bos = new UnsafeByteArrayOutputStream(HEADER_SIZE);
-            writeHeader(bos);
-            return Sha256Hash.wrap(reverseBytes(scryptDigest(bos.toByteArray())));
-        } catch (IOException | GeneralSecurityException e) {
+            return Sha256Hash.wrap(reverseBytes(scryptDigest(getScryptInput())));
+        } catch (GeneralSecurityException e) {
             throw new RuntimeException(e); // Cannot happen.
         }
     }
 
-    public AuxPoW getAuxPoW() {
+    private byte[] getScryptInput() {
+        final byte[] input = new byte[HEADER_SIZE];
+        encodeHeader(input, 0);
+        return input;
+    }
+
+    /**
+     * Write the 80 byte block header, without any AuxPoW header, into the
+     * given array. This is the input to the block hash and (on scrypt
+     * chains) the scrypt hash. If the header is unchanged since it was
+     * parsed and the payload was retained, this is a single array copy.
+     *
+     * @param dest array to write the header into.
+     * @param offset position in the array to start writing at.
+     * @throws IndexOutOfBoundsException if the header does not fit in the array.
+     */
+    public void encodeHeader(final byte[] dest, final int offset) {
+        if (offset < 0 || offset + HEADER_SIZE > dest.length) {
+            throw new IndexOutOfBoundsException("Header does not fit at offset " + offset + " of " + dest.length + " bytes");
+        }
+        if (headerBytesValid && payload != null && payload.length >= this.offset + HEADER_SIZE) {
+            System.arraycopy(payload, this.offset, dest, offset, HEADER_SIZE);
+            return;
+        }
+        Utils.uint32ToByteArrayLE(getRawVersion(), dest, offset);
+        writeReversed(getPrevBlockHash(), dest, offset + 4);
+        writeReversed(getMerkleRoot(), dest, offset + 36);
+        Utils.uint32ToByteArrayLE(getTimeSeconds(), dest, offset + 68);
+        Utils.uint32ToByteArrayLE(getDifficultyTarget(), dest, offset + 72);
+        Utils.uint32ToByteArrayLE(getNonce(), dest, offset + 76);
+    }
+
+    private static void writeReversed(final Sha256Hash hash, final byte[] dest, final int offset) {
+        final byte[] bytes = hash.getBytes();
+        for (int byteIdx = 0; byteIdx < Sha256Hash.LENGTH; byteIdx++) {
+            dest[offset + byteIdx] = bytes[Sha256Hash.LENGTH - 1 - byteIdx];
+        }
+    }
+
+    /**
+     * Get the AuxPoW header of this block, parsing it from the block payload
+     * if this has not already been done.
+     *
+     * @return the AuxPoW header, or null if the block does not have one.
+     * @throws ProtocolException if the AuxPoW header cannot be parsed.
+     */
+    @Nullable
+    public AuxPoW getAuxPoW() throws ProtocolException {
+        if (this.auxpow == null && this.auxpowBytes != null) {
+            this.auxpow = new AuxPoW(params, auxpowBytes, auxpowOffset, this, serializer);
+            this.auxpowInPayload = false;
+            if (this.auxpowParentScryptHash != null) {
+                this.auxpow.getParentBlockHeader().scryptHash = this.auxpowParentScryptHash;
+            }
+        }
         return this.auxpow;
     }
 
     public void setAuxPoW(AuxPoW auxpow) {
         this.auxpow = auxpow;
+        this.auxpowBytes = null;
+        this.auxpowLength = 0;
+        this.auxpowParentScryptHash = null;
+        this.auxpowInPayload = false;
+    }
+
+    /**
+     * Returns true if the AuxPoW header of this block has been built, rather
+     * than only located within the serialized block.
+     */
+    boolean isAuxPoWBuilt() {
+        return this.auxpow != null;
+    }
+
+    /**
+     * Returns true if this block has an AuxPoW header, without parsing it.
+     */
+    public boolean hasAuxPoW() {
+        return this.auxpow != null || this.auxpowBytes != null;
+    }
+
+    /**
+     * Drop the AuxPoW header of this block, for example once the block is
+     * buried deep enough in the chain that it will not be checked again, so
+     * it no longer holds the parent block and coinbase transaction in memory.
+     * The block hash is unaffected, but the block can no longer pass
+     * {@link #checkProofOfWork(boolean)} and is serialized as a plain header.
+     *
+     * @see org.libdohj.core.AuxPoWRetentionPolicy
+     */
+    public void releaseAuxPoW() {
+        if (!hasAuxPoW()) {
+            return;
+        }
+        this.auxpow = null;
+        this.auxpowBytes = null;
+        this.auxpowLength = 0;
+        this.auxpowParentScryptHash = null;
+        this.auxpowInPayload = false;
+    }
+
+    /**
+     * Get the serialized AuxPoW header of this block, without parsing it if
+     * it has not already been built.
+     *
+     * @return a copy of the serialized AuxPoW header, or null if the block
+     * does not have one.
+     */
+    @Nullable
+    public byte[] getAuxPoWBytes() {
+        if (this.auxpow != null) {
+            return this.auxpow.bitcoinSerialize();
+        } else if (this.auxpowBytes != null) {
+            return Arrays.copyOfRange(auxpowBytes, auxpowOffset, auxpowOffset + auxpowLength);
+        } else {
+            return null;
+        }
     }
 
     /**
@@ -133,11 +308,220 @@ public class AltcoinBlock extends org.bitcoinj.core.Block {
      * below the target). Big endian.
      */
     public Sha256Hash getScryptHash() {
-        if (scryptHash == null)
-            scryptHash = calculateScryptHash();
+        if (!loadScryptHash()) {
+            storeScryptHash(calculateScryptHash());
+        }
         return scryptHash;
     }
 
+    /**
+     * Load the scrypt hash from the shared cache if it is not already known.
+     *
+     * @return true if the scrypt hash is now known, false if it must be
+     * calculated.
+     */
+    private boolean loadScryptHash() {
+        if (scryptHash == null) {
+            final ScryptHashCache cache = scryptHashCache;
+            if (cache != null) {
+                scryptHash = cache.get(getHash());
+            }
+        }
+        return scryptHash != null;
+    }
+
+    private void storeScryptHash(final Sha256Hash hash) {
+        scryptHash = hash;
+        final ScryptHashCache cache = scryptHashCache;
+        if (cache != null) {
+            cache.put(getHash(), hash);
+        }
+    }
+
+    /**
+     * Calculate, in bulk, the scrypt hashes needed to check the proof of work
+     * of the given headers, so that subsequent checks find them already
+     * known. For merge-mined headers this is the hash of the AuxPoW parent
+     * header, which is read from the serialized AuxPoW header without
+     * building it. Headers on chains which do not use scrypt proof of work
+     * (see {@link ScryptNetworkParameters}), checkpointed headers, and headers
+     * whose hash is already known or cached are skipped.
+     *
+     * <p>The remaining headers are hashed together through
+     * {@link org.libdohj.core.Utils#scryptDigest(byte[][])}, which lets a
+     * vectorised provider hash several at once.</p>
+     */
+    public static void precomputeScryptHashes(final List<? extends AltcoinBlock> headers) {
+        final List<AltcoinBlock> pending = new ArrayList<>(headers.size());
+        final List<byte[]> inputs = new ArrayList<>(headers.size());
+        for (AltcoinBlock header: headers) {
+            final byte[] input = header.getPendingScryptInput();
+            if (input != null) {
+                pending.add(header);
+                inputs.add(input);
+            }
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        final byte[][] digests;
+        try {
+            digests = scryptDigest(inputs.toArray(new byte[inputs.size()][]));
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException(e); // Cannot happen.
+        }
+        for (int headerIdx = 0; headerIdx < digests.length; headerIdx++) {
+            pending.get(headerIdx).storePendingScryptHash(Sha256Hash.wrap(reverseBytes(digests[headerIdx])));
+        }
+    }
+
+    /**
+     * Returns true if {@link #checkProofOfWork(boolean)} compares the AuxPoW
+     * parent header, rather than this header, against the target.
+     */
+    private boolean isAuxPoWProofOfWork() {
+        return params instanceof AuxPoWNetworkParameters
+            && ((AuxPoWNetworkParameters) params).isAuxPoWBlockVersion(getRawVersion())
+            && hasAuxPoW();
+    }
+
+    /**
+     * Get the offset of the parent header within {@link #auxpowBytes}. It is
+     * the last element of the AuxPoW header (see
+     * {@link AuxPoW#calcLength(byte[], int)}).
+     */
+    private int getAuxPoWParentHeaderOffset() {
+        return auxpowOffset + auxpowLength - HEADER_SIZE;
+    }
+
+    /**
+     * Get the hash of the parent header within {@link #auxpowBytes}, the key
+     * for its scrypt hash in the shared cache.
+     */
+    private Sha256Hash getAuxPoWParentHash() {
+        return Sha256Hash.wrapReversed(
+            Sha256Hash.hashTwice(auxpowBytes, getAuxPoWParentHeaderOffset(), HEADER_SIZE));
+    }
+
+    /**
+     * Get the scrypt hash of the AuxPoW parent header, if it has been
+     * calculated or is cached, without building the AuxPoW header. Only
+     * valid while the AuxPoW header is not built.
+     */
+    @Nullable
+    Sha256Hash getAuxPoWParentScryptHash() {
+        if (auxpowParentScryptHash == null && auxpowBytes != null) {
+            final ScryptHashCache cache = scryptHashCache;
+            if (cache != null) {
+                auxpowParentScryptHash = cache.get(getAuxPoWParentHash());
+            }
+        }
+        return auxpowParentScryptHash;
+    }
+
+    /**
+     * Get the input whose scrypt hash {@link #checkProofOfWork(boolean)} will
+     * compare against the target, or null if it is already known or will not
+     * be needed.
+     */
+    @Nullable
+    private byte[] getPendingScryptInput() {
+        if (checkpointed || !(params instanceof ScryptNetworkParameters)) {
+            return null;
+        }
+        if (isAuxPoWProofOfWork()) {
+            if (auxpow != null) {
+                final AltcoinBlock parent = auxpow.getParentBlockHeader();
+                return parent.loadScryptHash() ? null : parent.getScryptInput();
+            }
+            if (getAuxPoWParentScryptHash() != null) {
+                return null;
+            }
+            final int parentHeader = getAuxPoWParentHeaderOffset();
+            return Arrays.copyOfRange(auxpowBytes, parentHeader, parentHeader + HEADER_SIZE);
+        }
+        return loadScryptHash() ? null : getScryptInput();
+    }
+
+    /**
+     * Store the scrypt hash of the input returned by
+     * {@link #getPendingScryptInput()}.
+     */
+    private void storePendingScryptHash(final Sha256Hash hash) {
+        if (!isAuxPoWProofOfWork()) {
+            storeScryptHash(hash);
+        } else if (auxpow != null) {
+            auxpow.getParentBlockHeader().storeScryptHash(hash);
+        } else {
+            auxpowParentScryptHash = hash;
+            final ScryptHashCache cache = scryptHashCache;
+            if (cache != null) {
+                cache.put(getAuxPoWParentHash(), hash);
+            }
+        }
+    }
+
+    /**
+     * Set the cache consulted by {@link #getScryptHash()} (and therefore by
+     * proof of work and difficulty checks) before calculating a scrypt hash.
+     *
+     * @param cache the cache to use, or null to always calculate.
+     */
+    public static void setScryptHashCache(@Nullable final ScryptHashCache cache) {
+        scryptHashCache = cache;
+    }
+
+    /**
+     * Get the cache consulted by {@link #getScryptHash()}, if any.
+     */
+    @Nullable
+    public static ScryptHashCache getScryptHashCache() {
+        return scryptHashCache;
+    }
+
+    /**
+     * Set the cache of AuxPoW headers which have passed proof of work checks,
+     * consulted by {@link #checkProofOfWork(boolean)} before checking an
+     * AuxPoW header.
+     *
+     * @param cache the cache to use, or null to always check.
+     */
+    public static void setAuxPoWVerificationCache(@Nullable final AuxPoWVerificationCache cache) {
+        auxpowVerificationCache = cache;
+    }
+
+    /**
+     * Get the cache of verified AuxPoW headers, if any.
+     */
+    @Nullable
+    public static AuxPoWVerificationCache getAuxPoWVerificationCache() {
+        return auxpowVerificationCache;
+    }
+
+    /**
+     * Set the pool on which the transactions of blocks with at least
+     * {@link #PARALLEL_PARSE_THRESHOLD} transactions are parsed, and the
+     * transaction IDs of blocks with at least
+     * {@link #PARALLEL_MERKLE_ROOT_THRESHOLD} transactions are calculated when
+     * they are verified, for example when importing historical blocks in
+     * bulk. Blocks are parsed and verified entirely on the calling thread by
+     * default.
+     *
+     * @param pool the pool to use, or null to work on the calling thread.
+     */
+    public static void setTransactionPool(@Nullable final ForkJoinPool pool) {
+        transactionPool = pool;
+    }
+
+    /**
+     * Get the pool transactions of large blocks are parsed and checked on, if any.
+     */
+    @Nullable
+    public static ForkJoinPool getTransactionPool() {
+        return transactionPool;
+    }
+
     /**
      * Returns the Scrypt hash of the block.
      */
@@ -216,35 +600,145 @@ public class AltcoinBlock extends org.bitcoinj.core.Block {
             return;
 
         this.auxpow = null;
+        this.auxpowBytes = null;
+        this.auxpowLength = 0;
+        this.auxpowParentScryptHash = null;
         if (this.auxpowChain) {
             final AuxPoWNetworkParameters auxpowParams = (AuxPoWNetworkParameters)this.params;
             if (auxpowParams.isAuxPoWBlockVersion(this.getRawVersion())
                 && payload.length >= 160) { // We have at least 2 headers in an Aux block. Workaround for StoredBlocks
-                this.auxpow = new AuxPoW(params, payload, cursor, this, serializer);
+                // Only find the end of the AuxPoW header here, and leave
+                // building it until it's needed, as most uses of a header
+                // never look at it.
+                this.auxpowLength = AuxPoW.calcLength(payload, cursor);
+                if (serializer.isParseRetainMode()) {
+                    this.auxpowBytes = payload;
+                    this.auxpowOffset = cursor;
+                } else {
+                    // The payload is released after parsing, so keep just the AuxPoW header
+                    this.auxpowBytes = Arrays.copyOfRange(payload, cursor, cursor + auxpowLength);
+                    this.auxpowOffset = 0;
+                }
             }
         }
 
+        this.auxpowInPayload = serializer.isParseRetainMode();
         this.auxpowParsed = true;
-        this.auxpowBytesValid = serializer.isParseRetainMode();
     }
 
+    /**
+     * Parse the transactions following the header and any AuxPoW header. If
+     * the block was given a length ending exactly at the end of the AuxPoW
+     * header, it is a header embedded in a larger message (such as a
+     * merkleblock) with no transaction count following it, and is treated as
+     * a header without transactions.
+     */
     @Override
     protected void parseTransactions(final int offset) {
         this.auxpowChain = params instanceof AuxPoWNetworkParameters;
         parseAuxPoW();
-        if (null != this.auxpow) {
-            super.parseTransactions(offset + auxpow.getMessageSize());
-            optimalEncodingMessageSize += auxpow.getMessageSize();
-        } else {
-            super.parseTransactions(offset);
+        this.transactionsOffset = offset + auxpowLength;
+        if (this.length != UNKNOWN_LENGTH && offset + auxpowLength == this.offset + this.length) {
+            cursor = offset + auxpowLength;
+            optimalEncodingMessageSize = HEADER_SIZE;
+            transactionBytesValid = false;
+        } else if (!parseTransactionsInParallel(offset + auxpowLength)) {
+            super.parseTransactions(offset + auxpowLength);
+        }
+        optimalEncodingMessageSize += auxpowLength;
+    }
+
+    /**
+     * Parse the transactions on the configured pool, if there is one and the
+     * block holds at least {@link #PARALLEL_PARSE_THRESHOLD} transactions.
+     * The transactions end up as if parsed by
+     * {@link Block#parseTransactions(int)}.
+     *
+     * @return false, without changing the cursor, if the transactions should
+     * be parsed sequentially instead.
+     */
+    private boolean parseTransactionsInParallel(final int transactionsStart) {
+        final ForkJoinPool pool = transactionPool;
+        if (pool == null || payload.length == transactionsStart) {
+            return false;
+        }
+        cursor = transactionsStart;
+        final VarInt countVarInt = readVarInt();
+        final int transactionCount = countVarInt.intValue();
+        final int[] offsets = transactionCount < PARALLEL_PARSE_THRESHOLD ? null
+            : ParallelTransactionParser.scan(payload, cursor, transactionCount, serializer);
+        if (offsets == null) {
+            cursor = transactionsStart;
+            return false;
+        }
+        final Transaction[] parsed = ParallelTransactionParser.parse(pool, this, payload, offsets, serializer,
+            Context.get());
+        optimalEncodingMessageSize = HEADER_SIZE + countVarInt.getSizeInBytes();
+        for (Transaction tx : parsed) {
+            optimalEncodingMessageSize += tx.getOptimalEncodingMessageSize();
+        }
+        transactions = new ArrayList<>(Arrays.asList(parsed));
+        cursor = offsets[transactionCount];
+        transactionBytesValid = serializer.isParseRetainMode();
+        return true;
+    }
+
+    /**
+     * Whether the whole block, as currently held, is a range of the retained
+     * payload.
+     */
+    private boolean isPayloadValid() {
+        return headerBytesValid && auxpowInPayload && payload != null
+            && (transactions == null || transactionBytesValid)
+            && length != UNKNOWN_LENGTH && payload.length >= offset + length;
+    }
+
+    @Override
+    public byte[] bitcoinSerialize() {
+        if (isPayloadValid()) {
+            if (offset == 0 && length == payload.length) {
+                return payload;
+            }
+            return Arrays.copyOfRange(payload, offset, offset + length);
+        }
+        final ByteArrayOutputStream stream = new UnsafeByteArrayOutputStream(
+            length == UNKNOWN_LENGTH ? HEADER_SIZE + auxpowLength + 1 : length);
+        try {
+            bitcoinSerializeToStream(stream);
+        } catch (IOException e) {
+            // Cannot happen, we are serializing to a memory stream.
         }
+        return stream.toByteArray();
     }
 
+    /**
+     * Serialize the header, AuxPoW header if any, and transactions if any.
+     * The base class writes the transactions from the retained payload
+     * starting straight after the 80 byte header, so this is done here
+     * instead.
+     */
     @Override
-    void writeHeader(OutputStream stream) throws IOException {
-        super.writeHeader(stream);
+    protected void bitcoinSerializeToStream(final OutputStream stream) throws IOException {
+        if (isPayloadValid()) {
+            stream.write(payload, offset, length);
+            return;
+        }
+        writeHeader(stream);
         if (null != this.auxpow) {
             this.auxpow.bitcoinSerialize(stream);
+        } else if (null != this.auxpowBytes) {
+            stream.write(auxpowBytes, auxpowOffset, auxpowLength);
+        }
+        if (transactions == null) {
+            return;
+        }
+        if (transactionBytesValid && payload != null && payload.length >= offset + length) {
+            stream.write(payload, transactionsOffset, offset + length - transactionsOffset);
+            return;
+        }
+        stream.write(new VarInt(transactions.size()).encode());
+        for (Transaction tx : transactions) {
+            tx.bitcoinSerialize(stream);
         }
     }
 
@@ -260,28 +754,75 @@ public class AltcoinBlock extends org.bitcoinj.core.Block {
                 getNonce(),
                 Collections.emptyList());
         block.auxpow = auxpow;
+        if (auxpowBytes != null) {
+            // Copy just the AuxPoW header, as auxpowBytes may be the whole block
+            block.auxpowBytes = Arrays.copyOfRange(auxpowBytes, auxpowOffset, auxpowOffset + auxpowLength);
+            block.auxpowOffset = 0;
+            block.auxpowLength = auxpowLength;
+        }
+        block.auxpowParentScryptHash = auxpowParentScryptHash;
         return block;
     }
 
+    /**
+     * Returns true if this header has been proven to be part of the chain
+     * leading to a trusted checkpoint, and so skips proof of work checks.
+     */
+    public boolean isCheckpointed() {
+        return checkpointed;
+    }
+
+    /**
+     * Mark this header as part of the chain leading to a trusted checkpoint, so
+     * that proof of work checks are skipped. Only set by
+     * {@link CheckpointTrustingVerifier}, once the header is linked by hash to
+     * a checkpoint.
+     */
+    void setCheckpointed(final boolean checkpointed) {
+        this.checkpointed = checkpointed;
+    }
+
+    /**
+     * Returns the difficulty target decoded from its compact form, as per
+     * {@link #getDifficultyTargetAsInteger()} but without BigInteger
+     * arithmetic. Only supported for blocks on an
+     * {@link AltcoinNetworkParameters} network.
+     *
+     * @throws VerificationException if the target is not positive or is easier
+     * than the network's maximum target.
+     */
+    public UInt256 getDifficultyTargetAsUInt256() throws VerificationException {
+        final UInt256 target = UInt256.decodeCompactBits(getDifficultyTarget());
+        if (target == null || target.isZero()
+                || target.compareTo(((AltcoinNetworkParameters) params).getMaxTargetAsUInt256()) > 0) {
+            throw new VerificationException("Difficulty target is bad: "
+                + Utils.decodeCompactBits(getDifficultyTarget()));
+        }
+        return target;
+    }
+
     /** Returns true if the hash of the block is OK (lower than difficulty target). */
     protected boolean checkProofOfWork(boolean throwException) throws VerificationException {
+        if (checkpointed) {
+            return true;
+        }
         if (params instanceof AltcoinNetworkParameters) {
-            BigInteger target = getDifficultyTargetAsInteger();
+            final AltcoinNetworkParameters altParams = (AltcoinNetworkParameters)this.params;
+            final UInt256 target = getDifficultyTargetAsUInt256();
 
             if (params instanceof AuxPoWNetworkParameters) {
                 final AuxPoWNetworkParameters auxParams = (AuxPoWNetworkParameters)this.params;
-                if (auxParams.isAuxPoWBlockVersion(getRawVersion()) && null != auxpow) {
-                    return auxpow.checkProofOfWork(this.getHash(), target, throwException);
+                if (auxParams.isAuxPoWBlockVersion(getRawVersion()) && hasAuxPoW()) {
+                    return checkAuxPoW(auxParams, target, throwException);
                 }
             }
 
-            final AltcoinNetworkParameters altParams = (AltcoinNetworkParameters)this.params;
-            final BigInteger hashVal = altParams.getBlockDifficulty(this);
-            if (hashVal.compareTo(target) > 0) {
+            final Sha256Hash hash = altParams.getBlockDifficultyHash(this);
+            if (target.compareTo(hash) < 0) {
                 // Proof of work check failed!
                 if (throwException)
-                    throw new VerificationException("Hash is higher than target: " + org.libdohj.core.Utils.formatAsHash(hashVal) + " vs "
-                            + target.toString(16));
+                    throw new VerificationException("Hash is higher than target: " + hash + " vs "
+                        + target.toBigInteger().toString(16));
                 else
                     return false;
             }
@@ -291,6 +832,51 @@ public class AltcoinBlock extends org.bitcoinj.core.Block {
         }
     }
 
+    private boolean checkAuxPoW(final AuxPoWNetworkParameters auxParams, final UInt256 target,
+            final boolean throwException) throws VerificationException {
+        final AuxPoWVerificationCache cache = auxpowVerificationCache;
+        Sha256Hash key = null;
+        if (cache != null) {
+            if (null != auxpow) {
+                final byte[] auxpowAsBytes = auxpow.bitcoinSerialize();
+                key = AuxPoWVerificationCache.getKey(auxpowAsBytes, 0, auxpowAsBytes.length,
+                    getHash(), auxParams.getChainID());
+            } else {
+                key = AuxPoWVerificationCache.getKey(auxpowBytes, auxpowOffset, auxpowLength,
+                    getHash(), auxParams.getChainID());
+            }
+            if (cache.contains(key)) {
+                return true;
+            }
+        }
+
+        final boolean valid;
+        if (null != auxpow) {
+            valid = auxpow.checkProofOfWork(this.getHash(), target, throwException);
+        } else {
+            // Check the serialized header rather than building it, reusing any
+            // parent header scrypt hash from precomputeScryptHashes()
+            final Sha256Hash parentScryptHash = params instanceof ScryptNetworkParameters
+                ? getAuxPoWParentScryptHash() : null;
+            valid = AuxPoWVerifier.get().checkProofOfWork(params, auxpowBytes, auxpowOffset,
+                this.getHash(), target, parentScryptHash, throwException);
+        }
+        if (valid && cache != null) {
+            cache.put(key);
+        }
+        return valid;
+    }
+
+    /**
+     * Checks the proof of work of this block (the scrypt hash, or the AuxPoW
+     * header for merge-mined blocks) against its difficulty target.
+     *
+     * @throws VerificationException if the proof of work is invalid.
+     */
+    public void verifyProofOfWork() throws VerificationException {
+        checkProofOfWork(true);
+    }
+
     /**
      * Checks the block data to ensure it follows the rules laid out in the network parameters. Specifically,
      * throws an exception if the proof of work is invalid, or if the timestamp is too far from what it should be.
@@ -303,4 +889,37 @@ public class AltcoinBlock extends org.bitcoinj.core.Block {
     public void verifyHeader() throws VerificationException {
         super.verifyHeader();
     }
+
+    /**
+     * Calculate the merkle root of this block's transactions on the given
+     * fork/join pool, splitting transaction ID hashing and the lower levels
+     * of the tree between threads. The result is identical to the root
+     * calculated by {@link Block}, but is not stored in the header.
+     *
+     * @throws IllegalStateException if the block has no transactions.
+     */
+    public Sha256Hash calculateMerkleRoot(final ForkJoinPool pool) {
+        if (transactions == null || transactions.isEmpty()) {
+            throw new IllegalStateException("Block has no transactions");
+        }
+        return Sha256Hash.wrapReversed(pool.invoke(MerkleRootTask.forRoot(transactions)));
+    }
+
+    /**
+     * Checks the block contents, as {@link Block#verifyTransactions(int, EnumSet)}.
+     * If a pool has been set with {@link #setTransactionPool(ForkJoinPool)},
+     * blocks of at least {@link #PARALLEL_MERKLE_ROOT_THRESHOLD} transactions
+     * first have their transaction IDs calculated on it. Block then finds
+     * them cached when it checks the merkle root, leaving only the tree
+     * itself to hash on the calling thread.
+     */
+    @Override
+    public void verifyTransactions(final int height, final EnumSet<VerifyFlag> flags)
+            throws VerificationException {
+        final ForkJoinPool pool = transactionPool;
+        if (pool != null && transactions != null && transactions.size() >= PARALLEL_MERKLE_ROOT_THRESHOLD) {
+            pool.invoke(new TransactionIdTask(transactions, 0, transactions.size()));
+        }
+        super.verifyTransactions(height, flags);
+    }
 }
@@ -19,6 +19,7 @@
 package org.bitcoinj.core;
 
 import org.libdohj.core.AuxPoWNetworkParameters;
+import org.libdohj.core.UInt256;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -100,23 +101,95 @@ public class AuxPoW extends ChildMessage {
         super(params, payload, 0, parent, serializer, Message.UNKNOWN_LENGTH);
     }
 
-    protected static int calcLength(byte[] buf, int offset) {
-        VarInt varint;
-        // jump past transaction
-        int cursor = offset + Transaction.calcLength(buf, offset);
+    /**
+     * Calculate the length of a serialized AuxPoW header without parsing it.
+     *
+     * @param buf buffer containing the serialized header.
+     * @param offset the location of the first byte of the header within the buffer.
+     * @throws ProtocolException if the header extends past the end of the buffer.
+     */
+    public static int calcLength(byte[] buf, int offset) throws ProtocolException {
+        final int end;
+        try {
+            // jump past transaction
+            int cursor = offset + calcTransactionLength(buf, offset);
+
+            // jump past header hash
+            cursor += 32;
+
+            // Coin base branch
+            cursor += MerkleBranch.calcLength(buf, cursor);
+
+            // Block chain branch
+            cursor += MerkleBranch.calcLength(buf, cursor);
+
+            // Block header
+            cursor += Block.HEADER_SIZE;
+            end = cursor;
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new ProtocolException("AuxPoW header is truncated or malformed", e);
+        }
+        if (end < offset || end > buf.length) {
+            throw new ProtocolException("AuxPoW header extends past end of payload");
+        }
+        return end - offset;
+    }
 
-        // jump past header hash
-        cursor += 4;
+    /**
+     * Calculate the length of a serialized transaction, as consumed by
+     * {@link Transaction#parse()} (including the segwit marker and witnesses,
+     * if present).
+     */
+    private static int calcTransactionLength(byte[] buf, int offset) {
+        // jump past version (uint32)
+        int cursor = offset + 4;
+
+        VarInt varint = new VarInt(buf, cursor);
+        int txInCount = varint.intValue();
+        cursor += varint.getOriginalSizeInBytes();
+        byte flags = 0;
+        if (txInCount == 0) {
+            // Segwit marker, followed by flags
+            flags = buf[cursor++];
+            if (flags == 0) {
+                return cursor - offset + 4;
+            }
+            varint = new VarInt(buf, cursor);
+            txInCount = varint.intValue();
+            cursor += varint.getOriginalSizeInBytes();
+        }
 
-        // Coin base branch
-        cursor += MerkleBranch.calcLength(buf, offset);
+        for (int inputIdx = 0; inputIdx < txInCount; inputIdx++) {
+            // 36 = length of previous_outpoint
+            cursor += 36;
+            varint = new VarInt(buf, cursor);
+            // 4 = length of sequence field (uint32)
+            cursor += varint.getOriginalSizeInBytes() + varint.intValue() + 4;
+        }
 
-        // Block chain branch
-        cursor += MerkleBranch.calcLength(buf, offset);
+        varint = new VarInt(buf, cursor);
+        final int txOutCount = varint.intValue();
+        cursor += varint.getOriginalSizeInBytes();
+        for (int outputIdx = 0; outputIdx < txOutCount; outputIdx++) {
+            // 8 = length of tx value field (uint64)
+            cursor += 8;
+            varint = new VarInt(buf, cursor);
+            cursor += varint.getOriginalSizeInBytes() + varint.intValue();
+        }
 
-        // Block header
-		cursor += Block.HEADER_SIZE;
+        if ((flags & 1) != 0) {
+            for (int inputIdx = 0; inputIdx < txInCount; inputIdx++) {
+                varint = new VarInt(buf, cursor);
+                final int pushCount = varint.intValue();
+                cursor += varint.getOriginalSizeInBytes();
+                for (int pushIdx = 0; pushIdx < pushCount; pushIdx++) {
+                    varint = new VarInt(buf, cursor);
+                    cursor += varint.getOriginalSizeInBytes() + varint.intValue();
+                }
+            }
+        }
 
+        // 4 = length of lock_time field (uint32)
         return cursor - offset + 4;
     }
 
@@ -244,6 +317,18 @@ public class AuxPoW extends ChildMessage {
      */
     protected boolean checkProofOfWork(Sha256Hash hashAuxBlock,
         BigInteger target, boolean throwException) throws VerificationException {
+        return checkProofOfWork(hashAuxBlock, UInt256.valueOf(target), throwException);
+    }
+
+    /**
+     * Check the proof of work for this AuxPoW header meets the target
+     * difficulty.
+     *
+     * @param hashAuxBlock hash of the block the AuxPoW header is attached to.
+     * @param target the difficulty target after decoding from compact bits.
+     */
+    protected boolean checkProofOfWork(Sha256Hash hashAuxBlock,
+        UInt256 target, boolean throwException) throws VerificationException {
         if (!(params instanceof AuxPoWNetworkParameters)) {
             if (throwException) {
                 // Should be impossible
@@ -297,24 +382,17 @@ public class AuxPoW extends ChildMessage {
 
         // Check that the same work is not submitted twice to our chain, by
         // confirming that the child block hash is in the coinbase merkle tree
-        int pcHead = -1;
-        int pc = -1;
-
-        for (int scriptIdx = 0; scriptIdx < script.length; scriptIdx++) {
-            if (arrayMatch(script, scriptIdx, MERGED_MINING_HEADER)) {
-                // Enforce only one chain merkle root by checking that a single instance of the merged
-                // mining header exists just before.
-                if (pcHead >= 0) {
-                    if (throwException) {
-                        throw new VerificationException("Multiple merged mining headers in coinbase");
-                    }
-                    return false;
-                }
-                pcHead = scriptIdx;
-            } else if (arrayMatch(script, scriptIdx, vchRootHash)) {
-                pc = scriptIdx;
+        final MergedMiningScanner scanner = MergedMiningScanner.get();
+        if (!scanner.scan(script, 0, script.length, vchRootHash)) {
+            // Enforce only one chain merkle root by checking that a single instance of the merged
+            // mining header exists just before.
+            if (throwException) {
+                throw new VerificationException("Multiple merged mining headers in coinbase");
             }
+            return false;
         }
+        final int pcHead = scanner.getHeaderIndex();
+        int pc = scanner.getRootIndex();
 
         if (pc == -1) {
             if (throwException) {
@@ -373,12 +451,12 @@ public class AuxPoW extends ChildMessage {
             return false;
         }
 
-        final BigInteger hashVal = altcoinParams.getBlockDifficulty(getParentBlockHeader());
-        if (hashVal.compareTo(target) > 0) {
+        final Sha256Hash hash = altcoinParams.getBlockDifficultyHash(getParentBlockHeader());
+        if (target.compareTo(hash) < 0) {
             // Proof of work check failed!
             if (throwException) {
-                throw new VerificationException("Hash is higher than target: " + org.libdohj.core.Utils.formatAsHash(hashVal) + " vs "
-                        + target.toString(16));
+                throw new VerificationException("Hash is higher than target: " + hash + " vs "
+                        + target.toBigInteger().toString(16));
             }
             return false;
         }
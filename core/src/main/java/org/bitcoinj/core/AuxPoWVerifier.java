@@ -0,0 +1,453 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bitcoinj.core;
+
+import org.libdohj.core.AltcoinNetworkParameters;
+import org.libdohj.core.AuxPoWNetworkParameters;
+import org.libdohj.core.ProofOfWorkAlgorithm;
+import org.libdohj.core.ScryptHashCache;
+import org.libdohj.core.UInt256;
+import org.libdohj.crypto.ScryptEngine;
+
+import javax.annotation.Nullable;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * Checks AuxPoW headers directly from their serialized form, without building
+ * an {@link AuxPoW}. Makes the same decisions, with the same messages, as
+ * {@link AuxPoW#checkProofOfWork(Sha256Hash, UInt256, boolean)}, but does not
+ * allocate unless a check fails, the network's proof of work hash cannot be
+ * applied to raw bytes (see
+ * {@link ProofOfWorkAlgorithm#of(AltcoinNetworkParameters)}), or a scrypt
+ * hash cache is configured and the parent header's scrypt hash is not
+ * given. Headers this verifier does not read itself, such as segwit
+ * coinbases and non-canonical or out of range variable length integers,
+ * are checked by building an {@link AuxPoW}, so both reach the same
+ * decision.
+ *
+ * <p>Verifiers hold scratch buffers and so are not thread safe; use
+ * {@link #get()} to obtain one for the current thread.</p>
+ */
+public final class AuxPoWVerifier {
+    private static final int HASH_LENGTH = 32;
+    /** Length of the outpoint at the start of each transaction input. */
+    private static final int OUTPOINT_LENGTH = 36;
+    private static final int MAX_CHAIN_MERKLE_BRANCH_LENGTH = 30;
+
+    private static final ThreadLocal<AuxPoWVerifier> VERIFIERS = new ThreadLocal<AuxPoWVerifier>() {
+        @Override
+        protected AuxPoWVerifier initialValue() {
+            return new AuxPoWVerifier();
+        }
+    };
+
+    private final MessageDigest sha256 = Sha256Hash.newDigest();
+    /** Root of the chain merkle branch, in the order it appears in the coinbase script. */
+    private final byte[] chainRoot = new byte[HASH_LENGTH];
+    /** Coinbase transaction hash, then the root of the coinbase merkle branch. */
+    private final byte[] coinbaseRoot = new byte[HASH_LENGTH];
+    /** Parent header proof of work hash, little endian. */
+    private final byte[] proofOfWorkHash = new byte[HASH_LENGTH];
+
+    private AuxPoWVerifier() {
+    }
+
+    /**
+     * Get the verifier for the current thread.
+     */
+    public static AuxPoWVerifier get() {
+        return VERIFIERS.get();
+    }
+
+    /**
+     * Check the proof of work of a serialized AuxPoW header meets the target
+     * difficulty.
+     *
+     * @param params network the header belongs to.
+     * @param payload buffer containing the serialized AuxPoW header.
+     * @param offset the location of the first byte of the header within the buffer.
+     * @param hashAuxBlock hash of the block the AuxPoW header is attached to.
+     * @param target the difficulty target after decoding from compact bits.
+     * @throws ProtocolException if the header cannot be read, regardless of
+     * <code>throwException</code>, as when building an {@link AuxPoW}.
+     */
+    public boolean checkProofOfWork(final NetworkParameters params, final byte[] payload, final int offset,
+            final Sha256Hash hashAuxBlock, final UInt256 target, final boolean throwException)
+            throws VerificationException {
+        return checkProofOfWork(params, payload, offset, hashAuxBlock, target, null, throwException);
+    }
+
+    /**
+     * Check the proof of work of a serialized AuxPoW header meets the target
+     * difficulty, using an already calculated scrypt hash of its parent header
+     * if one is given, rather than hashing it again.
+     *
+     * @param params network the header belongs to.
+     * @param payload buffer containing the serialized AuxPoW header.
+     * @param offset the location of the first byte of the header within the buffer.
+     * @param hashAuxBlock hash of the block the AuxPoW header is attached to.
+     * @param target the difficulty target after decoding from compact bits.
+     * @param parentScryptHash scrypt hash of the parent header, if known. Only
+     * used on networks with scrypt proof of work.
+     * @throws ProtocolException if the header cannot be read, regardless of
+     * <code>throwException</code>, as when building an {@link AuxPoW}.
+     */
+    public boolean checkProofOfWork(final NetworkParameters params, final byte[] payload, final int offset,
+            final Sha256Hash hashAuxBlock, final UInt256 target, @Nullable final Sha256Hash parentScryptHash,
+            final boolean throwException) throws VerificationException {
+        if (!(params instanceof AuxPoWNetworkParameters)) {
+            if (throwException) {
+                // Should be impossible
+                throw new VerificationException("Network parameters are not an instance of AuxPoWNetworkParameters, AuxPoW support is not available.");
+            }
+            return false;
+        }
+        try {
+            return check((AuxPoWNetworkParameters) params, payload, offset, hashAuxBlock, target, parentScryptHash,
+                throwException);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new ProtocolException("AuxPoW header is truncated", e);
+        } catch (UnusualEncodingException e) {
+            return checkParsed((NetworkParameters) params, payload, offset, hashAuxBlock, target, throwException);
+        }
+    }
+
+    /**
+     * Check the header by building an {@link AuxPoW}, for encodings this
+     * verifier leaves to the full parser.
+     */
+    private static boolean checkParsed(final NetworkParameters params, final byte[] payload, final int offset,
+            final Sha256Hash hashAuxBlock, final UInt256 target, final boolean throwException)
+            throws VerificationException {
+        return new AuxPoW(params, payload, offset, null, params.getDefaultSerializer())
+            .checkProofOfWork(hashAuxBlock, target, throwException);
+    }
+
+    private boolean check(final AuxPoWNetworkParameters altcoinParams, final byte[] payload, final int offset,
+            final Sha256Hash hashAuxBlock, final UInt256 target, @Nullable final Sha256Hash parentScryptHash,
+            final boolean throwException)
+            throws VerificationException {
+        // Find the parts of the header. Skip past the transaction version.
+        int cursor = offset + 4;
+        final long inputCount = readVarInt(payload, cursor);
+        if (inputCount == 0) {
+            // Either a segwit serialization, where the transaction hash is not
+            // over the serialized bytes, or an invalid coinbase; leave both to
+            // the full parser.
+            return checkParsed((NetworkParameters) altcoinParams, payload, offset, hashAuxBlock, target,
+                throwException);
+        }
+        cursor += VarInt.sizeOf(inputCount);
+        final int scriptStart = cursor + OUTPOINT_LENGTH + varIntSize(payload, cursor + OUTPOINT_LENGTH);
+        final int scriptLength = (int) readVarInt(payload, cursor + OUTPOINT_LENGTH);
+        for (long inputIdx = 0; inputIdx < inputCount; inputIdx++) {
+            cursor += OUTPOINT_LENGTH;
+            final long scriptLen = readVarInt(payload, cursor);
+            // 4 = length of sequence field (uint32)
+            cursor += VarInt.sizeOf(scriptLen) + (int) scriptLen + 4;
+        }
+        final long outputCount = readVarInt(payload, cursor);
+        cursor += VarInt.sizeOf(outputCount);
+        for (long outputIdx = 0; outputIdx < outputCount; outputIdx++) {
+            // 8 = length of tx value field (uint64)
+            cursor += 8;
+            final long scriptLen = readVarInt(payload, cursor);
+            cursor += VarInt.sizeOf(scriptLen) + (int) scriptLen;
+        }
+        // 4 = length of lock_time field (uint32)
+        cursor += 4;
+        final int coinbaseEnd = cursor;
+
+        // Skip the parent block hash
+        cursor += HASH_LENGTH;
+
+        final int coinbaseBranchLength = (int) readVarInt(payload, cursor);
+        cursor += VarInt.sizeOf(coinbaseBranchLength);
+        final int coinbaseBranchHashes = cursor;
+        cursor += coinbaseBranchLength * HASH_LENGTH;
+        final long coinbaseBranchIndex = Utils.readUint32(payload, cursor);
+        cursor += 4;
+
+        final int chainBranchLength = (int) readVarInt(payload, cursor);
+        cursor += VarInt.sizeOf(chainBranchLength);
+        final int chainBranchHashes = cursor;
+        cursor += chainBranchLength * HASH_LENGTH;
+        final long chainBranchIndex = Utils.readUint32(payload, cursor);
+        cursor += 4;
+
+        final int parentHeader = cursor;
+        if (parentHeader + Block.HEADER_SIZE > payload.length) {
+            throw new ProtocolException("AuxPoW header extends past end of payload");
+        }
+
+        // Checks, in the same order as AuxPoW.checkProofOfWork()
+        if (0 != coinbaseBranchIndex) {
+            if (throwException) {
+                // I don't like the message, but it correlates with what's in the reference client.
+                throw new VerificationException("AuxPow is not a generate");
+            }
+            return false;
+        }
+
+        if (!altcoinParams.isTestNet()
+            && AltcoinBlock.getChainID(Utils.readUint32(payload, parentHeader)) == altcoinParams.getChainID()) {
+            if (throwException) {
+                throw new VerificationException("Aux POW parent has our chain ID");
+            }
+            return false;
+        }
+
+        if (chainBranchLength > MAX_CHAIN_MERKLE_BRANCH_LENGTH) {
+            if (throwException) {
+                throw new VerificationException("Aux POW chain merkle branch too long");
+            }
+            return false;
+        }
+
+        // Calculate the chain merkle root, starting from the child block hash
+        final byte[] hashAuxBlockBytes = hashAuxBlock.getBytes();
+        for (int byteIdx = 0; byteIdx < HASH_LENGTH; byteIdx++) {
+            chainRoot[byteIdx] = hashAuxBlockBytes[HASH_LENGTH - 1 - byteIdx];
+        }
+        MerkleBranch.calculateMerkleRoot(sha256, payload, chainBranchHashes, chainBranchLength, chainBranchIndex,
+            chainRoot);
+        reverse(chainRoot);
+
+        // Check that the coinbase transaction is in the merkle tree of the
+        // parent block header
+        hashTwice(payload, offset, coinbaseEnd - offset, coinbaseRoot);
+        MerkleBranch.calculateMerkleRoot(sha256, payload, coinbaseBranchHashes, coinbaseBranchLength,
+            coinbaseBranchIndex, coinbaseRoot);
+        // The merkle root is 36 bytes into the header, after the version and previous block hash
+        if (!rangeEquals(coinbaseRoot, payload, parentHeader + 36)) {
+            if (throwException) {
+                throw new VerificationException("Aux POW merkle root incorrect");
+            }
+            return false;
+        }
+
+        // Check that the same work is not submitted twice to our chain, by
+        // confirming that the child block hash is in the coinbase merkle tree
+        final MergedMiningScanner scanner = MergedMiningScanner.get();
+        if (!scanner.scan(payload, scriptStart, scriptLength, chainRoot)) {
+            // Enforce only one chain merkle root by checking that a single instance of the merged
+            // mining header exists just before.
+            if (throwException) {
+                throw new VerificationException("Multiple merged mining headers in coinbase");
+            }
+            return false;
+        }
+        final int pcHead = scanner.getHeaderIndex();
+        int pc = scanner.getRootIndex();
+
+        if (pc == -1) {
+            if (throwException) {
+                throw new VerificationException("Aux POW missing chain merkle root in parent coinbase");
+            }
+            return false;
+        }
+
+        if (pcHead != -1) {
+            if (pcHead + AuxPoW.MERGED_MINING_HEADER.length != pc) {
+                if (throwException) {
+                    throw new VerificationException("Merged mining header is not just before chain merkle root");
+                }
+                return false;
+            }
+        } else {
+            // For backward compatibility.
+            // Enforce only one chain merkle root by checking that it starts early in the coinbase.
+            // 8-12 bytes are enough to encode extraNonce and nBits.
+            if (pc > AuxPoW.MAX_INDEX_PC_BACKWARDS_COMPATIBILITY) {
+                if (throwException) {
+                    throw new VerificationException("Aux POW chain merkle root must start in the first 20 bytes of the parent coinbase");
+                }
+                return false;
+            }
+        }
+
+        // Ensure we are at a deterministic point in the merkle leaves by hashing
+        // a nonce and our chain ID and comparing to the index.
+        pc += HASH_LENGTH;
+        if ((scriptLength - pc) < 8) {
+            if (throwException) {
+                throw new VerificationException("Aux POW missing chain merkle tree size and nonce in parent coinbase");
+            }
+            return false;
+        }
+
+        final int branchSize = (int) Utils.readUint32(payload, scriptStart + pc);
+        if (branchSize != (1 << chainBranchLength)) {
+            if (throwException) {
+                throw new VerificationException("Aux POW merkle branch size does not match parent coinbase");
+            }
+            return false;
+        }
+
+        final long nonce = Utils.readUint32(payload, scriptStart + pc + 4);
+        final int expectedIndex = AuxPoW.getExpectedIndex(nonce, altcoinParams.getChainID(), chainBranchLength);
+        if (chainBranchIndex != expectedIndex) {
+            if (throwException) {
+                throw new VerificationException("Aux POW wrong index in chain merkle branch for chain ID "
+                    + altcoinParams.getChainID() + ". Was "
+                    + chainBranchIndex + ", expected "
+                    + expectedIndex);
+            }
+            return false;
+        }
+
+        return checkParentProofOfWork(altcoinParams, payload, parentHeader, target, parentScryptHash,
+            throwException);
+    }
+
+    private boolean checkParentProofOfWork(final AuxPoWNetworkParameters altcoinParams, final byte[] payload,
+            final int parentHeader, final UInt256 target, @Nullable final Sha256Hash parentScryptHash,
+            final boolean throwException) throws VerificationException {
+        final ProofOfWorkAlgorithm algorithm = ProofOfWorkAlgorithm.of(altcoinParams);
+        final ScryptHashCache cache = AltcoinBlock.getScryptHashCache();
+        final Sha256Hash hash;
+        if (algorithm == ProofOfWorkAlgorithm.SHA256D) {
+            hashTwice(payload, parentHeader, Block.HEADER_SIZE, proofOfWorkHash);
+            if (target.compareToLittleEndian(proofOfWorkHash, 0) >= 0) {
+                return true;
+            }
+            hash = Sha256Hash.wrapReversed(proofOfWorkHash);
+        } else if (algorithm == ProofOfWorkAlgorithm.SCRYPT && parentScryptHash != null) {
+            hash = parentScryptHash;
+            if (target.compareTo(hash) >= 0) {
+                return true;
+            }
+        } else if (algorithm == ProofOfWorkAlgorithm.SCRYPT && cache == null) {
+            ScryptEngine.get().hash(payload, parentHeader, Block.HEADER_SIZE, proofOfWorkHash, 0);
+            if (target.compareToLittleEndian(proofOfWorkHash, 0) >= 0) {
+                return true;
+            }
+            hash = Sha256Hash.wrapReversed(proofOfWorkHash);
+        } else {
+            // Hash a parsed copy of the header, which also uses any scrypt hash cache
+            final NetworkParameters params = (NetworkParameters) altcoinParams;
+            final AltcoinBlock header = new AltcoinBlock(params,
+                Arrays.copyOfRange(payload, parentHeader, parentHeader + Block.HEADER_SIZE),
+                0, null, params.getDefaultSerializer(), Block.HEADER_SIZE);
+            hash = altcoinParams.getBlockDifficultyHash(header);
+            if (target.compareTo(hash) >= 0) {
+                return true;
+            }
+        }
+
+        // Proof of work check failed!
+        if (throwException) {
+            throw new VerificationException("Hash is higher than target: " + hash + " vs "
+                    + target.toBigInteger().toString(16));
+        }
+        return false;
+    }
+
+    private void hashTwice(final byte[] input, final int offset, final int length, final byte[] output) {
+        sha256.reset();
+        sha256.update(input, offset, length);
+        finishHashTwice(output);
+    }
+
+    /**
+     * Complete the digest in progress, then hash the result again into the
+     * output.
+     */
+    private void finishHashTwice(final byte[] output) {
+        try {
+            sha256.digest(output, 0, HASH_LENGTH);
+            sha256.update(output, 0, HASH_LENGTH);
+            sha256.digest(output, 0, HASH_LENGTH);
+        } catch (DigestException e) {
+            throw new RuntimeException(e); // Cannot happen.
+        }
+    }
+
+    private static boolean rangeEquals(final byte[] hash, final byte[] payload, final int offset) {
+        for (int byteIdx = 0; byteIdx < HASH_LENGTH; byteIdx++) {
+            if (hash[byteIdx] != payload[offset + byteIdx]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void reverse(final byte[] bytes) {
+        for (int low = 0, high = bytes.length - 1; low < high; low++, high--) {
+            final byte temp = bytes[low];
+            bytes[low] = bytes[high];
+            bytes[high] = temp;
+        }
+    }
+
+    /**
+     * Get the size of the variable length integer at the given offset.
+     */
+    private static int varIntSize(final byte[] payload, final int offset) {
+        final int first = 0xff & payload[offset];
+        if (first < 253) {
+            return 1;
+        } else if (first == 253) {
+            return 3;
+        } else if (first == 254) {
+            return 5;
+        } else {
+            return 9;
+        }
+    }
+
+    /**
+     * Read a variable length integer. Values which cannot fit in the payload
+     * (and so cannot be valid counts or lengths) and encodings which are not
+     * the shortest possible are left to the full parser, which reads them
+     * differently from the serialized bytes.
+     */
+    private static long readVarInt(final byte[] payload, final int offset) throws UnusualEncodingException {
+        final int size = varIntSize(payload, offset);
+        final long value;
+        switch (size) {
+            case 1:
+                return 0xff & payload[offset];
+            case 3:
+                value = Utils.readUint16(payload, offset + 1);
+                break;
+            case 5:
+                value = Utils.readUint32(payload, offset + 1);
+                break;
+            default:
+                value = Utils.readInt64(payload, offset + 1);
+                break;
+        }
+        if (VarInt.sizeOf(value) != size || value < 0 || value > payload.length) {
+            throw new UnusualEncodingException();
+        }
+        return value;
+    }
+
+    /**
+     * Thrown when the header uses an encoding this verifier does not read
+     * itself, so it is checked by building an {@link AuxPoW} instead.
+     */
+    private static class UnusualEncodingException extends ProtocolException {
+        private static final long serialVersionUID = 1;
+
+        private UnusualEncodingException() {
+            super("Unusual variable length integer encoding in AuxPoW header");
+        }
+    }
+}
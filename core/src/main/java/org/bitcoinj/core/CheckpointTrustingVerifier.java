@@ -0,0 +1,275 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bitcoinj.core;
+
+import org.libdohj.core.ProofOfWorkVerifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Opt-in fast sync verification for headers below the last hard-coded
+ * checkpoint. Rather than checking scrypt or AuxPoW proof of work for every
+ * historical header, headers up to a checkpoint are held back until the
+ * checkpoint header itself arrives; if they form an unbroken hash chain ending
+ * at the checkpoint hash they are marked as checkpointed (see
+ * {@link AltcoinBlock#isCheckpointed()}) and released without any proof of
+ * work check. Headers above the last checkpoint get full verification through
+ * {@link ProofOfWorkVerifier}.
+ *
+ * <p>Because headers are held until they can be proven, {@link #add(List)}
+ * returns the headers it releases, which may include headers from earlier
+ * calls, in chain order. Pending headers are bounded; if the limit is reached
+ * they are released with full verification instead. Call {@link #flush()} to
+ * release (with full verification) anything still pending, for example when
+ * a peer has no more headers to send.</p>
+ *
+ * <p>Once a header fails, the verifier rewinds to the last good header and
+ * discards anything pending after it; the caller is expected to fetch headers
+ * again from {@link #getTipHash()}.</p>
+ */
+public class CheckpointTrustingVerifier {
+    private static final Logger log = LoggerFactory.getLogger(CheckpointTrustingVerifier.class);
+
+    /** Default limit on headers held back waiting for a checkpoint. */
+    public static final int DEFAULT_MAX_PENDING = 100000;
+
+    private final SortedMap<Integer, Sha256Hash> checkpoints;
+    private final int lastCheckpointHeight;
+    private final ForkJoinPool pool;
+    private final int maxPending;
+
+    private final List<AltcoinBlock> pending = new ArrayList<>();
+    private int tipHeight;
+    private Sha256Hash tipHash;
+
+    /**
+     * @param checkpoints trusted checkpoints, by height. See for example
+     * {@link org.libdohj.params.AbstractDogecoinParams#getCheckpoints()}.
+     * @param startHeight height of the block the first header will build on.
+     * @param startHash hash of the block the first header will build on.
+     */
+    public CheckpointTrustingVerifier(final SortedMap<Integer, Sha256Hash> checkpoints,
+                                      final int startHeight, final Sha256Hash startHash) {
+        this(checkpoints, startHeight, startHash, ForkJoinPool.commonPool(), DEFAULT_MAX_PENDING);
+    }
+
+    /**
+     * @param checkpoints trusted checkpoints, by height. See for example
+     * {@link org.libdohj.params.AbstractDogecoinParams#getCheckpoints()}.
+     * @param startHeight height of the block the first header will build on.
+     * @param startHash hash of the block the first header will build on.
+     * @param pool fork/join pool for full proof of work verification.
+     * @param maxPending maximum number of headers to hold back waiting for a
+     * checkpoint.
+     */
+    public CheckpointTrustingVerifier(final SortedMap<Integer, Sha256Hash> checkpoints,
+                                      final int startHeight, final Sha256Hash startHash,
+                                      final ForkJoinPool pool, final int maxPending) {
+        this.checkpoints = new TreeMap<>(checkpoints);
+        this.lastCheckpointHeight = this.checkpoints.isEmpty() ? -1 : this.checkpoints.lastKey();
+        this.pool = pool;
+        this.maxPending = maxPending;
+        this.tipHeight = startHeight;
+        this.tipHash = startHash;
+    }
+
+    /**
+     * Add the next headers in the chain.
+     *
+     * @param headers headers following on from the last header added (or from
+     * the start block).
+     * @return results for the headers released by this call, in chain order.
+     * Checking stops at the first failure, as per {@link ProofOfWorkVerifier}.
+     */
+    public synchronized List<ProofOfWorkVerifier.Result> add(final List<? extends AltcoinBlock> headers) {
+        final Release release = new Release();
+
+        for (int headerIdx = 0; headerIdx < headers.size(); headerIdx++) {
+            final AltcoinBlock header = headers.get(headerIdx);
+            if (!header.getPrevBlockHash().equals(tipHash)) {
+                release.fail(header, "Header " + header.getHashAsString() + " does not connect to " + tipHash);
+                release.skip(headers, headerIdx + 1);
+                break;
+            }
+
+            final int height = tipHeight + 1;
+            if (height > lastCheckpointHeight) {
+                advance(header, height);
+                release.add(header, height);
+                continue;
+            }
+
+            final Sha256Hash checkpointHash = checkpoints.get(height);
+            if (checkpointHash == null) {
+                advance(header, height);
+                pending.add(header);
+                if (pending.size() >= maxPending) {
+                    log.info("{} headers pending below checkpoint, verifying them in full", pending.size());
+                    releasePending(release);
+                }
+            } else if (checkpointHash.equals(header.getHash())) {
+                // Each pending header is linked by hash to the next, and this one is
+                // the checkpoint, so together they are the checkpointed chain.
+                advance(header, height);
+                pending.add(header);
+                for (AltcoinBlock pendingHeader : pending) {
+                    pendingHeader.setCheckpointed(true);
+                }
+                releasePending(release);
+            } else {
+                // Pending headers lead to the wrong block, so verify them in full
+                releasePending(release);
+                release.fail(header, "Header " + header.getHashAsString()
+                    + " does not match checkpoint at height " + height);
+                release.skip(headers, headerIdx + 1);
+                break;
+            }
+        }
+
+        return verify(release);
+    }
+
+    /**
+     * Release any headers still waiting for a checkpoint, with full proof of
+     * work verification.
+     */
+    public synchronized List<ProofOfWorkVerifier.Result> flush() {
+        final Release release = new Release();
+        releasePending(release);
+        return verify(release);
+    }
+
+    private void advance(final AltcoinBlock header, final int height) {
+        tipHeight = height;
+        tipHash = header.getHash();
+    }
+
+    private void releasePending(final Release release) {
+        final int firstHeight = tipHeight - pending.size() + 1;
+        for (int pendingIdx = 0; pendingIdx < pending.size(); pendingIdx++) {
+            release.add(pending.get(pendingIdx), firstHeight + pendingIdx);
+        }
+        pending.clear();
+    }
+
+    /**
+     * Run full verification on the released headers which are not
+     * checkpointed, then merge the results back into chain order, followed by
+     * any failures found while linking headers. If a released header fails,
+     * rewind to its parent.
+     */
+    private List<ProofOfWorkVerifier.Result> verify(final Release release) {
+        final List<AltcoinBlock> unchecked = new ArrayList<>();
+        for (AltcoinBlock header : release.headers) {
+            if (!header.isCheckpointed()) {
+                unchecked.add(header);
+            }
+        }
+        final List<ProofOfWorkVerifier.Result> checked = ProofOfWorkVerifier.verify(unchecked, pool);
+
+        final List<ProofOfWorkVerifier.Result> results
+            = new ArrayList<>(release.headers.size() + release.failures.size());
+        int checkedIdx = 0;
+        boolean failed = false;
+        for (int headerIdx = 0; headerIdx < release.headers.size(); headerIdx++) {
+            final AltcoinBlock header = release.headers.get(headerIdx);
+            final ProofOfWorkVerifier.Result result;
+            if (failed) {
+                result = new ProofOfWorkVerifier.Result(header, ProofOfWorkVerifier.Status.SKIPPED, null);
+            } else if (header.isCheckpointed()) {
+                result = new ProofOfWorkVerifier.Result(header, ProofOfWorkVerifier.Status.CHECKPOINTED, null);
+            } else {
+                result = checked.get(checkedIdx++);
+                if (!result.isValid()) {
+                    failed = true;
+                    tipHeight = release.heights.get(headerIdx) - 1;
+                    tipHash = header.getPrevBlockHash();
+                }
+            }
+            results.add(result);
+        }
+        if (failed) {
+            // Anything pending builds on the failed header, so drop it
+            for (AltcoinBlock header : pending) {
+                results.add(new ProofOfWorkVerifier.Result(header, ProofOfWorkVerifier.Status.SKIPPED, null));
+            }
+            pending.clear();
+        }
+        for (ProofOfWorkVerifier.Result failure : release.failures) {
+            if (failed) {
+                results.add(new ProofOfWorkVerifier.Result(failure.getHeader(),
+                    ProofOfWorkVerifier.Status.SKIPPED, null));
+            } else {
+                results.add(failure);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Get the hash of the last header accepted for verification.
+     */
+    public synchronized Sha256Hash getTipHash() {
+        return tipHash;
+    }
+
+    /**
+     * Get the height of the last header accepted for verification.
+     */
+    public synchronized int getTipHeight() {
+        return tipHeight;
+    }
+
+    /**
+     * Get the number of headers held back waiting for a checkpoint.
+     */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Headers released by a single call, with their heights, plus any headers
+     * rejected before verification.
+     */
+    private static class Release {
+        private final List<AltcoinBlock> headers = new ArrayList<>();
+        private final List<Integer> heights = new ArrayList<>();
+        private final List<ProofOfWorkVerifier.Result> failures = new ArrayList<>();
+
+        private void add(final AltcoinBlock header, final int height) {
+            headers.add(header);
+            heights.add(height);
+        }
+
+        private void fail(final AltcoinBlock header, final String message) {
+            failures.add(new ProofOfWorkVerifier.Result(header, ProofOfWorkVerifier.Status.INVALID,
+                new VerificationException(message)));
+        }
+
+        private void skip(final List<? extends AltcoinBlock> remaining, final int fromIdx) {
+            for (int headerIdx = fromIdx; headerIdx < remaining.size(); headerIdx++) {
+                failures.add(new ProofOfWorkVerifier.Result(remaining.get(headerIdx),
+                    ProofOfWorkVerifier.Status.SKIPPED, null));
+            }
+        }
+    }
+}
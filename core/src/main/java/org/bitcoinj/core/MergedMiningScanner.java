@@ -0,0 +1,140 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bitcoinj.core;
+
+/**
+ * Finds the merged mining header and the chain merkle root in a parent
+ * coinbase script, in a single pass over the script. Each pattern is tracked
+ * with a Knuth-Morris-Pratt automaton, so the scan is linear in the script
+ * length however the script is constructed.
+ *
+ * <p>Results match a naive scan which, at each offset, records the merged
+ * mining header if it starts there, or otherwise the chain merkle root if it
+ * starts there: the header position is the only one found, and the root
+ * position is the last one not also the start of a header.</p>
+ *
+ * <p>Scanners hold scratch state and are not thread safe.</p>
+ */
+final class MergedMiningScanner {
+    static final int NOT_FOUND = -1;
+
+    private static final byte[] HEADER = AuxPoW.MERGED_MINING_HEADER;
+    private static final int[] HEADER_FAILURE = failureTable(HEADER, new int[HEADER.length]);
+
+    private static final ThreadLocal<MergedMiningScanner> SCANNERS = new ThreadLocal<MergedMiningScanner>() {
+        @Override
+        protected MergedMiningScanner initialValue() {
+            return new MergedMiningScanner();
+        }
+    };
+
+    private int[] rootFailure = new int[32];
+    private int headerIndex;
+    private int rootIndex;
+
+    /**
+     * Get the scanner for the current thread.
+     */
+    static MergedMiningScanner get() {
+        return SCANNERS.get();
+    }
+
+    /**
+     * Scan a script for the merged mining header and the given chain merkle
+     * root.
+     *
+     * @param buf buffer containing the script.
+     * @param offset location of the first byte of the script within the buffer.
+     * @param length length of the script.
+     * @param root chain merkle root, in the order it appears in the script.
+     * @return false if the merged mining header appears more than once (the
+     * scan stops at the second one), true otherwise.
+     */
+    boolean scan(final byte[] buf, final int offset, final int length, final byte[] root) {
+        if (rootFailure.length < root.length) {
+            rootFailure = new int[root.length];
+        }
+        failureTable(root, rootFailure);
+
+        headerIndex = NOT_FOUND;
+        rootIndex = NOT_FOUND;
+        int headerMatched = 0;
+        int rootMatched = 0;
+        for (int scriptIdx = 0; scriptIdx < length; scriptIdx++) {
+            final byte b = buf[offset + scriptIdx];
+
+            while (headerMatched > 0 && HEADER[headerMatched] != b) {
+                headerMatched = HEADER_FAILURE[headerMatched - 1];
+            }
+            if (HEADER[headerMatched] == b && ++headerMatched == HEADER.length) {
+                if (headerIndex != NOT_FOUND) {
+                    return false;
+                }
+                headerIndex = scriptIdx - HEADER.length + 1;
+                headerMatched = HEADER_FAILURE[headerMatched - 1];
+            }
+
+            while (rootMatched > 0 && root[rootMatched] != b) {
+                rootMatched = rootFailure[rootMatched - 1];
+            }
+            if (root[rootMatched] == b && ++rootMatched == root.length) {
+                final int rootStart = scriptIdx - root.length + 1;
+                // A header starting at the same offset takes precedence. As the
+                // header is shorter, it has already been found if present.
+                if (rootStart != headerIndex) {
+                    rootIndex = rootStart;
+                }
+                rootMatched = rootFailure[rootMatched - 1];
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Offset of the merged mining header within the script, or
+     * {@link #NOT_FOUND}.
+     */
+    int getHeaderIndex() {
+        return headerIndex;
+    }
+
+    /**
+     * Offset of the chain merkle root within the script, or
+     * {@link #NOT_FOUND}.
+     */
+    int getRootIndex() {
+        return rootIndex;
+    }
+
+    /**
+     * Fill in the Knuth-Morris-Pratt failure table for a pattern: for each
+     * prefix, the length of its longest proper prefix which is also a suffix.
+     */
+    private static int[] failureTable(final byte[] pattern, final int[] failure) {
+        failure[0] = 0;
+        int matched = 0;
+        for (int patternIdx = 1; patternIdx < pattern.length; patternIdx++) {
+            while (matched > 0 && pattern[patternIdx] != pattern[matched]) {
+                matched = failure[matched - 1];
+            }
+            if (pattern[patternIdx] == pattern[matched]) {
+                matched++;
+            }
+            failure[patternIdx] = matched;
+        }
+        return failure;
+    }
+}
@@ -20,8 +20,10 @@ package org.bitcoinj.core;
 import javax.annotation.Nullable;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -30,12 +32,25 @@ import java.util.List;
  * up to its root, plus a bitset used to define how the hashes are applied.
  * Given the hash of the leaf, this can be used to calculate the tree
  * root. This is useful for proving that a leaf belongs to a given tree.
+ *
+ * Hashes are held back to back in a single array, in serialized (little
+ * endian) order, so the branch can be parsed and applied without creating
+ * an object per hash.
  * 
  * TODO: Has a lot of similarity to PartialMerkleTree, should attempt to merge
  * the two.
  */
 public class MerkleBranch extends ChildMessage {
-    private static final long serialVersionUID = 2;
+    private static final long serialVersionUID = 3;
+    private static final int HASH_LENGTH = 32;
+    private static final byte[] EMPTY_HASHES = new byte[0];
+
+    static final ThreadLocal<MessageDigest> DIGESTS = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            return Sha256Hash.newDigest();
+        }
+    };
 
     // Merkle branches can be encoded in a way that will use more bytes than is optimal
     // (due to VarInts having multiple encodings)
@@ -44,14 +59,18 @@ public class MerkleBranch extends ChildMessage {
     // can properly keep track of optimal encoded size
     private transient int optimalEncodingMessageSize;
 
-    private List<Sha256Hash> hashes;
+    /** Branch hashes, {@link #HASH_LENGTH} bytes each, in serialized order. */
+    private byte[] hashBytes;
+    /** View of the hashes as built by {@link #getHashes()}, if any. */
+    @Nullable
+    private transient List<Sha256Hash> hashes;
     private long index;
 
     public MerkleBranch(NetworkParameters params, @Nullable ChildMessage parent) {
         super(params);
         setParent(parent);
 
-        this.hashes = new ArrayList<Sha256Hash>();
+        this.hashBytes = EMPTY_HASHES;
         this.index = 0;
     }
 
@@ -82,14 +101,26 @@ public class MerkleBranch extends ChildMessage {
         super(params);
         setParent(parent);
 
-        this.hashes = hashes;
+        setHashes(hashes);
         this.index = branchSideMask;
     }
 
+    /**
+     * Create a branch over the given hashes, which must be back to back in
+     * serialized order. The array is used as-is, not copied.
+     */
+    static MerkleBranch wrap(final NetworkParameters params, final byte[] hashBytes, final long branchSideMask) {
+        final MerkleBranch branch = new MerkleBranch(params, null);
+        branch.hashBytes = hashBytes;
+        branch.index = branchSideMask;
+        return branch;
+    }
+
     public static int calcLength(byte[] buf, int offset) {
         VarInt varint = new VarInt(buf, offset);
 
-        return ((int) varint.value) * 4 + 4;
+        // Hash count, hashes, then the side mask (uint32)
+        return varint.getOriginalSizeInBytes() + varint.intValue() * 32 + 4;
     }
 
     @Override
@@ -98,11 +129,12 @@ public class MerkleBranch extends ChildMessage {
 
         final int hashCount = (int) readVarInt().longValue();
         optimalEncodingMessageSize += VarInt.sizeOf(hashCount);
-        hashes = new ArrayList<Sha256Hash>(hashCount);
-        for (int hashIdx = 0; hashIdx < hashCount; hashIdx++) {
-            hashes.add(readHash());
+        if (hashCount < 0 || hashCount > (payload.length - cursor) / HASH_LENGTH) {
+            throw new ProtocolException("Merkle branch of " + hashCount + " hashes exceeds the message");
         }
-        optimalEncodingMessageSize += 32 * hashCount;
+        hashBytes = readBytes(hashCount * HASH_LENGTH);
+        hashes = null;
+        optimalEncodingMessageSize += HASH_LENGTH * hashCount;
         setIndex(readUint32());
         optimalEncodingMessageSize += 4;
         length = cursor - offset;
@@ -110,10 +142,8 @@ public class MerkleBranch extends ChildMessage {
 
     @Override
     protected void bitcoinSerializeToStream(OutputStream stream) throws IOException {
-        stream.write(new VarInt(hashes.size()).encode());
-        for (Sha256Hash hash: hashes) {
-                stream.write(Utils.reverseBytes(hash.getBytes()));
-        }
+        stream.write(new VarInt(size()).encode());
+        stream.write(hashBytes);
         Utils.uint32ToByteStreamLE(index, stream);
     }
 
@@ -122,33 +152,75 @@ public class MerkleBranch extends ChildMessage {
      * Used to verify that the given leaf and root are part of the same tree.
      */
     public Sha256Hash calculateMerkleRoot(final Sha256Hash leaf) {
-        byte[] target = leaf.getReversedBytes();
-        long mask = index;
-        MessageDigest digest = Sha256Hash.newDigest();
+        final byte[] target = leaf.getReversedBytes();
+        calculateMerkleRoot(DIGESTS.get(), hashBytes, 0, size(), index, target);
+        reverseInPlace(target);
+        return Sha256Hash.wrap(target);
+    }
 
-        for (Sha256Hash hash: hashes) {
-            digest.reset();
-            if ((mask & 1) == 0) { // 0 means it goes on the right
-                digest.update(target);
-                digest.update(hash.getReversedBytes());
-            } else {
-                digest.update(hash.getReversedBytes());
-                digest.update(target);
+    /**
+     * Apply serialized branch hashes to the given leaf, replacing it with the
+     * resulting root. Both the hashes and the leaf are in serialized (little
+     * endian) order.
+     *
+     * @param digest SHA-256 digest to use, reset before use.
+     * @param hashes buffer containing the branch hashes.
+     * @param hashesOffset offset of the first hash within the buffer.
+     * @param hashCount number of hashes in the branch.
+     * @param index mask determining the side each hash is applied on.
+     * @param target the leaf hash, overwritten with the root.
+     */
+    static void calculateMerkleRoot(final MessageDigest digest, final byte[] hashes, final int hashesOffset,
+            final int hashCount, final long index, final byte[] target) {
+        long mask = index;
+        try {
+            for (int hashIdx = 0; hashIdx < hashCount; hashIdx++) {
+                final int hashOffset = hashesOffset + hashIdx * HASH_LENGTH;
+                digest.reset();
+                if ((mask & 1) == 0) { // 0 means it goes on the right
+                    digest.update(target, 0, HASH_LENGTH);
+                    digest.update(hashes, hashOffset, HASH_LENGTH);
+                } else {
+                    digest.update(hashes, hashOffset, HASH_LENGTH);
+                    digest.update(target, 0, HASH_LENGTH);
+                }
+                // Double-digest the values
+                digest.digest(target, 0, HASH_LENGTH);
+                digest.update(target, 0, HASH_LENGTH);
+                digest.digest(target, 0, HASH_LENGTH);
+                mask >>= 1;
             }
-            // Double-digest the values
-            target = digest.digest();
-            digest.reset();
-            target = digest.digest(target);
-            mask >>= 1;
+        } catch (DigestException e) {
+            throw new RuntimeException(e); // Cannot happen.
+        }
+    }
+
+    private static void reverseInPlace(final byte[] bytes) {
+        for (int low = 0, high = bytes.length - 1; low < high; low++, high--) {
+            final byte swap = bytes[low];
+            bytes[low] = bytes[high];
+            bytes[high] = swap;
         }
-        return Sha256Hash.wrapReversed(target);
     }
 
     /**
-     * Get the hashes which make up this branch.
+     * Get the hashes which make up this branch. The list is built on first
+     * use; prefer {@link #calculateMerkleRoot(Sha256Hash)} and {@link #size()}
+     * where they suffice.
      */
     public List<Sha256Hash> getHashes() {
-        return Collections.unmodifiableList(this.hashes);
+        List<Sha256Hash> view = this.hashes;
+        if (view == null) {
+            final int hashCount = size();
+            final List<Sha256Hash> list = new ArrayList<Sha256Hash>(hashCount);
+            for (int hashIdx = 0; hashIdx < hashCount; hashIdx++) {
+                list.add(Sha256Hash.wrapReversed(Arrays.copyOfRange(hashBytes,
+                    hashIdx * HASH_LENGTH, (hashIdx + 1) * HASH_LENGTH)));
+            }
+            view = Collections.unmodifiableList(list);
+            this.hashes = view;
+        }
+        return view;
     }
 
     /**
@@ -164,7 +236,20 @@ public class MerkleBranch extends ChildMessage {
      * @param hashes the hashes to set
      */
     public void setHashes(List<Sha256Hash> hashes) {
-        this.hashes = hashes;
+        final byte[] newHashBytes = new byte[hashes.size() * HASH_LENGTH];
+        int hashOffset = 0;
+        for (Sha256Hash hash: hashes) {
+            // Missing hashes are left as zero, so only the branch length is meaningful
+            if (hash != null) {
+                final byte[] hashBigEndian = hash.getBytes();
+                for (int byteIdx = 0; byteIdx < HASH_LENGTH; byteIdx++) {
+                    newHashBytes[hashOffset + byteIdx] = hashBigEndian[HASH_LENGTH - 1 - byteIdx];
+                }
+            }
+            hashOffset += HASH_LENGTH;
+        }
+        this.hashBytes = newHashBytes;
+        this.hashes = null;
     }
 
     /**
@@ -179,7 +264,7 @@ public class MerkleBranch extends ChildMessage {
      * Get the number of hashes in this branch.
      */
     public int size() {
-        return hashes.size();
+        return hashBytes.length / HASH_LENGTH;
     }
 
     public int getOptimalEncodingMessageSize() {
@@ -206,7 +291,7 @@ public class MerkleBranch extends ChildMessage {
 
         MerkleBranch input = (MerkleBranch) o;
 
-        if (!hashes.equals(input.hashes)) return false;
+        if (!Arrays.equals(hashBytes, input.hashBytes)) return false;
         if (index != input.index) return false;
 
         return true;
@@ -215,7 +300,7 @@ public class MerkleBranch extends ChildMessage {
     @Override
     public int hashCode() {
         int result = 1;
-        result = 31 * result + hashes.hashCode();
+        result = 31 * result + Arrays.hashCode(hashBytes);
         result = 31 * result + (int) index;
         return result;
     }
@@ -0,0 +1,129 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bitcoinj.core;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Calculates one node of a block's transaction merkle tree on a fork/join
+ * pool, including hashing any transaction IDs not already known. The result
+ * is in serialized (little endian) order.
+ *
+ * <p>Node <code>j</code> at level <code>k</code> covers transactions
+ * <code>j * 2^k</code> onward. As in {@link Block#getMerkleRoot()}, a node
+ * whose right hand child does not exist is the hash of its left hand child
+ * twice, so each subtree can be calculated independently of its siblings.
+ * Subtrees of up to {@link #SEQUENTIAL_LEAVES} transactions are calculated
+ * in place on a single thread, larger ones split in two.</p>
+ */
+final class MerkleRootTask extends RecursiveTask<byte[]> {
+    private static final long serialVersionUID = 1;
+    private static final int HASH_LENGTH = 32;
+    /** log2 of {@link #SEQUENTIAL_LEAVES}. */
+    private static final int SEQUENTIAL_LEVELS = 8;
+    static final int SEQUENTIAL_LEAVES = 1 << SEQUENTIAL_LEVELS;
+
+    private final List<Transaction> transactions;
+    private final int level;
+    private final int node;
+
+    private MerkleRootTask(final List<Transaction> transactions, final int level, final int node) {
+        this.transactions = transactions;
+        this.level = level;
+        this.node = node;
+    }
+
+    /**
+     * Create the task for the root of the merkle tree of the given
+     * transactions, which must not be empty or change until it completes.
+     */
+    static MerkleRootTask forRoot(final List<Transaction> transactions) {
+        int depth = 0;
+        while ((1L << depth) < transactions.size()) {
+            depth++;
+        }
+        return new MerkleRootTask(transactions, depth, 0);
+    }
+
+    @Override
+    protected byte[] compute() {
+        if (level <= SEQUENTIAL_LEVELS) {
+            return computeSequentially();
+        }
+        final MerkleRootTask left = new MerkleRootTask(transactions, level - 1, node * 2);
+        final int rightNode = node * 2 + 1;
+        final byte[] output = new byte[HASH_LENGTH];
+        if (((long) rightNode << (level - 1)) >= transactions.size()) {
+            final byte[] leftHash = left.compute();
+            hashNode(MerkleBranch.DIGESTS.get(), leftHash, 0, leftHash, 0, output, 0);
+        } else {
+            final MerkleRootTask right = new MerkleRootTask(transactions, level - 1, rightNode);
+            right.fork();
+            final byte[] leftHash = left.compute();
+            final byte[] rightHash = right.join();
+            hashNode(MerkleBranch.DIGESTS.get(), leftHash, 0, rightHash, 0, output, 0);
+        }
+        return output;
+    }
+
+    /**
+     * Calculate the node from its transaction IDs, one level at a time,
+     * overwriting each level with the one above.
+     */
+    private byte[] computeSequentially() {
+        final int first = node << level;
+        final int count = Math.min(transactions.size() - first, 1 << level);
+        final byte[] nodes = new byte[count * HASH_LENGTH];
+        for (int txIdx = 0; txIdx < count; txIdx++) {
+            final byte[] txId = transactions.get(first + txIdx).getTxId().getBytes();
+            for (int byteIdx = 0; byteIdx < HASH_LENGTH; byteIdx++) {
+                nodes[txIdx * HASH_LENGTH + byteIdx] = txId[HASH_LENGTH - 1 - byteIdx];
+            }
+        }
+        final MessageDigest digest = MerkleBranch.DIGESTS.get();
+        int levelSize = count;
+        for (int levelIdx = 0; levelIdx < level; levelIdx++) {
+            for (int left = 0; left < levelSize; left += 2) {
+                final int right = Math.min(left + 1, levelSize - 1);
+                hashNode(digest, nodes, left * HASH_LENGTH, nodes, right * HASH_LENGTH, nodes, left / 2 * HASH_LENGTH);
+            }
+            levelSize = (levelSize + 1) / 2;
+        }
+        return nodes.length == HASH_LENGTH ? nodes : Arrays.copyOf(nodes, HASH_LENGTH);
+    }
+
+    /**
+     * Write SHA-256d(left || right) to the output, which may overlap either
+     * input.
+     */
+    private static void hashNode(final MessageDigest digest, final byte[] left, final int leftOffset,
+            final byte[] right, final int rightOffset, final byte[] output, final int outputOffset) {
+        try {
+            digest.reset();
+            digest.update(left, leftOffset, HASH_LENGTH);
+            digest.update(right, rightOffset, HASH_LENGTH);
+            digest.digest(output, outputOffset, HASH_LENGTH);
+            digest.update(output, outputOffset, HASH_LENGTH);
+            digest.digest(output, outputOffset, HASH_LENGTH);
+        } catch (DigestException e) {
+            throw new RuntimeException(e); // Cannot happen.
+        }
+    }
+}
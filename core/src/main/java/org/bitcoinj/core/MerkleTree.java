@@ -0,0 +1,267 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bitcoinj.core;
+
+import javax.annotation.Nullable;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The full transaction merkle tree of a block, from which a
+ * {@link MerkleBranch} proving any transaction is in the block can be read
+ * in O(log n), for example to serve the <code>tx_idx</code> and
+ * <code>mrkl_branch</code> fields consumed by
+ * <code>NameLookupLatestRestMerkleApi</code>.
+ *
+ * <p>Each level of the tree is held as a single array of hashes in
+ * serialized order, leaves (transaction IDs) first. As in Bitcoin, a level
+ * with an odd number of hashes pairs its last hash with itself. Transactions
+ * are looked up by ID through an open addressing table of indexes into the
+ * leaf level, rather than a map of hash objects.</p>
+ *
+ * <p>Instances are immutable and thread safe. See {@link MerkleTreeCache}
+ * to hold the trees of recently used blocks.</p>
+ */
+public final class MerkleTree {
+    private static final int HASH_LENGTH = 32;
+
+    private final NetworkParameters params;
+    private final Sha256Hash blockHash;
+    /** Levels of the tree, from the transaction IDs up to the root. */
+    private final byte[][] levels;
+    /** Transaction index plus one for each slot, or zero for an empty slot. */
+    private final int[] txIdSlots;
+
+    private MerkleTree(final NetworkParameters params, final Sha256Hash blockHash, final byte[][] levels) {
+        this.params = params;
+        this.blockHash = blockHash;
+        this.levels = levels;
+        this.txIdSlots = buildTxIdSlots(levels[0]);
+    }
+
+    /**
+     * Build the merkle tree of the transactions in the given block.
+     *
+     * @throws IllegalArgumentException if the block has no transactions.
+     * @throws VerificationException if the tree does not lead to the merkle
+     * root in the block header.
+     */
+    public static MerkleTree build(final Block block) throws VerificationException {
+        final List<Transaction> transactions = block.getTransactions();
+        if (transactions == null || transactions.isEmpty()) {
+            throw new IllegalArgumentException("Block " + block.getHashAsString() + " has no transactions");
+        }
+        final byte[] leaves = new byte[transactions.size() * HASH_LENGTH];
+        for (int txIdx = 0; txIdx < transactions.size(); txIdx++) {
+            final byte[] txId = transactions.get(txIdx).getTxId().getBytes();
+            for (int byteIdx = 0; byteIdx < HASH_LENGTH; byteIdx++) {
+                leaves[txIdx * HASH_LENGTH + byteIdx] = txId[HASH_LENGTH - 1 - byteIdx];
+            }
+        }
+        final byte[][] levels = buildLevels(leaves);
+        final MerkleTree tree = new MerkleTree(block.getParams(), block.getHash(), levels);
+        if (!tree.getRoot().equals(block.getMerkleRoot())) {
+            throw new VerificationException("Merkle tree of block " + block.getHashAsString()
+                + " does not match its merkle root");
+        }
+        return tree;
+    }
+
+    private static byte[][] buildLevels(final byte[] leaves) {
+        int depth = 0;
+        for (int count = leaves.length / HASH_LENGTH; count > 1; count = (count + 1) / 2) {
+            depth++;
+        }
+        final byte[][] levels = new byte[depth + 1][];
+        levels[0] = leaves;
+        final MessageDigest digest = MerkleBranch.DIGESTS.get();
+        try {
+            for (int level = 1; level <= depth; level++) {
+                final byte[] below = levels[level - 1];
+                final int belowCount = below.length / HASH_LENGTH;
+                final byte[] current = new byte[(belowCount + 1) / 2 * HASH_LENGTH];
+                for (int left = 0; left < belowCount; left += 2) {
+                    final int right = Math.min(left + 1, belowCount - 1);
+                    final int output = left / 2 * HASH_LENGTH;
+                    digest.reset();
+                    digest.update(below, left * HASH_LENGTH, HASH_LENGTH);
+                    digest.update(below, right * HASH_LENGTH, HASH_LENGTH);
+                    digest.digest(current, output, HASH_LENGTH);
+                    digest.update(current, output, HASH_LENGTH);
+                    digest.digest(current, output, HASH_LENGTH);
+                }
+                levels[level] = current;
+            }
+        } catch (DigestException e) {
+            throw new RuntimeException(e); // Cannot happen.
+        }
+        return levels;
+    }
+
+    private static int[] buildTxIdSlots(final byte[] leaves) {
+        final int txCount = leaves.length / HASH_LENGTH;
+        final int[] slots = new int[Integer.highestOneBit(txCount) * 4];
+        for (int txIdx = 0; txIdx < txCount; txIdx++) {
+            int slot = readSlotHash(leaves, txIdx * HASH_LENGTH) & (slots.length - 1);
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & (slots.length - 1);
+            }
+            slots[slot] = txIdx + 1;
+        }
+        return slots;
+    }
+
+    /**
+     * Transaction IDs are already uniformly distributed, so the first bytes
+     * serve as the slot hash.
+     */
+    private static int readSlotHash(final byte[] bytes, final int offset) {
+        return (bytes[offset] & 0xff) | ((bytes[offset + 1] & 0xff) << 8)
+            | ((bytes[offset + 2] & 0xff) << 16) | ((bytes[offset + 3] & 0xff) << 24);
+    }
+
+    public Sha256Hash getBlockHash() {
+        return blockHash;
+    }
+
+    public Sha256Hash getRoot() {
+        return Sha256Hash.wrapReversed(levels[levels.length - 1]);
+    }
+
+    public int getTransactionCount() {
+        return levels[0].length / HASH_LENGTH;
+    }
+
+    /**
+     * Get the number of hashes in each branch.
+     */
+    public int getDepth() {
+        return levels.length - 1;
+    }
+
+    /**
+     * Get the ID of the transaction at the given index within the block.
+     */
+    public Sha256Hash getTxId(final int txIndex) {
+        checkTxIndex(txIndex);
+        final byte[] txId = new byte[HASH_LENGTH];
+        System.arraycopy(levels[0], txIndex * HASH_LENGTH, txId, 0, HASH_LENGTH);
+        return Sha256Hash.wrapReversed(txId);
+    }
+
+    /**
+     * Get the index of the transaction with the given ID within the block,
+     * or -1 if it is not in the block.
+     */
+    public int indexOf(final Sha256Hash txId) {
+        final byte[] bytes = txId.getReversedBytes();
+        final byte[] leaves = levels[0];
+        int slot = readSlotHash(bytes, 0) & (txIdSlots.length - 1);
+        while (txIdSlots[slot] != 0) {
+            final int txIdx = txIdSlots[slot] - 1;
+            if (rangeEquals(bytes, leaves, txIdx * HASH_LENGTH)) {
+                return txIdx;
+            }
+            slot = (slot + 1) & (txIdSlots.length - 1);
+        }
+        return -1;
+    }
+
+    /**
+     * Get the branch from the transaction at the given index to the root.
+     * The branch index is the transaction index.
+     */
+    public MerkleBranch getBranch(final int txIndex) {
+        checkTxIndex(txIndex);
+        final int depth = getDepth();
+        final byte[] hashes = new byte[depth * HASH_LENGTH];
+        for (int level = 0; level < depth; level++) {
+            System.arraycopy(levels[level], getSibling(level, txIndex >>> level) * HASH_LENGTH,
+                hashes, level * HASH_LENGTH, HASH_LENGTH);
+        }
+        return MerkleBranch.wrap(params, hashes, txIndex);
+    }
+
+    /**
+     * Get the branch from the transaction with the given ID to the root, or
+     * null if the transaction is not in the block.
+     */
+    @Nullable
+    public MerkleBranch getBranch(final Sha256Hash txId) {
+        final int txIndex = indexOf(txId);
+        return txIndex < 0 ? null : getBranch(txIndex);
+    }
+
+    /**
+     * Get the branch of every transaction in the block, in block order. The
+     * tree is walked a level at a time, so each level is read once.
+     */
+    public List<MerkleBranch> getBranches() {
+        final int txCount = getTransactionCount();
+        final int depth = getDepth();
+        final byte[][] hashes = new byte[txCount][depth * HASH_LENGTH];
+        for (int level = 0; level < depth; level++) {
+            final byte[] current = levels[level];
+            for (int txIdx = 0; txIdx < txCount; txIdx++) {
+                System.arraycopy(current, getSibling(level, txIdx >>> level) * HASH_LENGTH,
+                    hashes[txIdx], level * HASH_LENGTH, HASH_LENGTH);
+            }
+        }
+        final List<MerkleBranch> branches = new ArrayList<>(txCount);
+        for (int txIdx = 0; txIdx < txCount; txIdx++) {
+            branches.add(MerkleBranch.wrap(params, hashes[txIdx], txIdx));
+        }
+        return branches;
+    }
+
+    /**
+     * Get the approximate memory used by the tree, in bytes.
+     */
+    public long getSizeInBytes() {
+        long size = txIdSlots.length * 4L;
+        for (byte[] level: levels) {
+            size += level.length;
+        }
+        return size;
+    }
+
+    /**
+     * Get the index of the hash paired with the given node in the given
+     * level; the node itself if it is the odd one out.
+     */
+    private int getSibling(final int level, final int node) {
+        final int sibling = node ^ 1;
+        return sibling < levels[level].length / HASH_LENGTH ? sibling : node;
+    }
+
+    private void checkTxIndex(final int txIndex) {
+        if (txIndex < 0 || txIndex >= getTransactionCount()) {
+            throw new IndexOutOfBoundsException("Transaction index " + txIndex + " out of range for block with "
+                + getTransactionCount() + " transactions");
+        }
+    }
+
+    private static boolean rangeEquals(final byte[] hash, final byte[] bytes, final int offset) {
+        for (int byteIdx = 0; byteIdx < HASH_LENGTH; byteIdx++) {
+            if (hash[byteIdx] != bytes[offset + byteIdx]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
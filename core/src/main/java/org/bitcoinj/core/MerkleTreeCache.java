@@ -0,0 +1,181 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bitcoinj.core;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A bounded cache of block {@link MerkleTree}s, keyed by block hash, for
+ * serving merkle proofs of transactions in recently requested blocks
+ * without rebuilding the tree for each proof.
+ *
+ * <p>The cache is bounded by the total size of the trees it holds (see
+ * {@link MerkleTree#getSizeInBytes()}) rather than the number of blocks, as
+ * a busy block can hold thousands of transactions. Once full, trees are
+ * evicted approximately least recently used first.</p>
+ *
+ * <p>This class is thread safe. Concurrent requests for a block which is not
+ * cached build its tree once.</p>
+ */
+public class MerkleTreeCache {
+    /** Maximum size used by {@link #MerkleTreeCache()}, in bytes. */
+    public static final long DEFAULT_MAXIMUM_SIZE = 64 * 1024 * 1024;
+
+    private final Cache<Sha256Hash, MerkleTree> trees;
+    private final long maximumSize;
+
+    public MerkleTreeCache() {
+        this(DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /**
+     * @param maximumSize maximum total size of the cached trees, in bytes.
+     */
+    public MerkleTreeCache(final long maximumSize) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("Maximum size must be positive");
+        }
+        this.maximumSize = maximumSize;
+        // A single segment, so the size bound and eviction order apply across
+        // all blocks rather than to each segment separately
+        this.trees = CacheBuilder.newBuilder()
+            .concurrencyLevel(1)
+            .maximumWeight(maximumSize)
+            .weigher(new Weigher<Sha256Hash, MerkleTree>() {
+                @Override
+                public int weigh(final Sha256Hash blockHash, final MerkleTree tree) {
+                    return (int) Math.min(Integer.MAX_VALUE, tree.getSizeInBytes());
+                }
+            })
+            .recordStats()
+            .build();
+    }
+
+    /**
+     * Get the merkle tree of the given block, building and caching it if it
+     * is not already cached.
+     *
+     * @throws IllegalArgumentException if the block has no transactions.
+     * @throws VerificationException if the transactions do not lead to the
+     * merkle root in the block header.
+     */
+    public MerkleTree get(final Block block) throws VerificationException {
+        try {
+            return trees.get(block.getHash(), new Callable<MerkleTree>() {
+                @Override
+                public MerkleTree call() {
+                    return MerkleTree.build(block);
+                }
+            });
+        } catch (UncheckedExecutionException | ExecutionError e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause()); // Cannot happen, tree building throws no checked exceptions
+        }
+    }
+
+    /**
+     * Get the cached merkle tree of the block with the given hash, or null
+     * if it is not cached.
+     */
+    @Nullable
+    public MerkleTree getIfPresent(final Sha256Hash blockHash) {
+        return trees.getIfPresent(blockHash);
+    }
+
+    /**
+     * Get the branch proving the transaction at the given index is in the
+     * block.
+     *
+     * @see MerkleTree#getBranch(int)
+     */
+    public MerkleBranch getBranch(final Block block, final int txIndex) throws VerificationException {
+        return get(block).getBranch(txIndex);
+    }
+
+    /**
+     * Get the branch proving the transaction with the given ID is in the
+     * block, or null if it is not in the block.
+     *
+     * @see MerkleTree#getBranch(Sha256Hash)
+     */
+    @Nullable
+    public MerkleBranch getBranch(final Block block, final Sha256Hash txId) throws VerificationException {
+        return get(block).getBranch(txId);
+    }
+
+    /**
+     * Get the branch of every transaction in the block, in block order, such
+     * as to publish proofs for a whole block once it is connected.
+     *
+     * @see MerkleTree#getBranches()
+     */
+    public List<MerkleBranch> getBranches(final Block block) throws VerificationException {
+        return get(block).getBranches();
+    }
+
+    /**
+     * Remove the tree of the block with the given hash, for example once the
+     * block is orphaned by a re-org.
+     */
+    public void invalidate(final Sha256Hash blockHash) {
+        trees.invalidate(blockHash);
+    }
+
+    /**
+     * Remove all entries. Does not reset the hit and miss counts.
+     */
+    public void clear() {
+        trees.invalidateAll();
+    }
+
+    /**
+     * Get the number of blocks whose trees are cached.
+     */
+    public long size() {
+        return trees.size();
+    }
+
+    public long getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Get the number of lookups which found a cached tree.
+     */
+    public long getHitCount() {
+        return trees.stats().hitCount();
+    }
+
+    /**
+     * Get the number of lookups which had to build a tree, or found none.
+     */
+    public long getMissCount() {
+        return trees.stats().missCount();
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bitcoinj.core;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import static org.bitcoinj.core.NetworkParameters.ProtocolVersion.WITNESS_VERSION;
+
+/**
+ * Parses the transactions of a serialized block on a fork/join pool. The
+ * serialized transactions are first scanned on the calling thread to find
+ * where each starts, as {@link Transaction#calcLength(byte[], int)} does but
+ * including segwit serialization, then runs of transactions are parsed, and
+ * their IDs hashed, in parallel.
+ *
+ * <p>The scan only looks for boundaries. If it finds anything it cannot
+ * follow (a truncated payload, for example), it gives up so the caller can
+ * fall back to sequential parsing, which reports the error as it always has.</p>
+ */
+final class ParallelTransactionParser {
+    /** Number of transactions parsed by each task. */
+    private static final int TRANSACTIONS_PER_TASK = 64;
+    /** Length of the previous outpoint at the start of each input. */
+    private static final int OUTPOINT_LENGTH = 36;
+    /** Size of the smallest possible transaction. */
+    private static final int MIN_TRANSACTION_SIZE = 10;
+
+    private ParallelTransactionParser() {
+    }
+
+    /**
+     * Find the offset of each of the given number of transactions, followed
+     * by the offset just after the last one.
+     *
+     * @return the offsets, or null if the transactions could not be scanned.
+     */
+    @Nullable
+    static int[] scan(final byte[] payload, final int start, final int transactionCount,
+            final MessageSerializer serializer) {
+        if (transactionCount < 0 || transactionCount > (payload.length - start) / MIN_TRANSACTION_SIZE) {
+            return null;
+        }
+        final int protocolVersion = serializer.getProtocolVersion();
+        final boolean allowWitness = (protocolVersion & Transaction.SERIALIZE_TRANSACTION_NO_WITNESS) == 0
+                && protocolVersion >= WITNESS_VERSION.getBitcoinProtocolVersion();
+        final int[] offsets = new int[transactionCount + 1];
+        int cursor = start;
+        try {
+            for (int txIdx = 0; txIdx < transactionCount; txIdx++) {
+                offsets[txIdx] = cursor;
+                cursor = skipTransaction(payload, cursor, allowWitness);
+                if (cursor <= offsets[txIdx] || cursor > payload.length) {
+                    return null;
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            return null;
+        }
+        offsets[transactionCount] = cursor;
+        return offsets;
+    }
+
+    /**
+     * Parse the transactions at the given offsets into the given array,
+     * labelling each as coming from the P2P network, as
+     * {@link Block#parseTransactions(int)} does.
+     *
+     * @param block block the transactions belong to.
+     * @param offsets offsets as returned by {@link #scan(byte[], int, int, MessageSerializer)}.
+     * @param context context whose confidence table the transactions are
+     * added to; pool threads may not have a context of their own.
+     * @throws ProtocolException if a transaction cannot be parsed.
+     */
+    static Transaction[] parse(final ForkJoinPool pool, final Block block, final byte[] payload,
+            final int[] offsets, final MessageSerializer serializer, final Context context)
+            throws ProtocolException {
+        final Transaction[] transactions = new Transaction[offsets.length - 1];
+        pool.invoke(new ParseTask(block, payload, offsets, serializer, context, transactions,
+            0, transactions.length));
+        return transactions;
+    }
+
+    /**
+     * Find the end of the transaction at the given offset, following
+     * Transaction.parse().
+     */
+    private static int skipTransaction(final byte[] payload, final int offset, final boolean allowWitness) {
+        // Skip the version
+        int cursor = offset + 4;
+        long inputCount = readVarInt(payload, cursor);
+        cursor += varIntSize(payload, cursor);
+        byte flags = 0;
+        if (inputCount == 0 && allowWitness) {
+            flags = payload[cursor++];
+            if (flags != 0) {
+                inputCount = readVarInt(payload, cursor);
+                cursor += varIntSize(payload, cursor);
+                cursor = skipInputs(payload, cursor, inputCount);
+                cursor = skipOutputs(payload, cursor);
+            }
+        } else {
+            cursor = skipInputs(payload, cursor, inputCount);
+            cursor = skipOutputs(payload, cursor);
+        }
+        if ((flags & 1) != 0) {
+            for (long inputIdx = 0; inputIdx < inputCount; inputIdx++) {
+                final long pushCount = readVarInt(payload, cursor);
+                cursor += varIntSize(payload, cursor);
+                for (long pushIdx = 0; pushIdx < pushCount; pushIdx++) {
+                    cursor = skipBytes(payload, cursor);
+                }
+            }
+        }
+        // Skip the lock time
+        return cursor + 4;
+    }
+
+    private static int skipInputs(final byte[] payload, final int offset, final long inputCount) {
+        int cursor = offset;
+        for (long inputIdx = 0; inputIdx < inputCount; inputIdx++) {
+            // Outpoint, script, then sequence (uint32)
+            cursor = skipBytes(payload, cursor + OUTPOINT_LENGTH) + 4;
+        }
+        return cursor;
+    }
+
+    private static int skipOutputs(final byte[] payload, final int offset) {
+        final long outputCount = readVarInt(payload, offset);
+        int cursor = offset + varIntSize(payload, offset);
+        for (long outputIdx = 0; outputIdx < outputCount; outputIdx++) {
+            // Value (uint64), then script
+            cursor = skipBytes(payload, cursor + 8);
+        }
+        return cursor;
+    }
+
+    /**
+     * Skip a length prefixed byte array.
+     */
+    private static int skipBytes(final byte[] payload, final int offset) {
+        final long length = readVarInt(payload, offset);
+        final long end = offset + varIntSize(payload, offset) + length;
+        if (end > payload.length) {
+            throw new ArrayIndexOutOfBoundsException("Length " + length + " extends past end of payload");
+        }
+        return (int) end;
+    }
+
+    private static int varIntSize(final byte[] payload, final int offset) {
+        final int first = 0xff & payload[offset];
+        if (first < 253) {
+            return 1;
+        } else if (first == 253) {
+            return 3;
+        } else if (first == 254) {
+            return 5;
+        } else {
+            return 9;
+        }
+    }
+
+    /**
+     * Read a variable length integer, treating any value which cannot fit in
+     * the payload as out of bounds.
+     */
+    private static long readVarInt(final byte[] payload, final int offset) {
+        final long value;
+        switch (varIntSize(payload, offset)) {
+            case 1:
+                return 0xff & payload[offset];
+            case 3:
+                value = Utils.readUint16(payload, offset + 1);
+                break;
+            case 5:
+                value = Utils.readUint32(payload, offset + 1);
+                break;
+            default:
+                value = Utils.readInt64(payload, offset + 1);
+                break;
+        }
+        if (value < 0 || value > payload.length) {
+            throw new ArrayIndexOutOfBoundsException("Variable length integer " + value + " out of range");
+        }
+        return value;
+    }
+
+    private static final class ParseTask extends RecursiveAction {
+        private static final long serialVersionUID = 1;
+
+        private final Block block;
+        private final byte[] payload;
+        private final int[] offsets;
+        private final MessageSerializer serializer;
+        private final Context context;
+        private final Transaction[] transactions;
+        private final int start;
+        private final int end;
+
+        private ParseTask(final Block block, final byte[] payload, final int[] offsets,
+                final MessageSerializer serializer, final Context context, final Transaction[] transactions,
+                final int start, final int end) {
+            this.block = block;
+            this.payload = payload;
+            this.offsets = offsets;
+            this.serializer = serializer;
+            this.context = context;
+            this.transactions = transactions;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= TRANSACTIONS_PER_TASK) {
+                for (int txIdx = start; txIdx < end; txIdx++) {
+                    final Transaction tx = new Transaction(block.getParams(), payload, offsets[txIdx], block,
+                        serializer, offsets[txIdx + 1] - offsets[txIdx], null);
+                    if (tx.getMessageSize() != offsets[txIdx + 1] - offsets[txIdx]) {
+                        throw new ProtocolException("Transaction " + txIdx + " is " + tx.getMessageSize()
+                            + " bytes but was scanned as " + (offsets[txIdx + 1] - offsets[txIdx]));
+                    }
+                    tx.getConfidence(context).setSource(TransactionConfidence.Source.NETWORK);
+                    transactions[txIdx] = tx;
+                }
+                return;
+            }
+            final int middle = (start + end) >>> 1;
+            invokeAll(new ParseTask(block, payload, offsets, serializer, context, transactions, start, middle),
+                new ParseTask(block, payload, offsets, serializer, context, transactions, middle, end));
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bitcoinj.core;
+
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Calculates the IDs of a range of transactions on a fork/join pool, so
+ * later calls to {@link Transaction#getTxId()} (for example from the merkle
+ * root check in {@link Block#verifyTransactions(int, java.util.EnumSet)})
+ * return the cached ID. Ranges of up to {@link #SEQUENTIAL_TRANSACTIONS} are
+ * hashed on a single thread, larger ones split in two.
+ */
+final class TransactionIdTask extends RecursiveAction {
+    private static final long serialVersionUID = 1;
+    static final int SEQUENTIAL_TRANSACTIONS = MerkleRootTask.SEQUENTIAL_LEAVES;
+
+    private final List<Transaction> transactions;
+    private final int start;
+    private final int end;
+
+    /**
+     * @param transactions transactions to hash, which must not change until
+     * the task completes.
+     * @param start index of the first transaction to hash.
+     * @param end index after the last transaction to hash.
+     */
+    TransactionIdTask(final List<Transaction> transactions, final int start, final int end) {
+        this.transactions = transactions;
+        this.start = start;
+        this.end = end;
+    }
+
+    @Override
+    protected void compute() {
+        if (end - start <= SEQUENTIAL_TRANSACTIONS) {
+            for (int txIdx = start; txIdx < end; txIdx++) {
+                transactions.get(txIdx).getTxId();
+            }
+            return;
+        }
+        final int middle = start + (end - start) / 2;
+        invokeAll(new TransactionIdTask(transactions, start, middle),
+            new TransactionIdTask(transactions, middle, end));
+    }
+}
@@ -15,10 +15,13 @@
  */
 package org.libdohj.core;
 
+import org.bitcoinj.core.AltcoinBlock;
 import org.bitcoinj.core.Block;
 import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.NetworkParameters;
 import org.bitcoinj.core.Sha256Hash;
 
+import javax.annotation.Nullable;
 import java.math.BigInteger;
 
 /**
@@ -33,6 +36,47 @@ public interface AltcoinNetworkParameters {
      */
     BigInteger getBlockDifficulty(Block block);
 
+    /**
+     * Get the hash compared against the difficulty target for the given block.
+     * This is the same value as {@link #getBlockDifficulty(Block)}, but without
+     * the conversion to BigInteger, for comparison via
+     * {@link UInt256#compareTo(Sha256Hash)}. By default this applies the
+     * algorithm from {@link ProofOfWorkAlgorithm#of(AltcoinNetworkParameters)}
+     * directly, or converts the result of getBlockDifficulty() if there is
+     * none.
+     */
+    default Sha256Hash getBlockDifficultyHash(Block block) {
+        final ProofOfWorkAlgorithm algorithm = ProofOfWorkAlgorithm.of(this);
+        if (algorithm == ProofOfWorkAlgorithm.SCRYPT && block instanceof AltcoinBlock) {
+            return ((AltcoinBlock) block).getScryptHash();
+        } else if (algorithm == ProofOfWorkAlgorithm.SHA256D) {
+            return block.getHash();
+        }
+        return Sha256Hash.wrap(UInt256.valueOf(getBlockDifficulty(block)).toBytes());
+    }
+
+    /**
+     * Get the algorithm {@link #getBlockDifficultyHash(Block)} applies to the
+     * serialized header, so it can be applied to raw header bytes without
+     * building a block. Returns null if the hash is not a plain function of
+     * the header bytes. Callers should use
+     * {@link ProofOfWorkAlgorithm#of(AltcoinNetworkParameters)}, which also
+     * returns null where a subclass overrides {@link #getBlockDifficulty(Block)}.
+     */
+    @Nullable
+    default ProofOfWorkAlgorithm getProofOfWorkAlgorithm() {
+        return null;
+    }
+
+    /**
+     * Get the easiest difficulty target allowed on this network, as per
+     * {@link NetworkParameters#getMaxTarget()}. Implementations which are not
+     * NetworkParameters must override this.
+     */
+    default UInt256 getMaxTargetAsUInt256() {
+        return UInt256.valueOfSaturated(((NetworkParameters) this).getMaxTarget());
+    }
+
     public boolean isTestNet();
 
     /**
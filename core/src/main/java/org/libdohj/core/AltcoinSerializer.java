@@ -3,6 +3,9 @@ package org.libdohj.core;
 import org.bitcoinj.core.*;
 import org.bitcoinj.core.Utils;
 
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
 /**
  * @author jrn
  */
@@ -17,33 +20,62 @@ public class AltcoinSerializer extends BitcoinSerializer {
         return new AltcoinBlock(getParameters(), payloadBytes, offset, this, length);
     }
 
+    /**
+     * Make a filtered block from a merkleblock message, including the AuxPoW
+     * header if there is one. The header and partial merkle tree are parsed
+     * in place from the payload, and the tree is checked against the header
+     * immediately, so the matched transaction hashes are already cached when
+     * {@link FilteredBlock#getTransactionHashes()} is called.
+     *
+     * @throws ProtocolException if the message is malformed, or the merkle
+     * root of the partial merkle tree does not match the header.
+     */
     @Override
     public FilteredBlock makeFilteredBlock(byte[] payloadBytes) throws ProtocolException {
-        long blockVersion = Utils.readUint32(payloadBytes, 0);
-        int headerSize = Block.HEADER_SIZE;
-
-        byte[] headerBytes = new byte[Block.HEADER_SIZE + 1];
-        System.arraycopy(payloadBytes, 0, headerBytes, 0, headerSize);
-        headerBytes[80] = 0; // Need to provide 0 transactions so the block header can be constructed
-
-        if (this.getParameters() instanceof AuxPoWNetworkParameters) {
-            final AuxPoWNetworkParameters auxPoWParams = (AuxPoWNetworkParameters) this.getParameters();
-            if (auxPoWParams.isAuxPoWBlockVersion(blockVersion)) {
-                final AltcoinBlock header = (AltcoinBlock) makeBlock(headerBytes, 0, Message.UNKNOWN_LENGTH);
-                final AuxPoW auxpow = new AuxPoW(this.getParameters(), payloadBytes, Block.HEADER_SIZE, null, this);
-                header.setAuxPoW(auxpow);
-
-                int pmtOffset = headerSize + auxpow.getMessageSize();
-                int pmtLength = payloadBytes.length - pmtOffset;
-                byte[] pmtBytes = new byte[pmtLength];
-                System.arraycopy(payloadBytes, pmtOffset, pmtBytes, 0, pmtLength);
-                PartialMerkleTree pmt = new PartialMerkleTree(this.getParameters(), pmtBytes, 0);
-
-                return new FilteredBlock(this.getParameters(), header, pmt);
-            }
+        if (payloadBytes.length < Block.HEADER_SIZE) {
+            throw new ProtocolException("Merkle block is too short: " + payloadBytes.length + " bytes");
+        }
+        final long blockVersion = Utils.readUint32(payloadBytes, 0);
+        int headerLength = Block.HEADER_SIZE;
+        if (this.getParameters() instanceof AuxPoWNetworkParameters
+            && ((AuxPoWNetworkParameters) this.getParameters()).isAuxPoWBlockVersion(blockVersion)) {
+            headerLength += AuxPoW.calcLength(payloadBytes, Block.HEADER_SIZE);
+        }
+
+        // Giving the header its exact length marks it as having no transaction count after it
+        final Block header = makeBlock(payloadBytes, 0, headerLength);
+        final PartialMerkleTree pmt = new PartialMerkleTree(this.getParameters(), payloadBytes, headerLength);
+        final FilteredBlock block = new FilteredBlock(this.getParameters(), header, pmt);
+        try {
+            block.getTransactionHashes();
+        } catch (ProtocolException e) {
+            throw e;
+        } catch (VerificationException e) {
+            throw new ProtocolException(e.getMessage(), e);
         }
+        return block;
+    }
+
+    /**
+     * Start reading a headers message from the given stream, so headers can
+     * be verified as they arrive. The header count is read immediately.
+     *
+     * @param in stream positioned at the start of the message payload.
+     * @throws ProtocolException if the header count is invalid.
+     * @throws java.io.UncheckedIOException if the stream cannot be read.
+     */
+    public HeadersMessageReader makeHeadersReader(final InputStream in) throws ProtocolException {
+        return new HeadersMessageReader(this, in, null);
+    }
 
-        // We are either not in AuxPoW mode, or the block is not an AuxPoW block.
-        return super.makeFilteredBlock(payloadBytes);
+    /**
+     * Start reading a headers message from the given buffer, so headers can
+     * be verified as they are parsed. Reading advances the buffer's position.
+     *
+     * @param buffer buffer positioned at the start of the message payload.
+     * @throws ProtocolException if the header count is invalid.
+     */
+    public HeadersMessageReader makeHeadersReader(final ByteBuffer buffer) throws ProtocolException {
+        return new HeadersMessageReader(this, null, buffer);
     }
 }
@@ -24,4 +24,13 @@ public interface AuxPoWNetworkParameters extends AltcoinNetworkParameters {
     boolean isAuxPoWBlockVersion(long version);
 
     int getChainID();
+
+    /**
+     * Get the number of blocks a header must be below the chain head before
+     * {@link AuxPoWRetentionPolicy} releases its AuxPoW header. This should
+     * comfortably exceed the deepest reorganisation expected on the network.
+     */
+    default int getAuxPoWRetentionDepth() {
+        return AuxPoWRetentionPolicy.DEFAULT_DEPTH;
+    }
 }
@@ -0,0 +1,161 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.libdohj.core;
+
+import org.bitcoinj.core.AbstractBlockChain;
+import org.bitcoinj.core.AltcoinBlock;
+import org.bitcoinj.core.StoredBlock;
+import org.bitcoinj.core.listeners.NewBestBlockListener;
+import org.bitcoinj.core.listeners.ReorganizeListener;
+import org.bitcoinj.utils.Threading;
+
+import java.util.ArrayDeque;
+import java.util.List;
+
+/**
+ * Releases the AuxPoW headers of blocks once they are a given depth below
+ * the chain head.
+ *
+ * <p>Headers connected to a chain keep their AuxPoW header, including the
+ * parent block, coinbase transaction and merkle branches, for as long as the
+ * {@link StoredBlock} is referenced, for example from block store caches or
+ * reorganisation lists. Once a header is buried deep enough that it will not
+ * be verified again, the AuxPoW header is only dead weight, so this policy
+ * drops it with {@link AltcoinBlock#releaseAuxPoW()}. As the same
+ * {@link StoredBlock} instances are shared between the chain and its store's
+ * caches, releasing them here frees the memory for all of them.</p>
+ *
+ * <p>Only blocks the chain has connected are released, so they have already
+ * passed proof of work checks.</p>
+ */
+public class AuxPoWRetentionPolicy implements NewBestBlockListener, ReorganizeListener {
+    /** Default depth below the chain head at which AuxPoW headers are released. */
+    public static final int DEFAULT_DEPTH = 100;
+
+    private final int depth;
+    /** Blocks still holding their AuxPoW header, oldest first. */
+    private final ArrayDeque<StoredBlock> retained = new ArrayDeque<>();
+    private long releasedCount;
+
+    /**
+     * Create a policy using the depth set by the network parameters, see
+     * {@link AuxPoWNetworkParameters#getAuxPoWRetentionDepth()}.
+     */
+    public AuxPoWRetentionPolicy(final AuxPoWNetworkParameters params) {
+        this(params.getAuxPoWRetentionDepth());
+    }
+
+    /**
+     * @param depth number of blocks a block must be below the chain head
+     * before its AuxPoW header is released.
+     */
+    public AuxPoWRetentionPolicy(final int depth) {
+        if (depth < 0) {
+            throw new IllegalArgumentException("Depth must not be negative, was " + depth);
+        }
+        this.depth = depth;
+    }
+
+    /**
+     * Register this policy with the given chain. Listeners run on the thread
+     * adding blocks, so AuxPoW headers are released as soon as they are
+     * deep enough.
+     */
+    public void register(final AbstractBlockChain chain) {
+        chain.addNewBestBlockListener(Threading.SAME_THREAD, this);
+        chain.addReorganizeListener(Threading.SAME_THREAD, this);
+    }
+
+    /**
+     * Remove this policy from the given chain.
+     */
+    public void unregister(final AbstractBlockChain chain) {
+        chain.removeNewBestBlockListener(this);
+        chain.removeReorganizeListener(this);
+    }
+
+    @Override
+    public synchronized void notifyNewBestBlock(final StoredBlock block) {
+        retain(block);
+        release(block.getHeight());
+    }
+
+    @Override
+    public synchronized void reorganize(final StoredBlock splitPoint, final List<StoredBlock> oldBlocks,
+                                        final List<StoredBlock> newBlocks) {
+        // Blocks leaving the chain are no longer ours to release, and are
+        // above the split point, so what remains is below all new blocks
+        retained.removeAll(oldBlocks);
+        // New blocks are listed newest first
+        for (int blockIdx = newBlocks.size() - 1; blockIdx >= 0; blockIdx--) {
+            retain(newBlocks.get(blockIdx));
+        }
+        if (!newBlocks.isEmpty()) {
+            release(newBlocks.get(0).getHeight());
+        }
+    }
+
+    /**
+     * Add a block to those waiting to be released, keeping them in height
+     * order. Blocks are normally the highest yet, so this only walks back from
+     * the newest block when a block is reported again or out of order.
+     */
+    private void retain(final StoredBlock block) {
+        if (!(block.getHeader() instanceof AltcoinBlock)
+            || !((AltcoinBlock) block.getHeader()).hasAuxPoW()) {
+            return;
+        }
+        if (retained.isEmpty() || retained.peekLast().getHeight() < block.getHeight()) {
+            retained.addLast(block);
+            return;
+        }
+        final ArrayDeque<StoredBlock> higher = new ArrayDeque<>();
+        while (!retained.isEmpty() && retained.peekLast().getHeight() >= block.getHeight()) {
+            final StoredBlock last = retained.pollLast();
+            if (!last.equals(block)) {
+                higher.push(last);
+            }
+        }
+        retained.addLast(block);
+        retained.addAll(higher);
+    }
+
+    private void release(final int headHeight) {
+        while (!retained.isEmpty() && headHeight - retained.peekFirst().getHeight() >= depth) {
+            ((AltcoinBlock) retained.pollFirst().getHeader()).releaseAuxPoW();
+            releasedCount++;
+        }
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Get the number of blocks currently waiting to have their AuxPoW header
+     * released.
+     */
+    public synchronized int getRetainedCount() {
+        return retained.size();
+    }
+
+    /**
+     * Get the number of AuxPoW headers released so far.
+     */
+    public synchronized long getReleasedCount() {
+        return releasedCount;
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.libdohj.core;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.bitcoinj.core.Sha256Hash;
+
+import java.security.MessageDigest;
+
+/**
+ * A bounded cache of AuxPoW headers which have passed proof of work checks,
+ * so that a header seen again (re-announced by a peer, re-presented in a
+ * re-org, or copied by <code>cloneAsHeader()</code>) is not checked again,
+ * including the scrypt hash of its parent header.
+ *
+ * <p>Entries are keyed by a hash of the whole serialized AuxPoW header (which
+ * contains the parent header), the child block hash and the chain ID; see
+ * {@link #getKey(byte[], int, int, Sha256Hash, int)}. Keying on the whole
+ * AuxPoW header rather than just its parent header means a malformed copy
+ * of an accepted header is still checked, and rejected. As the child block
+ * hash covers its difficulty target, a cached result holds for as long as the
+ * block does. Only successful checks are cached.</p>
+ *
+ * <p>This class is thread safe. Once the cache reaches its maximum size,
+ * entries are evicted approximately least recently used first.</p>
+ *
+ * @see org.bitcoinj.core.AltcoinBlock#setAuxPoWVerificationCache(AuxPoWVerificationCache)
+ */
+public class AuxPoWVerificationCache {
+    /** Maximum size used by {@link #AuxPoWVerificationCache()}, around two weeks of Dogecoin blocks. */
+    public static final int DEFAULT_MAXIMUM_SIZE = 20000;
+
+    private final Cache<Sha256Hash, Boolean> verified;
+    private final long maximumSize;
+
+    public AuxPoWVerificationCache() {
+        this(DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /**
+     * @param maximumSize maximum number of entries to hold.
+     */
+    public AuxPoWVerificationCache(final long maximumSize) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("Maximum size must be positive");
+        }
+        this.maximumSize = maximumSize;
+        this.verified = CacheBuilder.newBuilder()
+            .maximumSize(maximumSize)
+            .recordStats()
+            .build();
+    }
+
+    /**
+     * Calculate the cache key for an AuxPoW header.
+     *
+     * @param auxpow buffer containing the serialized AuxPoW header.
+     * @param offset location of the first byte of the header within the buffer.
+     * @param length length of the serialized header.
+     * @param childBlockHash hash of the block the AuxPoW header is attached to.
+     * @param chainId chain ID of the network the block belongs to.
+     */
+    public static Sha256Hash getKey(final byte[] auxpow, final int offset, final int length,
+            final Sha256Hash childBlockHash, final int chainId) {
+        final MessageDigest digest = Sha256Hash.newDigest();
+        digest.update(auxpow, offset, length);
+        digest.update(childBlockHash.getBytes());
+        digest.update((byte) chainId);
+        digest.update((byte) (chainId >>> 8));
+        digest.update((byte) (chainId >>> 16));
+        digest.update((byte) (chainId >>> 24));
+        return Sha256Hash.wrap(digest.digest());
+    }
+
+    /**
+     * Returns true if the AuxPoW header with the given key has previously
+     * passed proof of work checks. Counts as a hit or a miss.
+     */
+    public boolean contains(final Sha256Hash key) {
+        return verified.getIfPresent(key) != null;
+    }
+
+    /**
+     * Record that the AuxPoW header with the given key has passed proof of
+     * work checks.
+     */
+    public void put(final Sha256Hash key) {
+        verified.put(key, Boolean.TRUE);
+    }
+
+    /**
+     * Remove all entries, for example if the trusted network parameters
+     * change. Does not reset the hit and miss counts.
+     */
+    public void clear() {
+        verified.invalidateAll();
+    }
+
+    public long size() {
+        return verified.size();
+    }
+
+    public long getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Get the number of lookups which found a previously verified header.
+     */
+    public long getHitCount() {
+        return verified.stats().hitCount();
+    }
+
+    /**
+     * Get the number of lookups which did not find a previously verified
+     * header.
+     */
+    public long getMissCount() {
+        return verified.stats().missCount();
+    }
+}
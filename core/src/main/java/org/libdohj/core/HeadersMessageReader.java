@@ -0,0 +1,261 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.libdohj.core;
+
+import org.bitcoinj.core.AltcoinBlock;
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.HeadersMessage;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.ProtocolException;
+import org.bitcoinj.core.Utils;
+
+import javax.annotation.Nullable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads the block headers from a headers message one at a time, so each can
+ * be passed on for verification (for example with
+ * {@link ProofOfWorkVerificationStage#submitAll(HeadersMessageReader)}) as soon as it has been read, rather
+ * than after the whole message has been buffered and parsed.
+ *
+ * <p>Each header, with its AuxPoW header if it has one, is read into a reused
+ * scratch buffer by walking its structure, and then copied once into an array
+ * of exactly its size, which the resulting {@link AltcoinBlock} keeps if the
+ * serializer retains parsed bytes. This avoids {@link HeadersMessage}, where
+ * every header retains the complete message payload, which on AuxPoW chains
+ * can be several megabytes.</p>
+ *
+ * <p>Obtain a reader from {@link AltcoinSerializer#makeHeadersReader(InputStream)}
+ * or {@link AltcoinSerializer#makeHeadersReader(ByteBuffer)}. The header count
+ * is read when the reader is created; headers are read on each call to
+ * {@link #next()}. Not thread safe.</p>
+ */
+public class HeadersMessageReader implements Iterator<AltcoinBlock> {
+    /** Upper bound on a single header with its AuxPoW header. */
+    private static final int MAX_HEADER_SIZE = Block.MAX_BLOCK_SIZE;
+
+    private final NetworkParameters params;
+    private final AltcoinSerializer serializer;
+    private final int count;
+    private int remaining;
+
+    @Nullable private final InputStream in;
+    @Nullable private final ByteBuffer buffer;
+
+    private byte[] buf = new byte[1024];
+    private int length;
+
+    /**
+     * @param serializer serializer to parse each header with.
+     * @param in stream to read the message from, or null to read from the buffer.
+     * @param buffer buffer to read the message from, starting at its position.
+     */
+    HeadersMessageReader(final AltcoinSerializer serializer, @Nullable final InputStream in,
+                         @Nullable final ByteBuffer buffer) throws ProtocolException {
+        this.params = serializer.getParameters();
+        this.in = in;
+        this.buffer = buffer;
+        this.serializer = serializer;
+        final long headerCount = readVarInt();
+        if (headerCount > HeadersMessage.MAX_HEADERS) {
+            throw new ProtocolException("Too many headers: got " + headerCount + " which is larger than "
+                + HeadersMessage.MAX_HEADERS);
+        }
+        this.count = (int) headerCount;
+        this.remaining = count;
+    }
+
+    /**
+     * Get the number of headers in the message.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Get the number of headers not yet read.
+     */
+    public int getRemaining() {
+        return remaining;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return remaining > 0;
+    }
+
+    /**
+     * Read the next header from the message.
+     *
+     * @throws ProtocolException if the header is malformed or truncated.
+     */
+    @Override
+    public AltcoinBlock next() throws ProtocolException {
+        if (remaining == 0) {
+            throw new NoSuchElementException();
+        }
+        remaining--;
+        length = 0;
+        append(Block.HEADER_SIZE);
+        if (params instanceof AuxPoWNetworkParameters
+            && ((AuxPoWNetworkParameters) params).isAuxPoWBlockVersion(Utils.readUint32(buf, 0))) {
+            readAuxPoW();
+        }
+        if (readVarInt() != 0) {
+            throw new ProtocolException("Block header does not end with a null byte");
+        }
+        final byte[] payload = Arrays.copyOf(buf, length);
+        return new AltcoinBlock(params, payload, 0, serializer, payload.length);
+    }
+
+    /**
+     * Read an AuxPoW header, following the same layout as
+     * {@link org.bitcoinj.core.AuxPoW}.
+     */
+    private void readAuxPoW() throws ProtocolException {
+        readTransaction();
+        // Parent block hash
+        append(32);
+        readMerkleBranch();
+        readMerkleBranch();
+        // Parent block header
+        append(Block.HEADER_SIZE);
+    }
+
+    private void readTransaction() throws ProtocolException {
+        // Version
+        append(4);
+        long txInCount = readVarInt();
+        int flags = 0;
+        if (txInCount == 0) {
+            // Segwit marker, followed by flags
+            append(1);
+            flags = buf[length - 1];
+            if (flags == 0) {
+                // Lock time
+                append(4);
+                return;
+            }
+            txInCount = readVarInt();
+        }
+        for (long inputIdx = 0; inputIdx < txInCount; inputIdx++) {
+            // Previous outpoint
+            append(36);
+            appendBytes(readVarInt());
+            // Sequence
+            append(4);
+        }
+        final long txOutCount = readVarInt();
+        for (long outputIdx = 0; outputIdx < txOutCount; outputIdx++) {
+            // Value
+            append(8);
+            appendBytes(readVarInt());
+        }
+        if ((flags & 1) != 0) {
+            for (long inputIdx = 0; inputIdx < txInCount; inputIdx++) {
+                final long pushCount = readVarInt();
+                for (long pushIdx = 0; pushIdx < pushCount; pushIdx++) {
+                    appendBytes(readVarInt());
+                }
+            }
+        }
+        // Lock time
+        append(4);
+    }
+
+    private void readMerkleBranch() throws ProtocolException {
+        final long hashCount = readVarInt();
+        appendBytes(hashCount * 32);
+        // Side mask
+        append(4);
+    }
+
+    /**
+     * Read a variable length integer, appending its encoding to the header.
+     */
+    private long readVarInt() throws ProtocolException {
+        append(1);
+        final int first = buf[length - 1] & 0xff;
+        final int size = first < 253 ? 0 : (first == 253 ? 2 : (first == 254 ? 4 : 8));
+        if (size == 0) {
+            return first;
+        }
+        append(size);
+        long value = 0;
+        for (int byteIdx = size - 1; byteIdx >= 0; byteIdx--) {
+            value = (value << 8) | (buf[length - size + byteIdx] & 0xffL);
+        }
+        return value;
+    }
+
+    private void appendBytes(final long count) throws ProtocolException {
+        if (count < 0 || count > MAX_HEADER_SIZE) {
+            throw new ProtocolException("Block header is too large");
+        }
+        append((int) count);
+    }
+
+    /**
+     * Read the given number of bytes from the message onto the end of the
+     * current header.
+     */
+    private void append(final int count) throws ProtocolException {
+        if (length + count > MAX_HEADER_SIZE) {
+            throw new ProtocolException("Block header is too large");
+        }
+        if (length + count > buf.length) {
+            buf = Arrays.copyOf(buf, Math.min(Math.max(buf.length * 2, length + count), MAX_HEADER_SIZE));
+        }
+        read(buf, length, count);
+        length += count;
+    }
+
+    /**
+     * Read exactly the given number of bytes from the underlying source.
+     *
+     * @throws ProtocolException if the message ends first.
+     */
+    private void read(final byte[] dest, final int offset, final int count) throws ProtocolException {
+        if (buffer != null) {
+            try {
+                buffer.get(dest, offset, count);
+            } catch (BufferUnderflowException e) {
+                throw new ProtocolException("Headers message is truncated", e);
+            }
+        } else {
+            try {
+                int read = 0;
+                while (read < count) {
+                    final int chunk = in.read(dest, offset + read, count - read);
+                    if (chunk < 0) {
+                        throw new ProtocolException("Headers message is truncated", new EOFException());
+                    }
+                    read += chunk;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
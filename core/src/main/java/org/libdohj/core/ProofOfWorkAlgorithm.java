@@ -0,0 +1,69 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.libdohj.core;
+
+import org.bitcoinj.core.Block;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Hash function applied to a serialized block header to produce the value
+ * compared against the difficulty target.
+ */
+public enum ProofOfWorkAlgorithm {
+    /** SHA-256 applied twice, as per Bitcoin. */
+    SHA256D,
+    /** Scrypt with N=1024, r=1, p=1, as per Litecoin. */
+    SCRYPT;
+
+    /** Whether each network parameters class overrides getBlockDifficulty(), by class. */
+    private static final ConcurrentMap<Class<?>, Boolean> BLOCK_DIFFICULTY_OVERRIDDEN = new ConcurrentHashMap<>();
+
+    /**
+     * Get the algorithm the given network applies to serialized headers, as
+     * per {@link AltcoinNetworkParameters#getProofOfWorkAlgorithm()}. Returns
+     * null if a subclass overrides
+     * {@link AltcoinNetworkParameters#getBlockDifficulty(Block)} below the
+     * class which reports the algorithm, so that override takes precedence.
+     */
+    @Nullable
+    public static ProofOfWorkAlgorithm of(final AltcoinNetworkParameters params) {
+        final ProofOfWorkAlgorithm algorithm = params.getProofOfWorkAlgorithm();
+        if (algorithm == null) {
+            return null;
+        }
+        final Class<?> paramsClass = params.getClass();
+        Boolean overridden = BLOCK_DIFFICULTY_OVERRIDDEN.get(paramsClass);
+        if (overridden == null) {
+            overridden = overridesBlockDifficulty(paramsClass);
+            BLOCK_DIFFICULTY_OVERRIDDEN.put(paramsClass, overridden);
+        }
+        return overridden ? null : algorithm;
+    }
+
+    private static boolean overridesBlockDifficulty(final Class<?> paramsClass) {
+        try {
+            final Class<?> difficultyClass = paramsClass.getMethod("getBlockDifficulty", Block.class)
+                .getDeclaringClass();
+            final Class<?> algorithmClass = paramsClass.getMethod("getProofOfWorkAlgorithm").getDeclaringClass();
+            return difficultyClass != algorithmClass && algorithmClass.isAssignableFrom(difficultyClass);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e); // Cannot happen, both methods are on the interface.
+        }
+    }
+}
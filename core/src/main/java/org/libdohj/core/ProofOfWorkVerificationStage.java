@@ -0,0 +1,291 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.libdohj.core;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.bitcoinj.core.AltcoinBlock;
+import org.bitcoinj.core.ProtocolException;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Optional stage which checks the proof of work of headers on a dedicated,
+ * fixed size, thread pool rather than on the thread that received them
+ * (usually the peer network thread), so a burst of headers does not stall
+ * message processing.
+ *
+ * <p>The stage holds at most <code>threads + queueCapacity</code> headers,
+ * counting from submission until their result is delivered, so headers held
+ * back behind a slow one still take up space. {@link #submit(AltcoinBlock)}
+ * blocks while it is full, and
+ * {@link #trySubmit(AltcoinBlock)} returns null instead, so callers can stop
+ * reading from a peer until the stage catches up.</p>
+ *
+ * <p>Futures complete in the order headers were submitted, whatever order
+ * the checks finish in, so callbacks added with a direct executor can pass
+ * headers straight on to the chain. Headers which pass keep their scrypt
+ * hash, so when the chain later calls <code>verifyHeader()</code> the proof
+ * of work check is a cheap comparison.</p>
+ */
+public class ProofOfWorkVerificationStage implements Closeable {
+    private final ThreadPoolExecutor executor;
+    private final Semaphore capacity;
+    private final int queueCapacity;
+
+    /** Submitted entries not yet delivered, in submission order. */
+    private final Queue<Entry> undelivered = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger deliveryWork = new AtomicInteger();
+
+    private final AtomicLong submittedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong startedCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    /**
+     * @param threads number of verification threads.
+     * @param queueCapacity number of headers which may wait for a thread
+     * before submission blocks.
+     */
+    public ProofOfWorkVerificationStage(final int threads, final int queueCapacity) {
+        if (threads < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Threads and queue capacity must be positive");
+        }
+        this.queueCapacity = queueCapacity;
+        this.capacity = new Semaphore(threads + queueCapacity);
+        // The semaphore bounds the headers in the stage. Permits are released on delivery, which can be
+        // before the delivering thread has returned to take the next task, so the queue must not be bounded too.
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactoryBuilder().setNameFormat("PoW verification %d").setDaemon(true).build());
+    }
+
+    /**
+     * Submit a header for verification, waiting for space if the stage is
+     * full.
+     *
+     * @return a future for the result, completed in submission order.
+     * @throws InterruptedException if interrupted while waiting for space.
+     */
+    public ListenableFuture<ProofOfWorkVerifier.Result> submit(final AltcoinBlock header)
+            throws InterruptedException {
+        capacity.acquire();
+        return enqueue(header);
+    }
+
+    /**
+     * Submit a header for verification if the stage has space.
+     *
+     * @return a future for the result, completed in submission order, or
+     * null if the stage is saturated.
+     */
+    @Nullable
+    public ListenableFuture<ProofOfWorkVerifier.Result> trySubmit(final AltcoinBlock header) {
+        if (!capacity.tryAcquire()) {
+            rejectedCount.incrementAndGet();
+            return null;
+        }
+        return enqueue(header);
+    }
+
+    /**
+     * Submit each header of a headers message for verification as soon as it
+     * has been read, waiting for space whenever the stage is full, so checks
+     * run while the rest of the message is still being parsed.
+     *
+     * @return futures for the results, in message order.
+     * @throws InterruptedException if interrupted while waiting for space.
+     * @throws ProtocolException if a header is malformed. Headers read before
+     * it have already been submitted.
+     */
+    public List<ListenableFuture<ProofOfWorkVerifier.Result>> submitAll(final HeadersMessageReader reader)
+            throws InterruptedException, ProtocolException {
+        final List<ListenableFuture<ProofOfWorkVerifier.Result>> futures = new ArrayList<>(reader.getRemaining());
+        while (reader.hasNext()) {
+            futures.add(submit(reader.next()));
+        }
+        return futures;
+    }
+
+    private synchronized ListenableFuture<ProofOfWorkVerifier.Result> enqueue(final AltcoinBlock header) {
+        final Entry entry = new Entry(header);
+        undelivered.add(entry);
+        submittedCount.incrementAndGet();
+        try {
+            executor.execute(entry);
+        } catch (RejectedExecutionException e) {
+            entry.complete(null, e);
+        }
+        return entry.future;
+    }
+
+    private void recordWait(final long waitNanos) {
+        startedCount.incrementAndGet();
+        totalWaitNanos.addAndGet(waitNanos);
+        long max = maxWaitNanos.get();
+        while (waitNanos > max && !maxWaitNanos.compareAndSet(max, waitNanos)) {
+            max = maxWaitNanos.get();
+        }
+    }
+
+    /**
+     * Complete the futures of every finished entry at the head of the
+     * undelivered queue, releasing their space in the stage. Only one thread
+     * delivers at a time; a thread which finds delivery in progress leaves
+     * the work to it.
+     */
+    private void deliver() {
+        if (deliveryWork.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            Entry head;
+            while ((head = undelivered.peek()) != null && head.done) {
+                undelivered.poll();
+                capacity.release();
+                if (head.failure != null) {
+                    head.future.setException(head.failure);
+                } else {
+                    head.future.set(head.result);
+                }
+            }
+            missed = deliveryWork.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    /**
+     * Get the number of headers waiting for a verification thread.
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Returns true if the stage is full, so {@link #trySubmit(AltcoinBlock)}
+     * would currently fail.
+     */
+    public boolean isSaturated() {
+        return capacity.availablePermits() == 0;
+    }
+
+    /**
+     * Get the number of headers submitted whose results have not yet been
+     * delivered.
+     */
+    public int getUndeliveredCount() {
+        return undelivered.size();
+    }
+
+    public long getSubmittedCount() {
+        return submittedCount.get();
+    }
+
+    /**
+     * Get the number of times {@link #trySubmit(AltcoinBlock)} returned null
+     * because the stage was saturated.
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * Get the mean time headers waited in the queue before verification
+     * started, in nanoseconds.
+     */
+    public long getMeanWaitNanos() {
+        final long started = startedCount.get();
+        return started == 0 ? 0 : totalWaitNanos.get() / started;
+    }
+
+    /**
+     * Get the longest time a header waited in the queue before verification
+     * started, in nanoseconds.
+     */
+    public long getMaxWaitNanos() {
+        return maxWaitNanos.get();
+    }
+
+    /**
+     * Stop accepting headers. Headers already submitted are still verified
+     * and delivered.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    /**
+     * Wait for all submitted headers to be verified, after {@link #close()}.
+     *
+     * @return true if verification finished, false if the timeout elapsed.
+     */
+    public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    private class Entry implements Runnable {
+        private final AltcoinBlock header;
+        private final long enqueuedNanos = System.nanoTime();
+        private final SettableFuture<ProofOfWorkVerifier.Result> future = SettableFuture.create();
+        private ProofOfWorkVerifier.Result result;
+        private Throwable failure;
+        /** Written after result and failure, so their values are visible to the delivering thread. */
+        private volatile boolean done;
+
+        private Entry(final AltcoinBlock header) {
+            this.header = header;
+        }
+
+        @Override
+        public void run() {
+            recordWait(System.nanoTime() - enqueuedNanos);
+            ProofOfWorkVerifier.Result result = null;
+            Throwable failure = null;
+            try {
+                result = ProofOfWorkVerifier.verify(header);
+            } catch (Throwable t) {
+                failure = t;
+            }
+            complete(result, failure);
+        }
+
+        private void complete(@Nullable final ProofOfWorkVerifier.Result result, @Nullable final Throwable failure) {
+            this.result = result;
+            this.failure = failure;
+            this.done = true;
+            deliver();
+        }
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.libdohj.core;
+
+import org.bitcoinj.core.AltcoinBlock;
+import org.bitcoinj.core.VerificationException;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Verifies the proof of work of a batch of headers (such as the contents of a
+ * headers message) in parallel. Scrypt and AuxPoW checks are independent per
+ * header, so the batch is split into contiguous runs which are checked as
+ * fork/join tasks; the caller may itself be running on the pool. Within a
+ * run, scrypt hashes are calculated a few headers at a time via
+ * {@link AltcoinBlock#precomputeScryptHashes(List)}, so a vectorised scrypt
+ * provider can hash them together.
+ *
+ * <p>Results are returned in the same order as the headers. Verification stops
+ * at the first failure: every header before it is {@link Status#VALID}, the
+ * failing header is {@link Status#INVALID} and every header after it is
+ * reported as {@link Status#SKIPPED}, whether or not it was checked.</p>
+ */
+public class ProofOfWorkVerifier {
+    /**
+     * Number of tasks to submit per available processor, so that a slow run
+     * (i.e. AuxPoW headers) does not leave the other threads idle.
+     */
+    private static final int TASKS_PER_PROCESSOR = 4;
+    /**
+     * Number of headers within a run whose scrypt hashes are calculated
+     * together, see {@link AltcoinBlock#precomputeScryptHashes(List)}. This
+     * is the widest batch the vectorised provider hashes at once.
+     */
+    private static final int SCRYPT_BATCH_SIZE = 8;
+
+    private ProofOfWorkVerifier() {
+    }
+
+    /**
+     * Verify the proof of work of the given headers on the common fork/join pool.
+     *
+     * @see #verify(List, ForkJoinPool)
+     */
+    public static List<Result> verify(final List<? extends AltcoinBlock> headers) {
+        return verify(headers, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Verify the proof of work of the given headers, spreading the work across
+     * the given pool. Blocks until all the checks have completed; if called
+     * from a worker thread of the pool, that thread takes part in the checks.
+     *
+     * @param headers headers to check, in chain order.
+     * @param pool pool to run the checks on.
+     * @return one result per header, in the same order as the headers.
+     */
+    public static List<Result> verify(final List<? extends AltcoinBlock> headers, final ForkJoinPool pool) {
+        final int headerCount = headers.size();
+        if (headerCount == 0) {
+            return Collections.emptyList();
+        }
+
+        final Result[] results = new Result[headerCount];
+        final AtomicInteger firstFailure = new AtomicInteger(headerCount);
+        final int taskCount = Math.min(headerCount, pool.getParallelism() * TASKS_PER_PROCESSOR);
+        final int runLength = (headerCount + taskCount - 1) / taskCount;
+        pool.invoke(new VerifyTask(headers, 0, headerCount, runLength, results, firstFailure));
+
+        final int failedIdx = firstFailure.get();
+        final List<Result> resultList = new ArrayList<>(headerCount);
+        for (int headerIdx = 0; headerIdx < headerCount; headerIdx++) {
+            if (headerIdx > failedIdx) {
+                resultList.add(new Result(headers.get(headerIdx), Status.SKIPPED, null));
+            } else {
+                resultList.add(results[headerIdx]);
+            }
+        }
+        return resultList;
+    }
+
+    /**
+     * Verifies a range of the batch, splitting it in half until it is no
+     * longer than the run length.
+     */
+    private static class VerifyTask extends RecursiveAction {
+        private static final long serialVersionUID = 1;
+
+        private final List<? extends AltcoinBlock> headers;
+        private final int start;
+        private final int end;
+        private final int runLength;
+        private final Result[] results;
+        private final AtomicInteger firstFailure;
+
+        private VerifyTask(final List<? extends AltcoinBlock> headers, final int start, final int end,
+                           final int runLength, final Result[] results, final AtomicInteger firstFailure) {
+            this.headers = headers;
+            this.start = start;
+            this.end = end;
+            this.runLength = runLength;
+            this.results = results;
+            this.firstFailure = firstFailure;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= runLength) {
+                verifyRun(headers, start, end, results, firstFailure);
+                return;
+            }
+            final int middle = start + (end - start) / 2;
+            invokeAll(new VerifyTask(headers, start, middle, runLength, results, firstFailure),
+                new VerifyTask(headers, middle, end, runLength, results, firstFailure));
+        }
+    }
+
+    /**
+     * Verify a contiguous run of headers, calculating scrypt hashes a batch at
+     * a time, until the run ends or a header at or before the first known
+     * failure is found to be invalid.
+     */
+    private static void verifyRun(final List<? extends AltcoinBlock> headers, final int runStart, final int runEnd,
+                                  final Result[] results, final AtomicInteger firstFailure) {
+        for (int batchStart = runStart; batchStart < runEnd; batchStart += SCRYPT_BATCH_SIZE) {
+            final int batchEnd = Math.min(runEnd, batchStart + SCRYPT_BATCH_SIZE);
+            if (batchStart > firstFailure.get()) {
+                return;
+            }
+            try {
+                AltcoinBlock.precomputeScryptHashes(headers.subList(batchStart, batchEnd));
+            } catch (RuntimeException e) {
+                // Fall through to checking each header individually, which reports the error
+            }
+            for (int headerIdx = batchStart; headerIdx < batchEnd; headerIdx++) {
+                if (headerIdx > firstFailure.get()) {
+                    return;
+                }
+                results[headerIdx] = verify(headers.get(headerIdx));
+                if (results[headerIdx].getStatus() != Status.VALID) {
+                    recordFailure(firstFailure, headerIdx);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Verify the proof of work of a single header.
+     */
+    public static Result verify(final AltcoinBlock header) {
+        try {
+            header.verifyProofOfWork();
+            return new Result(header, Status.VALID, null);
+        } catch (VerificationException e) {
+            return new Result(header, Status.INVALID, e);
+        } catch (RuntimeException e) {
+            return new Result(header, Status.INVALID, new VerificationException(e));
+        }
+    }
+
+    private static void recordFailure(final AtomicInteger firstFailure, final int headerIdx) {
+        int current = firstFailure.get();
+        while (headerIdx < current && !firstFailure.compareAndSet(current, headerIdx)) {
+            current = firstFailure.get();
+        }
+    }
+
+    /**
+     * Get the index of the first result which is not valid (see
+     * {@link Result#isValid()}), or -1 if all results are valid.
+     */
+    public static int indexOfFirstFailure(final List<Result> results) {
+        for (int resultIdx = 0; resultIdx < results.size(); resultIdx++) {
+            if (!results.get(resultIdx).isValid()) {
+                return resultIdx;
+            }
+        }
+        return -1;
+    }
+
+    public enum Status {
+        /** Proof of work meets the target. */
+        VALID,
+        /**
+         * Proof of work not checked, as the header is linked by hash to a
+         * trusted checkpoint. See
+         * {@link org.bitcoinj.core.CheckpointTrustingVerifier}.
+         */
+        CHECKPOINTED,
+        /** Proof of work is invalid, see {@link Result#getCause()}. */
+        INVALID,
+        /** Not checked because an earlier header in the batch was invalid. */
+        SKIPPED
+    }
+
+    /**
+     * Outcome of verifying the proof of work of a single header.
+     */
+    public static class Result {
+        private final AltcoinBlock header;
+        private final Status status;
+        @Nullable private final VerificationException cause;
+
+        public Result(final AltcoinBlock header, final Status status, @Nullable final VerificationException cause) {
+            this.header = header;
+            this.status = status;
+            this.cause = cause;
+        }
+
+        public AltcoinBlock getHeader() {
+            return header;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        /**
+         * Whether the header can be accepted, either because its proof of work
+         * was checked or because it is checkpointed.
+         */
+        public boolean isValid() {
+            return status == Status.VALID || status == Status.CHECKPOINTED;
+        }
+
+        /**
+         * Get the reason the header was rejected, if it is {@link Status#INVALID}.
+         */
+        @Nullable
+        public VerificationException getCause() {
+            return cause;
+        }
+
+        @Override
+        public String toString() {
+            return header.getHashAsString() + ": " + status + (cause == null ? "" : " (" + cause.getMessage() + ")");
+        }
+    }
+}
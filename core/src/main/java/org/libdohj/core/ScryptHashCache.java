@@ -0,0 +1,47 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.libdohj.core;
+
+import org.bitcoinj.core.Sha256Hash;
+
+import javax.annotation.Nullable;
+
+/**
+ * A cache of scrypt proof of work hashes, keyed by the (SHA256d) block hash.
+ * Scrypt costs around a thousand times as much as SHA256d, so looking up a
+ * header seen previously (after a restart, re-org or when a peer re-sends
+ * headers) is far cheaper than recalculating it.
+ *
+ * <p>Implementations must be thread safe, and must not throw on I/O problems;
+ * a cache failure should only ever cost a recalculation.</p>
+ *
+ * @see org.bitcoinj.core.AltcoinBlock#setScryptHashCache(ScryptHashCache)
+ */
+public interface ScryptHashCache {
+    /**
+     * Get the scrypt hash of the block with the given hash, if cached.
+     *
+     * @return the scrypt hash (big endian, as per
+     * {@link org.bitcoinj.core.AltcoinBlock#getScryptHash()}), or null if not cached.
+     */
+    @Nullable
+    Sha256Hash get(Sha256Hash blockHash);
+
+    /**
+     * Record the scrypt hash of the block with the given hash.
+     */
+    void put(Sha256Hash blockHash, Sha256Hash scryptHash);
+}
@@ -0,0 +1,24 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.libdohj.core;
+
+/**
+ * Network parameters for a chain whose block difficulty is the scrypt hash of
+ * the header (see {@link org.bitcoinj.core.AltcoinBlock#getScryptHash()}), so
+ * scrypt hashes can be calculated in bulk ahead of proof of work checks.
+ */
+public interface ScryptNetworkParameters extends AltcoinNetworkParameters {
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.libdohj.core;
+
+import org.bitcoinj.core.Sha256Hash;
+
+import javax.annotation.Nullable;
+import java.math.BigInteger;
+
+/**
+ * Immutable 256 bit unsigned integer, stored as four longs, for proof of work
+ * targets. Hashes are compared against a target directly from their bytes, so
+ * checking proof of work does not allocate (unlike converting both sides to
+ * {@link BigInteger}).
+ */
+public final class UInt256 implements Comparable<UInt256> {
+    /** Length of the value when encoded, in bytes. */
+    public static final int LENGTH = 32;
+
+    public static final UInt256 ZERO = new UInt256(0L, 0L, 0L, 0L);
+    public static final UInt256 MAX_VALUE = new UInt256(-1L, -1L, -1L, -1L);
+
+    private static final int WORDS = 4;
+    private static final int COMPACT_SIGN_BIT = 0x00800000;
+    private static final int COMPACT_MANTISSA_MASK = 0x007fffff;
+
+    /** Most significant word. */
+    private final long w0;
+    private final long w1;
+    private final long w2;
+    /** Least significant word. */
+    private final long w3;
+
+    private UInt256(final long w0, final long w1, final long w2, final long w3) {
+        this.w0 = w0;
+        this.w1 = w1;
+        this.w2 = w2;
+        this.w3 = w3;
+    }
+
+    /**
+     * Create a value from its four 64 bit words, most significant first.
+     */
+    public static UInt256 fromWords(final long w0, final long w1, final long w2, final long w3) {
+        return new UInt256(w0, w1, w2, w3);
+    }
+
+    /**
+     * Create a value from 32 big endian bytes.
+     */
+    public static UInt256 fromBytes(final byte[] bytes) {
+        if (bytes.length != LENGTH) {
+            throw new IllegalArgumentException("Expected " + LENGTH + " bytes but got " + bytes.length);
+        }
+        return new UInt256(readLong(bytes, 0), readLong(bytes, 8), readLong(bytes, 16), readLong(bytes, 24));
+    }
+
+    /**
+     * Convert a non-negative BigInteger of at most 256 bits.
+     *
+     * @throws IllegalArgumentException if the value is negative or too large.
+     */
+    public static UInt256 valueOf(final BigInteger value) {
+        if (value.signum() < 0 || value.bitLength() > LENGTH * 8) {
+            throw new IllegalArgumentException("Value out of range for 256 bit unsigned integer: " + value);
+        }
+        return new UInt256(value.shiftRight(192).longValue(), value.shiftRight(128).longValue(),
+            value.shiftRight(64).longValue(), value.longValue());
+    }
+
+    /**
+     * Convert a non-negative BigInteger, treating any value wider than 256
+     * bits as {@link #MAX_VALUE}. Useful for limits such as a network's
+     * maximum target, which every 256 bit value is then within.
+     *
+     * @throws IllegalArgumentException if the value is negative.
+     */
+    public static UInt256 valueOfSaturated(final BigInteger value) {
+        if (value.signum() >= 0 && value.bitLength() > LENGTH * 8) {
+            return MAX_VALUE;
+        }
+        return valueOf(value);
+    }
+
+    /**
+     * Decode a target from the compact form used in block headers, as per
+     * {@link org.bitcoinj.core.Utils#decodeCompactBits(long)}.
+     *
+     * @return the target, or null if the compact form encodes a negative
+     * number or one wider than 256 bits, neither of which is a valid target.
+     */
+    @Nullable
+    public static UInt256 decodeCompactBits(final long compact) {
+        final int size = (int) (compact >>> 24) & 0xff;
+        long mantissa = compact & COMPACT_MANTISSA_MASK;
+        if (size <= 3) {
+            mantissa >>>= 8 * (3 - size);
+            if (mantissa != 0 && (compact & COMPACT_SIGN_BIT) != 0 && size > 0) {
+                return null;
+            }
+            return new UInt256(0L, 0L, 0L, mantissa);
+        }
+        if (mantissa != 0 && (compact & COMPACT_SIGN_BIT) != 0) {
+            return null;
+        }
+
+        final int shift = 8 * (size - 3);
+        final int wordIdx = shift / Long.SIZE; // Counted from the least significant word
+        final int bitIdx = shift % Long.SIZE;
+        final long low = mantissa << bitIdx;
+        final long high = bitIdx == 0 ? 0L : mantissa >>> (Long.SIZE - bitIdx);
+        if (mantissa == 0) {
+            return ZERO;
+        } else if (wordIdx >= WORDS || (wordIdx == WORDS - 1 && high != 0)) {
+            return null;
+        }
+        return new UInt256(wordAt(3, wordIdx, low, high), wordAt(2, wordIdx, low, high),
+            wordAt(1, wordIdx, low, high), wordAt(0, wordIdx, low, high));
+    }
+
+    /**
+     * Get the word at the given position (counting from the least significant)
+     * of a value made of low at lowIdx and high at lowIdx + 1.
+     */
+    private static long wordAt(final int position, final int lowIdx, final long low, final long high) {
+        if (position == lowIdx) {
+            return low;
+        } else if (position == lowIdx + 1) {
+            return high;
+        } else {
+            return 0L;
+        }
+    }
+
+    /**
+     * Compare this value against a hash, interpreting the hash bytes as a big
+     * endian number (as {@link Sha256Hash#toBigInteger()} does). Does not
+     * allocate.
+     *
+     * @return a negative number, zero or a positive number as this value is
+     * less than, equal to or greater than the hash.
+     */
+    public int compareTo(final Sha256Hash hash) {
+        final byte[] bytes = hash.getBytes();
+        int result = Long.compareUnsigned(w0, readLong(bytes, 0));
+        if (result == 0) {
+            result = Long.compareUnsigned(w1, readLong(bytes, 8));
+            if (result == 0) {
+                result = Long.compareUnsigned(w2, readLong(bytes, 16));
+                if (result == 0) {
+                    result = Long.compareUnsigned(w3, readLong(bytes, 24));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Compare this value against 32 bytes of a buffer, interpreting them as a
+     * little endian number (the order in which hashes are produced and
+     * serialized). Does not allocate.
+     *
+     * @return a negative number, zero or a positive number as this value is
+     * less than, equal to or greater than the bytes.
+     */
+    public int compareToLittleEndian(final byte[] bytes, final int offset) {
+        int result = Long.compareUnsigned(w0, Long.reverseBytes(readLong(bytes, offset + 24)));
+        if (result == 0) {
+            result = Long.compareUnsigned(w1, Long.reverseBytes(readLong(bytes, offset + 16)));
+            if (result == 0) {
+                result = Long.compareUnsigned(w2, Long.reverseBytes(readLong(bytes, offset + 8)));
+                if (result == 0) {
+                    result = Long.compareUnsigned(w3, Long.reverseBytes(readLong(bytes, offset)));
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public int compareTo(final UInt256 other) {
+        int result = Long.compareUnsigned(w0, other.w0);
+        if (result == 0) {
+            result = Long.compareUnsigned(w1, other.w1);
+            if (result == 0) {
+                result = Long.compareUnsigned(w2, other.w2);
+                if (result == 0) {
+                    result = Long.compareUnsigned(w3, other.w3);
+                }
+            }
+        }
+        return result;
+    }
+
+    public boolean isZero() {
+        return (w0 | w1 | w2 | w3) == 0;
+    }
+
+    /**
+     * Get the value as 32 big endian bytes.
+     */
+    public byte[] toBytes() {
+        final byte[] bytes = new byte[LENGTH];
+        writeLong(w0, bytes, 0);
+        writeLong(w1, bytes, 8);
+        writeLong(w2, bytes, 16);
+        writeLong(w3, bytes, 24);
+        return bytes;
+    }
+
+    public BigInteger toBigInteger() {
+        return new BigInteger(1, toBytes());
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final UInt256 other = (UInt256) o;
+        return w0 == other.w0 && w1 == other.w1 && w2 == other.w2 && w3 == other.w3;
+    }
+
+    @Override
+    public int hashCode() {
+        long hash = w0;
+        hash = hash * 31 + w1;
+        hash = hash * 31 + w2;
+        hash = hash * 31 + w3;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    /**
+     * Returns the value as 64 hex digits, the same as a hash would be shown.
+     */
+    @Override
+    public String toString() {
+        return org.bitcoinj.core.Utils.HEX.encode(toBytes());
+    }
+
+    private static long readLong(final byte[] bytes, final int offset) {
+        return (bytes[offset] & 0xffL) << 56
+            | (bytes[offset + 1] & 0xffL) << 48
+            | (bytes[offset + 2] & 0xffL) << 40
+            | (bytes[offset + 3] & 0xffL) << 32
+            | (bytes[offset + 4] & 0xffL) << 24
+            | (bytes[offset + 5] & 0xffL) << 16
+            | (bytes[offset + 6] & 0xffL) << 8
+            | (bytes[offset + 7] & 0xffL);
+    }
+
+    private static void writeLong(final long value, final byte[] bytes, final int offset) {
+        for (int byteIdx = 0; byteIdx < 8; byteIdx++) {
+            bytes[offset + byteIdx] = (byte) (value >>> (56 - byteIdx * 8));
+        }
+    }
+}
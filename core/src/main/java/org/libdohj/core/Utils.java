@@ -16,8 +16,8 @@
  */
 package org.libdohj.core;
 
-import com.lambdaworks.crypto.SCrypt;
 import org.bitcoinj.core.Sha256Hash;
+import org.libdohj.crypto.ScryptProviders;
 
 import java.math.BigInteger;
 import java.security.GeneralSecurityException;
@@ -29,9 +29,22 @@ public class Utils {
     /**
      * Calculates the Scrypt hash of the given byte range.
      * The resulting hash is in small endian form.
+     *
+     * Delegates to the provider chosen by {@link ScryptProviders#getDefault()}.
      */
     public static byte[] scryptDigest(byte[] input) throws GeneralSecurityException {
-        return SCrypt.scrypt(input, input, 1024, 1, 1, 32);
+        return ScryptProviders.getDefault().scryptDigest(input);
+    }
+
+    /**
+     * Calculates the Scrypt hash of each of the given inputs, returning the
+     * hashes (in small endian form) in the same order. Where the selected
+     * provider supports it, inputs such as a batch of 80 byte headers are
+     * hashed several at a time, which is faster than calling
+     * {@link #scryptDigest(byte[])} for each.
+     */
+    public static byte[][] scryptDigest(byte[][] inputs) throws GeneralSecurityException {
+        return ScryptProviders.getDefault().scryptDigest(inputs);
     }
 
     public static String formatAsHash(final BigInteger value) {
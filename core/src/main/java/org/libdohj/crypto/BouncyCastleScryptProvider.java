@@ -0,0 +1,35 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.libdohj.crypto;
+
+import org.bouncycastle.crypto.generators.SCrypt;
+
+/**
+ * Scrypt provider backed by Bouncy Castle's pure Java implementation.
+ */
+public class BouncyCastleScryptProvider implements ScryptProvider {
+    public static final String NAME = "bouncycastle";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public byte[] scryptDigest(final byte[] input) {
+        return SCrypt.generate(input, input, ScryptEngine.N, 1, 1, ScryptEngine.HASH_LENGTH);
+    }
+}
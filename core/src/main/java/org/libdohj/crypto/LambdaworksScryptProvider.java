@@ -0,0 +1,60 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.libdohj.crypto;
+
+import com.lambdaworks.crypto.SCrypt;
+
+import java.security.GeneralSecurityException;
+
+/**
+ * Scrypt provider backed by lambdaworks, either its JNI library (only usable
+ * if lambdaworks managed to load a native library for this platform) or its
+ * pure Java implementation.
+ */
+public class LambdaworksScryptProvider implements ScryptProvider {
+    public static final String NAME_NATIVE = "lambdaworks-native";
+    public static final String NAME_JAVA = "lambdaworks-java";
+
+    private final boolean useNative;
+
+    /**
+     * @param useNative true to call the native library directly, false to use
+     * the pure Java implementation. The native variant throws
+     * {@link UnsatisfiedLinkError} if the library is not loaded, which causes it
+     * to fail the self-test in {@link ScryptProviders}.
+     */
+    public LambdaworksScryptProvider(final boolean useNative) {
+        this.useNative = useNative;
+    }
+
+    @Override
+    public String getName() {
+        return useNative ? NAME_NATIVE : NAME_JAVA;
+    }
+
+    @Override
+    public byte[] scryptDigest(final byte[] input) throws GeneralSecurityException {
+        if (useNative) {
+            final byte[] result = SCrypt.scryptN(input, input, ScryptEngine.N, 1, 1, ScryptEngine.HASH_LENGTH);
+            if (result == null) {
+                throw new GeneralSecurityException("Native scrypt failed");
+            }
+            return result;
+        } else {
+            return SCrypt.scryptJ(input, input, ScryptEngine.N, 1, 1, ScryptEngine.HASH_LENGTH);
+        }
+    }
+}
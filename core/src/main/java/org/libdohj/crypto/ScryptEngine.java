@@ -0,0 +1,281 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.libdohj.crypto;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Pure Java scrypt specialised for the parameters used by Litecoin-derived
+ * proof of work (N=1024, r=1, p=1, 32 byte output, input used as both
+ * password and salt).
+ *
+ * <p>Each thread gets its own engine via {@link #get()}, which owns the 128KiB
+ * V array and all PBKDF2 buffers, so hashing a header does not allocate beyond
+ * the returned digest (and not even that, if the caller supplies the output
+ * array). Instances are not thread safe.</p>
+ */
+public final class ScryptEngine {
+    /** CPU/memory cost parameter. */
+    public static final int N = 1024;
+    /** Length of the resulting hash, in bytes. */
+    public static final int HASH_LENGTH = 32;
+
+    /** Size of a BlockMix block (128 * r) in 32-bit words. */
+    private static final int BLOCK_WORDS = 32;
+    /** Size of a BlockMix block (128 * r) in bytes. */
+    private static final int BLOCK_BYTES = BLOCK_WORDS * 4;
+    private static final int SHA256_BLOCK_BYTES = 64;
+    private static final int SHA256_LENGTH = 32;
+
+    private static final ThreadLocal<ScryptEngine> ENGINES = new ThreadLocal<ScryptEngine>() {
+        @Override
+        protected ScryptEngine initialValue() {
+            return new ScryptEngine();
+        }
+    };
+
+    private final MessageDigest sha256;
+    private final byte[] innerPad = new byte[SHA256_BLOCK_BYTES];
+    private final byte[] outerPad = new byte[SHA256_BLOCK_BYTES];
+    private final byte[] innerHash = new byte[SHA256_LENGTH];
+    private final byte[] counter = new byte[4];
+    private final byte[] b = new byte[BLOCK_BYTES];
+    private final int[] x = new int[BLOCK_WORDS];
+    private final int[] v = new int[N * BLOCK_WORDS];
+
+    private ScryptEngine() {
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);  // Can't happen.
+        }
+    }
+
+    /**
+     * Get the engine for the current thread.
+     */
+    public static ScryptEngine get() {
+        return ENGINES.get();
+    }
+
+    /**
+     * Calculate the scrypt hash of the given input. The resulting hash is in
+     * small endian form.
+     */
+    public byte[] hash(final byte[] input) {
+        return hash(input, 0, input.length);
+    }
+
+    /**
+     * Calculate the scrypt hash of the given byte range. The resulting hash is in
+     * small endian form.
+     */
+    public byte[] hash(final byte[] input, final int offset, final int length) {
+        final byte[] output = new byte[HASH_LENGTH];
+        hash(input, offset, length, output, 0);
+        return output;
+    }
+
+    /**
+     * Calculate the scrypt hash of the given byte range, writing the
+     * {@link #HASH_LENGTH} byte result into the given output array.
+     */
+    public void hash(final byte[] input, final int offset, final int length,
+                     final byte[] output, final int outputOffset) {
+        expand(input, offset, length, x, 0, 1);
+        romix(x, v);
+        compress(input, offset, length, x, 0, 1, output, outputOffset);
+    }
+
+    /**
+     * Calculate B = PBKDF2-HMAC-SHA256(input, input, 1, 128), and store it as
+     * little endian words at <code>words[base + wordIdx * stride]</code>. The
+     * stride allows the vectorised engine to interleave several blocks.
+     */
+    void expand(final byte[] input, final int offset, final int length,
+                final int[] words, final int base, final int stride) {
+        setKey(input, offset, length);
+        for (int blockIdx = 0; blockIdx < BLOCK_BYTES / SHA256_LENGTH; blockIdx++) {
+            hmac(input, offset, length, blockIdx + 1, b, blockIdx * SHA256_LENGTH);
+        }
+        for (int wordIdx = 0; wordIdx < BLOCK_WORDS; wordIdx++) {
+            words[base + wordIdx * stride] = readInt(b, wordIdx * 4);
+        }
+    }
+
+    /**
+     * Calculate the final PBKDF2-HMAC-SHA256(input, B, 1, 32), where B is read
+     * from words laid out as per {@link #expand(byte[], int, int, int[], int, int)}.
+     */
+    void compress(final byte[] input, final int offset, final int length,
+                  final int[] words, final int base, final int stride,
+                  final byte[] output, final int outputOffset) {
+        for (int wordIdx = 0; wordIdx < BLOCK_WORDS; wordIdx++) {
+            writeInt(words[base + wordIdx * stride], b, wordIdx * 4);
+        }
+        setKey(input, offset, length);
+        hmac(b, 0, BLOCK_BYTES, 1, output, outputOffset);
+    }
+
+    /**
+     * Prepare the HMAC inner and outer pads for the given key.
+     */
+    private void setKey(final byte[] key, final int offset, final int length) {
+        final byte[] keyBytes;
+        final int keyOffset;
+        final int keyLength;
+
+        if (length > SHA256_BLOCK_BYTES) {
+            sha256.reset();
+            sha256.update(key, offset, length);
+            finishDigest(innerHash, 0);
+            keyBytes = innerHash;
+            keyOffset = 0;
+            keyLength = SHA256_LENGTH;
+        } else {
+            keyBytes = key;
+            keyOffset = offset;
+            keyLength = length;
+        }
+
+        for (int padIdx = 0; padIdx < SHA256_BLOCK_BYTES; padIdx++) {
+            final byte keyByte = padIdx < keyLength ? keyBytes[keyOffset + padIdx] : 0;
+            innerPad[padIdx] = (byte) (keyByte ^ 0x36);
+            outerPad[padIdx] = (byte) (keyByte ^ 0x5c);
+        }
+    }
+
+    /**
+     * Calculate a single PBKDF2 block, HMAC(key, message || INT(blockIndex)),
+     * using the pads from the last call to {@link #setKey(byte[], int, int)}.
+     */
+    private void hmac(final byte[] message, final int offset, final int length, final int blockIndex,
+                      final byte[] output, final int outputOffset) {
+        counter[0] = (byte) (blockIndex >>> 24);
+        counter[1] = (byte) (blockIndex >>> 16);
+        counter[2] = (byte) (blockIndex >>> 8);
+        counter[3] = (byte) blockIndex;
+
+        sha256.reset();
+        sha256.update(innerPad);
+        sha256.update(message, offset, length);
+        sha256.update(counter);
+        finishDigest(innerHash, 0);
+
+        sha256.update(outerPad);
+        sha256.update(innerHash);
+        finishDigest(output, outputOffset);
+    }
+
+    private void finishDigest(final byte[] output, final int outputOffset) {
+        try {
+            sha256.digest(output, outputOffset, SHA256_LENGTH);
+        } catch (DigestException e) {
+            throw new RuntimeException(e);  // Can't happen.
+        }
+    }
+
+    /**
+     * Apply ROMix to the block in x, using v as scratch space.
+     */
+    static void romix(final int[] x, final int[] v) {
+        for (int i = 0; i < N; i++) {
+            System.arraycopy(x, 0, v, i * BLOCK_WORDS, BLOCK_WORDS);
+            blockMix(x);
+        }
+        for (int i = 0; i < N; i++) {
+            final int j = (x[16] & (N - 1)) * BLOCK_WORDS;
+            for (int wordIdx = 0; wordIdx < BLOCK_WORDS; wordIdx++) {
+                x[wordIdx] ^= v[j + wordIdx];
+            }
+            blockMix(x);
+        }
+    }
+
+    /**
+     * BlockMix for r=1. With only two sub-blocks the output ordering is
+     * unchanged, so this can be done in place.
+     */
+    static void blockMix(final int[] b) {
+        for (int wordIdx = 0; wordIdx < 16; wordIdx++) {
+            b[wordIdx] ^= b[wordIdx + 16];
+        }
+        salsa20_8(b, 0);
+        for (int wordIdx = 0; wordIdx < 16; wordIdx++) {
+            b[wordIdx + 16] ^= b[wordIdx];
+        }
+        salsa20_8(b, 16);
+    }
+
+    /**
+     * Apply the Salsa20/8 core to the 16 words starting at the given offset.
+     */
+    static void salsa20_8(final int[] b, final int offset) {
+        final int b0 = b[offset], b1 = b[offset + 1], b2 = b[offset + 2], b3 = b[offset + 3];
+        final int b4 = b[offset + 4], b5 = b[offset + 5], b6 = b[offset + 6], b7 = b[offset + 7];
+        final int b8 = b[offset + 8], b9 = b[offset + 9], b10 = b[offset + 10], b11 = b[offset + 11];
+        final int b12 = b[offset + 12], b13 = b[offset + 13], b14 = b[offset + 14], b15 = b[offset + 15];
+        int x0 = b0, x1 = b1, x2 = b2, x3 = b3, x4 = b4, x5 = b5, x6 = b6, x7 = b7;
+        int x8 = b8, x9 = b9, x10 = b10, x11 = b11, x12 = b12, x13 = b13, x14 = b14, x15 = b15;
+
+        for (int round = 0; round < 8; round += 2) {
+            // Columns
+            x4 ^= Integer.rotateLeft(x0 + x12, 7);   x8 ^= Integer.rotateLeft(x4 + x0, 9);
+            x12 ^= Integer.rotateLeft(x8 + x4, 13);  x0 ^= Integer.rotateLeft(x12 + x8, 18);
+            x9 ^= Integer.rotateLeft(x5 + x1, 7);    x13 ^= Integer.rotateLeft(x9 + x5, 9);
+            x1 ^= Integer.rotateLeft(x13 + x9, 13);  x5 ^= Integer.rotateLeft(x1 + x13, 18);
+            x14 ^= Integer.rotateLeft(x10 + x6, 7);  x2 ^= Integer.rotateLeft(x14 + x10, 9);
+            x6 ^= Integer.rotateLeft(x2 + x14, 13);  x10 ^= Integer.rotateLeft(x6 + x2, 18);
+            x3 ^= Integer.rotateLeft(x15 + x11, 7);  x7 ^= Integer.rotateLeft(x3 + x15, 9);
+            x11 ^= Integer.rotateLeft(x7 + x3, 13);  x15 ^= Integer.rotateLeft(x11 + x7, 18);
+
+            // Rows
+            x1 ^= Integer.rotateLeft(x0 + x3, 7);    x2 ^= Integer.rotateLeft(x1 + x0, 9);
+            x3 ^= Integer.rotateLeft(x2 + x1, 13);   x0 ^= Integer.rotateLeft(x3 + x2, 18);
+            x6 ^= Integer.rotateLeft(x5 + x4, 7);    x7 ^= Integer.rotateLeft(x6 + x5, 9);
+            x4 ^= Integer.rotateLeft(x7 + x6, 13);   x5 ^= Integer.rotateLeft(x4 + x7, 18);
+            x11 ^= Integer.rotateLeft(x10 + x9, 7);  x8 ^= Integer.rotateLeft(x11 + x10, 9);
+            x9 ^= Integer.rotateLeft(x8 + x11, 13);  x10 ^= Integer.rotateLeft(x9 + x8, 18);
+            x12 ^= Integer.rotateLeft(x15 + x14, 7); x13 ^= Integer.rotateLeft(x12 + x15, 9);
+            x14 ^= Integer.rotateLeft(x13 + x12, 13); x15 ^= Integer.rotateLeft(x14 + x13, 18);
+        }
+
+        b[offset] = x0 + b0;         b[offset + 1] = x1 + b1;
+        b[offset + 2] = x2 + b2;     b[offset + 3] = x3 + b3;
+        b[offset + 4] = x4 + b4;     b[offset + 5] = x5 + b5;
+        b[offset + 6] = x6 + b6;     b[offset + 7] = x7 + b7;
+        b[offset + 8] = x8 + b8;     b[offset + 9] = x9 + b9;
+        b[offset + 10] = x10 + b10;  b[offset + 11] = x11 + b11;
+        b[offset + 12] = x12 + b12;  b[offset + 13] = x13 + b13;
+        b[offset + 14] = x14 + b14;  b[offset + 15] = x15 + b15;
+    }
+
+    private static int readInt(final byte[] buf, final int offset) {
+        return (buf[offset] & 0xff)
+            | (buf[offset + 1] & 0xff) << 8
+            | (buf[offset + 2] & 0xff) << 16
+            | (buf[offset + 3] & 0xff) << 24;
+    }
+
+    private static void writeInt(final int value, final byte[] buf, final int offset) {
+        buf[offset] = (byte) value;
+        buf[offset + 1] = (byte) (value >>> 8);
+        buf[offset + 2] = (byte) (value >>> 16);
+        buf[offset + 3] = (byte) (value >>> 24);
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.libdohj.crypto;
+
+import java.security.GeneralSecurityException;
+
+/**
+ * An implementation of the scrypt hash used for Litecoin-family proof of work,
+ * i.e. scrypt(input, input, N=1024, r=1, p=1, dkLen=32).
+ *
+ * <p>Implementations must be thread safe. See {@link ScryptProviders} for the
+ * built-in implementations and how the default is chosen.</p>
+ */
+public interface ScryptProvider {
+    /**
+     * Get a short name for this provider, used in log messages and for
+     * selecting it via the {@value ScryptProviders#PROVIDER_PROPERTY} system
+     * property.
+     */
+    String getName();
+
+    /**
+     * Calculates the Scrypt hash of the given input.
+     * The resulting hash is in small endian form.
+     */
+    byte[] scryptDigest(byte[] input) throws GeneralSecurityException;
+
+    /**
+     * Calculates the Scrypt hash of each of the given inputs, returning the
+     * hashes in the same order. Providers which can hash several inputs faster
+     * together than apart should override this; by default the inputs are
+     * hashed one at a time.
+     */
+    default byte[][] scryptDigest(byte[][] inputs) throws GeneralSecurityException {
+        final byte[][] outputs = new byte[inputs.length][];
+        for (int inputIdx = 0; inputIdx < inputs.length; inputIdx++) {
+            outputs[inputIdx] = scryptDigest(inputs[inputIdx]);
+        }
+        return outputs;
+    }
+}
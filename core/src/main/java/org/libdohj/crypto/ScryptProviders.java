@@ -0,0 +1,289 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.libdohj.crypto;
+
+import org.bitcoinj.core.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Chooses the {@link ScryptProvider} used by {@link org.libdohj.core.Utils#scryptDigest(byte[])}.
+ *
+ * <p>By default the built-in providers are tried in a fixed order (see
+ * {@link #getBuiltInProviders()}) and the first which matches the known
+ * vectors is used. Setting the {@value #PROVIDER_PROPERTY} system property to
+ * a provider name uses that provider instead, provided it passes the
+ * self-test. Setting {@value #BENCHMARK_PROPERTY} to true times every working
+ * provider on first use and keeps the fastest, as the winner (and therefore
+ * header throughput) can differ between hosts; this costs a noticeable delay
+ * on the first scrypt hash, so is not done unless asked for. The outcome is
+ * logged at info level and is available from {@link #getSelectionReport()}.</p>
+ */
+public final class ScryptProviders {
+    /** System property used to force a specific provider by name. */
+    public static final String PROVIDER_PROPERTY = "libdohj.scrypt.provider";
+    /** System property which, if true, selects the fastest working provider on first use. */
+    public static final String BENCHMARK_PROPERTY = "libdohj.scrypt.benchmark";
+
+    private static final Logger log = LoggerFactory.getLogger(ScryptProviders.class);
+
+    /** Known input/output pairs, the second is the header of Litecoin block 1. */
+    private static final byte[][] TEST_INPUTS = new byte[][] {
+        Utils.HEX.decode("000102030405060708090a0b0c0d0e0f101112131415161718191a1b1c1d1e1f"
+            + "202122232425262728292a2b2c2d2e2f303132333435363738393a3b3c3d3e3f"
+            + "404142434445464748494a4b4c4d4e4f"),
+        Utils.HEX.decode("01000000e2bf047e7e5a191aa4ef34d314979dc9986e0f19251edaba5940fd1f"
+            + "e365a712f6509b1757baa71bc746e17cb4d0ed22e8935f71e2d0724336789021"
+            + "a40639fabfed8f4ef0ff0f1e7f270400")
+    };
+    private static final byte[][] TEST_OUTPUTS = new byte[][] {
+        Utils.HEX.decode("bc540a1a801df96e493005c71e010e2d387607fbf0fec416fd3c2645aa1ba9d2"),
+        Utils.HEX.decode("c05256b72b724cd32e1ded2c705f758b78129e5f14c4685dc5387a36f20b0000")
+    };
+
+    /** Providers are timed hashing batches of this many inputs, as batch verification does. */
+    private static final int BENCHMARK_BATCH_SIZE = 8;
+    private static final int WARMUP_BATCHES = 6;
+    private static final int BENCHMARK_BATCHES = 6;
+
+    private static volatile ScryptProvider defaultProvider;
+    private static volatile String selectionReport = "No scrypt provider selected yet";
+
+    private ScryptProviders() {
+    }
+
+    /**
+     * Get the provider to use for scrypt hashes, selecting it first if needed.
+     */
+    public static ScryptProvider getDefault() {
+        ScryptProvider provider = defaultProvider;
+        if (provider == null) {
+            synchronized (ScryptProviders.class) {
+                provider = defaultProvider;
+                if (provider == null) {
+                    final String preferredName = System.getProperty(PROVIDER_PROPERTY);
+                    if (preferredName == null && Boolean.getBoolean(BENCHMARK_PROPERTY)) {
+                        provider = selectFastest(getBuiltInProviders());
+                    } else {
+                        provider = select(getBuiltInProviders(), preferredName);
+                    }
+                    defaultProvider = provider;
+                }
+            }
+        }
+        return provider;
+    }
+
+    /**
+     * Override the provider used for scrypt hashes. The provider is used as-is,
+     * without a self-test.
+     */
+    public static synchronized void setDefault(final ScryptProvider provider) {
+        defaultProvider = provider;
+        selectionReport = "Scrypt provider " + provider.getName() + " set explicitly";
+        log.info(selectionReport);
+    }
+
+    /**
+     * Get a description of how the current provider was chosen, including the
+     * timings of each candidate if a benchmark was run.
+     */
+    public static String getSelectionReport() {
+        return selectionReport;
+    }
+
+    /**
+     * Get a new instance of each of the providers shipped with libdohj,
+     * including the vectorised provider if the running JVM supports it (see
+     * {@link VectorScrypt}). Providers are in order of preference, which is
+     * the order {@link #select(List, String)} tries them in.
+     */
+    public static List<ScryptProvider> getBuiltInProviders() {
+        final List<ScryptProvider> providers = new ArrayList<>();
+        providers.add(new LambdaworksScryptProvider(true));
+        final ScryptProvider vectorProvider = VectorScrypt.createProvider();
+        if (vectorProvider != null) {
+            providers.add(vectorProvider);
+        }
+        providers.add(new JavaScryptProvider());
+        providers.add(new BouncyCastleScryptProvider());
+        providers.add(new LambdaworksScryptProvider(false));
+        return providers;
+    }
+
+    /**
+     * Check the given provider produces the expected output for the known
+     * vectors. Any exception or error (such as a missing native library) is
+     * treated as failure.
+     */
+    public static boolean selfTest(final ScryptProvider provider) {
+        try {
+            for (int vectorIdx = 0; vectorIdx < TEST_INPUTS.length; vectorIdx++) {
+                if (!Arrays.equals(TEST_OUTPUTS[vectorIdx], provider.scryptDigest(TEST_INPUTS[vectorIdx].clone()))) {
+                    log.warn("Scrypt provider {} returned incorrect result for test vector {}",
+                        provider.getName(), vectorIdx);
+                    return false;
+                }
+            }
+            final byte[][] batchOutputs = provider.scryptDigest(cloneAll(TEST_INPUTS));
+            for (int vectorIdx = 0; vectorIdx < TEST_INPUTS.length; vectorIdx++) {
+                if (!Arrays.equals(TEST_OUTPUTS[vectorIdx], batchOutputs[vectorIdx])) {
+                    log.warn("Scrypt provider {} returned incorrect result for test vector {} in a batch",
+                        provider.getName(), vectorIdx);
+                    return false;
+                }
+            }
+            return true;
+        } catch (Exception | LinkageError e) {
+            log.debug("Scrypt provider {} is unavailable: {}", provider.getName(), e.toString());
+            return false;
+        }
+    }
+
+    /**
+     * Select a provider from the given candidates, without timing them. If a
+     * preferred name is given and that candidate passes the self-test, it is
+     * used, otherwise the first candidate which passes is returned.
+     *
+     * @param candidates providers to choose from, in order of preference.
+     * @param preferredName name of the provider to use if possible, may be null.
+     * @throws IllegalStateException if no candidate passes the self-test.
+     */
+    public static ScryptProvider select(final List<ScryptProvider> candidates, @Nullable final String preferredName) {
+        final List<String> failed = new ArrayList<>();
+        if (preferredName != null) {
+            for (ScryptProvider candidate: candidates) {
+                if (candidate.getName().equals(preferredName)) {
+                    if (selfTest(candidate)) {
+                        report("Using scrypt provider " + preferredName + " as configured by " + PROVIDER_PROPERTY);
+                        return candidate;
+                    }
+                    failed.add(preferredName);
+                }
+            }
+            log.warn("Configured scrypt provider {} is unknown or failed its self-test, selecting automatically",
+                preferredName);
+        }
+
+        for (ScryptProvider candidate: candidates) {
+            if (failed.contains(candidate.getName())) {
+                continue;
+            }
+            if (selfTest(candidate)) {
+                report("Using scrypt provider " + candidate.getName() + "; unavailable: " + failed);
+                return candidate;
+            }
+            failed.add(candidate.getName());
+        }
+        throw new IllegalStateException("No scrypt provider passed the self-test, tried " + failed);
+    }
+
+    /**
+     * Select the fastest of the given candidates. Candidates which fail the
+     * self-test are discarded, and the remainder are each timed over a short
+     * run, which takes a noticeable time with the slower pure Java providers.
+     *
+     * @param candidates providers to choose from.
+     * @throws IllegalStateException if no candidate passes the self-test.
+     */
+    public static ScryptProvider selectFastest(final List<ScryptProvider> candidates) {
+        final List<ScryptProvider> working = new ArrayList<>(candidates.size());
+        final List<String> failed = new ArrayList<>();
+        for (ScryptProvider candidate: candidates) {
+            if (selfTest(candidate)) {
+                working.add(candidate);
+            } else {
+                failed.add(candidate.getName());
+            }
+        }
+        if (working.isEmpty()) {
+            throw new IllegalStateException("No scrypt provider passed the self-test, tried " + failed);
+        }
+
+        if (working.size() == 1) {
+            final ScryptProvider selected = working.get(0);
+            report("Using scrypt provider " + selected.getName() + " as the only working provider; unavailable: "
+                + failed);
+            return selected;
+        }
+
+        ScryptProvider fastest = working.get(0);
+        long fastestNanos = Long.MAX_VALUE;
+        final StringBuilder timings = new StringBuilder();
+        for (ScryptProvider candidate: working) {
+            final long nanos = benchmark(candidate);
+            if (timings.length() > 0) {
+                timings.append(", ");
+            }
+            timings.append(candidate.getName()).append('=').append(nanos / 1000).append("us/hash");
+            if (nanos < fastestNanos) {
+                fastestNanos = nanos;
+                fastest = candidate;
+            }
+        }
+        report("Selected scrypt provider " + fastest.getName() + " (" + timings + "); unavailable: " + failed);
+        return fastest;
+    }
+
+    private static void report(final String message) {
+        selectionReport = message;
+        log.info(message);
+    }
+
+    /**
+     * Time the given provider, returning the mean time per hash in nanoseconds,
+     * or Long.MAX_VALUE if it fails part way through.
+     */
+    private static long benchmark(final ScryptProvider provider) {
+        final byte[][] inputs = new byte[BENCHMARK_BATCH_SIZE][];
+        for (int inputIdx = 0; inputIdx < inputs.length; inputIdx++) {
+            inputs[inputIdx] = TEST_INPUTS[1].clone();
+            inputs[inputIdx][75] = (byte) inputIdx;
+        }
+        try {
+            for (int iteration = 0; iteration < WARMUP_BATCHES; iteration++) {
+                for (byte[] input: inputs) {
+                    input[76] = (byte) iteration;
+                }
+                provider.scryptDigest(inputs);
+            }
+            final long start = System.nanoTime();
+            for (int iteration = 0; iteration < BENCHMARK_BATCHES; iteration++) {
+                for (byte[] input: inputs) {
+                    input[77] = (byte) iteration;
+                }
+                provider.scryptDigest(inputs);
+            }
+            return (System.nanoTime() - start) / (BENCHMARK_BATCHES * BENCHMARK_BATCH_SIZE);
+        } catch (Exception e) {
+            log.warn("Scrypt provider {} failed during benchmark", provider.getName(), e);
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private static byte[][] cloneAll(final byte[][] inputs) {
+        final byte[][] copies = new byte[inputs.length][];
+        for (int inputIdx = 0; inputIdx < inputs.length; inputIdx++) {
+            copies[inputIdx] = inputs[inputIdx].clone();
+        }
+        return copies;
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.libdohj.crypto;
+
+import javax.annotation.Nullable;
+
+/**
+ * Entry point to the SIMD scrypt implementation. libdohj-core is a
+ * multi-release JAR: on Java 17 and later this class is replaced by the
+ * version under <code>META-INF/versions/17</code>, which builds Salsa20/8 and
+ * BlockMix on the <code>jdk.incubator.vector</code> API. This Java 8 version
+ * is the fallback, and never offers a provider.
+ */
+public final class VectorScrypt {
+    private VectorScrypt() {
+    }
+
+    /**
+     * Create the vectorised scrypt provider, if the running JVM supports it.
+     *
+     * @return the provider, or null if it is unavailable.
+     */
+    @Nullable
+    public static ScryptProvider createProvider() {
+        return null;
+    }
+}
@@ -18,6 +18,11 @@ package org.libdohj.params;
 
 import java.io.ByteArrayOutputStream;
 import java.math.BigInteger;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
 
 import org.bitcoinj.core.AltcoinBlock;
 import org.bitcoinj.core.Block;
@@ -42,11 +47,15 @@ import org.bitcoinj.core.TransactionOutput;
 import org.bitcoinj.core.Utils;
 import org.libdohj.core.AltcoinSerializer;
 import org.libdohj.core.AuxPoWNetworkParameters;
+import org.libdohj.core.ProofOfWorkAlgorithm;
+import org.libdohj.core.ProofOfWorkVerifier;
+import org.libdohj.core.ScryptNetworkParameters;
 
 /**
  * Common parameters for Dogecoin networks.
  */
-public abstract class AbstractDogecoinParams extends NetworkParameters implements AuxPoWNetworkParameters {
+public abstract class AbstractDogecoinParams extends NetworkParameters
+        implements AuxPoWNetworkParameters, ScryptNetworkParameters {
     /** Standard format for the DOGE denomination. */
     public static final MonetaryFormat DOGE;
     /** Standard format for the mDOGE denomination. */
@@ -400,6 +409,15 @@ public abstract class AbstractDogecoinParams extends NetworkParameters implement
         return DIGISHIELD_BLOCK_HEIGHT;
     }
 
+    /**
+     * Get the hard-coded checkpoints for this network, ordered by height.
+     * These can be used with {@link org.bitcoinj.core.CheckpointTrustingVerifier}
+     * to skip proof of work checks on historical headers.
+     */
+    public SortedMap<Integer, Sha256Hash> getCheckpoints() {
+        return Collections.unmodifiableSortedMap(new TreeMap<>(checkpoints));
+    }
+
     @Override
     public int getChainID() {
         return AUXPOW_CHAIN_ID;
@@ -419,6 +437,24 @@ public abstract class AbstractDogecoinParams extends NetworkParameters implement
         return ((AltcoinBlock) block).getScryptHash().toBigInteger();
     }
 
+    @Override
+    public ProofOfWorkAlgorithm getProofOfWorkAlgorithm() {
+        return ProofOfWorkAlgorithm.SCRYPT;
+    }
+
+    /**
+     * Verify the proof of work of a batch of headers, such as those from a
+     * headers message, in parallel on the given fork/join pool.
+     *
+     * @return one result per header, in the same order as the headers. Checking
+     * stops at the first invalid header.
+     * @see ProofOfWorkVerifier#verify(List, ForkJoinPool)
+     */
+    public List<ProofOfWorkVerifier.Result> verifyHeadersProofOfWork(final List<? extends AltcoinBlock> headers,
+            final ForkJoinPool pool) {
+        return ProofOfWorkVerifier.verify(headers, pool);
+    }
+
     @Override
     public AltcoinSerializer getSerializer(boolean parseRetain) {
         return new AltcoinSerializer(this, parseRetain);
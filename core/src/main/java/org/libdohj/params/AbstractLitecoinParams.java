@@ -20,17 +20,24 @@ import org.bitcoinj.core.*;
 import org.bitcoinj.store.BlockStore;
 import org.bitcoinj.store.BlockStoreException;
 import org.bitcoinj.utils.MonetaryFormat;
-import org.libdohj.core.AltcoinNetworkParameters;
 import org.libdohj.core.AltcoinSerializer;
+import org.libdohj.core.ProofOfWorkAlgorithm;
+import org.libdohj.core.ProofOfWorkVerifier;
+import org.libdohj.core.ScryptNetworkParameters;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.math.BigInteger;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
 import static org.bitcoinj.core.Coin.COIN;
 
 /**
  * Common parameters for Litecoin networks.
  */
-public abstract class AbstractLitecoinParams extends NetworkParameters implements AltcoinNetworkParameters {
+public abstract class AbstractLitecoinParams extends NetworkParameters implements ScryptNetworkParameters {
     /** Standard format for the LITE denomination. */
     public static final MonetaryFormat LITE;
     /** Standard format for the mLITE denomination. */
@@ -107,6 +114,33 @@ public abstract class AbstractLitecoinParams extends NetworkParameters implement
         return ((AltcoinBlock) block).getScryptHash().toBigInteger();
     }
 
+    @Override
+    public ProofOfWorkAlgorithm getProofOfWorkAlgorithm() {
+        return ProofOfWorkAlgorithm.SCRYPT;
+    }
+
+    /**
+     * Verify the proof of work of a batch of headers, such as those from a
+     * headers message, in parallel on the given fork/join pool.
+     *
+     * @return one result per header, in the same order as the headers. Checking
+     * stops at the first invalid header.
+     * @see ProofOfWorkVerifier#verify(List, ForkJoinPool)
+     */
+    public List<ProofOfWorkVerifier.Result> verifyHeadersProofOfWork(final List<? extends AltcoinBlock> headers,
+            final ForkJoinPool pool) {
+        return ProofOfWorkVerifier.verify(headers, pool);
+    }
+
+    /**
+     * Get the hard-coded checkpoints for this network, ordered by height.
+     * These can be used with {@link org.bitcoinj.core.CheckpointTrustingVerifier}
+     * to skip proof of work checks on historical headers.
+     */
+    public SortedMap<Integer, Sha256Hash> getCheckpoints() {
+        return Collections.unmodifiableSortedMap(new TreeMap<>(checkpoints));
+    }
+
     public MonetaryFormat getMonetaryFormat() {
         return LITE;
     }
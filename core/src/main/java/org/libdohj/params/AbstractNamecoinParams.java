@@ -45,6 +45,7 @@ import org.bitcoinj.core.TransactionOutput;
 import org.bitcoinj.core.Utils;
 import org.libdohj.core.AltcoinSerializer;
 import org.libdohj.core.AuxPoWNetworkParameters;
+import org.libdohj.core.ProofOfWorkAlgorithm;
 
 // TODO: review this
 
@@ -260,6 +261,11 @@ public abstract class AbstractNamecoinParams extends NetworkParameters implement
         return block.getHash().toBigInteger();
     }
 
+    @Override
+    public ProofOfWorkAlgorithm getProofOfWorkAlgorithm() {
+        return ProofOfWorkAlgorithm.SHA256D;
+    }
+
     @Override
     public AltcoinSerializer getSerializer(boolean parseRetain) {
         return new AltcoinSerializer(this, parseRetain);
@@ -0,0 +1,595 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.libdohj.store;
+
+import org.bitcoinj.core.AltcoinBlock;
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.ProtocolException;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.StoredBlock;
+import org.bitcoinj.store.BlockStore;
+import org.bitcoinj.store.BlockStoreException;
+import org.bitcoinj.store.ChainFileLockedException;
+import org.bitcoinj.utils.Threading;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * A block store for AuxPoW chains holding a limited number of block headers in
+ * a memory mapped ring buffer, much like {@link org.bitcoinj.store.SPVBlockStore}.
+ *
+ * <p>The standard store keeps only the 80 byte header of each block, so the
+ * AuxPoW header of a merge-mined block is lost once stored. This store can
+ * additionally keep the serialized AuxPoW headers of the most recent blocks in
+ * a circular arena after the records; AuxPoW headers of blocks more than the
+ * configured number of blocks below the chain head are not returned, and are
+ * eventually overwritten. Blocks returned without their AuxPoW header can
+ * still be hashed and linked, but not have their proof of work checked.</p>
+ *
+ * <p>Each record holds the block hash, chain work, height, header and the
+ * location and CRC32 of the AuxPoW header in the arena, followed by a CRC32 of
+ * the rest of the record, so a record torn by a crash is dropped on load, and
+ * a damaged AuxPoW header is dropped when read. Lookups use an in-memory open
+ * addressing index of slot numbers, rebuilt on open.</p>
+ */
+public class AltcoinSPVBlockStore implements BlockStore {
+    private static final Logger log = LoggerFactory.getLogger(AltcoinSPVBlockStore.class);
+    protected final ReentrantLock lock = Threading.lock(AltcoinSPVBlockStore.class);
+
+    /** The default number of headers that will be stored in the ring buffer. */
+    public static final int DEFAULT_CAPACITY = 10000;
+    /** The default number of blocks below the chain head to retain AuxPoW headers for. */
+    public static final int DEFAULT_RETAIN_AUXPOW_BLOCKS = 2000;
+    /** Arena space allowed per retained AuxPoW header when no size is given. */
+    public static final int DEFAULT_AUXPOW_SIZE = 1024;
+
+    private static final int HEADER_MAGIC = 0x41535056; // "ASPV"
+    private static final int FORMAT_VERSION = 2;
+
+    // File format:
+    //   4 bytes magic, 4 bytes format version, 4 bytes capacity, 4 bytes arena size
+    //   4 bytes next slot to write, 4 bytes reserved
+    //   8 bytes arena head, the total number of bytes ever written to the arena
+    //   32 bytes hash of the chain head
+    // followed by capacity records, then the AuxPoW arena.
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int ARENA_SIZE_OFFSET = 12;
+    private static final int NEXT_SLOT_OFFSET = 16;
+    private static final int ARENA_HEAD_OFFSET = 24;
+    private static final int CHAIN_HEAD_OFFSET = 32;
+    static final int FILE_PROLOGUE_BYTES = 64;
+
+    // Record format (148 bytes):
+    //   32 bytes block hash
+    //   12 bytes of chain work
+    //    4 bytes of height
+    //   80 bytes of block header data
+    //    8 bytes arena position of the AuxPoW header
+    //    4 bytes length of the AuxPoW header, 0 if not stored
+    //    4 bytes CRC32 of the AuxPoW header
+    //    4 bytes CRC32 of the above
+    private static final int CHAIN_WORK_BYTES = 12;
+    private static final int COMPACT_OFFSET = Sha256Hash.LENGTH;
+    private static final int HEIGHT_OFFSET = COMPACT_OFFSET + CHAIN_WORK_BYTES;
+    private static final int BLOCK_HEADER_OFFSET = HEIGHT_OFFSET + 4;
+    private static final int AUXPOW_POSITION_OFFSET = BLOCK_HEADER_OFFSET + Block.HEADER_SIZE;
+    private static final int AUXPOW_LENGTH_OFFSET = AUXPOW_POSITION_OFFSET + 8;
+    private static final int AUXPOW_CHECKSUM_OFFSET = AUXPOW_LENGTH_OFFSET + 4;
+    private static final int CHECKSUM_OFFSET = AUXPOW_CHECKSUM_OFFSET + 4;
+    static final int RECORD_SIZE = CHECKSUM_OFFSET + 4;
+
+    protected final NetworkParameters params;
+    private final int capacity;
+    private final int retainAuxPoWBlocks;
+    private final int arenaSize;
+    private final int arenaOffset;
+
+    protected volatile MappedByteBuffer buffer;
+    protected FileLock fileLock;
+    protected RandomAccessFile randomAccessFile;
+
+    private final SlotIndex index;
+    private final BitSet occupied;
+    private final byte[] record = new byte[RECORD_SIZE];
+    private final CRC32 crc = new CRC32();
+    private int nextSlot;
+    private long arenaHead;
+
+    protected StoredBlock lastChainHead = null;
+
+    /**
+     * Creates and initializes a block store that can hold {@link #DEFAULT_CAPACITY}
+     * block headers, retaining AuxPoW headers for the last
+     * {@link #DEFAULT_RETAIN_AUXPOW_BLOCKS} blocks. Will create the given file
+     * if it's missing. This operation will block on disk.
+     *
+     * @param file file to use for the block store
+     * @throws BlockStoreException if something goes wrong
+     */
+    public AltcoinSPVBlockStore(final NetworkParameters params, final File file) throws BlockStoreException {
+        this(params, file, DEFAULT_CAPACITY, DEFAULT_RETAIN_AUXPOW_BLOCKS);
+    }
+
+    /**
+     * Creates and initializes a block store, with {@link #DEFAULT_AUXPOW_SIZE}
+     * bytes of arena per retained AuxPoW header.
+     *
+     * @param file file to use for the block store
+     * @param capacity number of block headers to hold
+     * @param retainAuxPoWBlocks number of blocks at and below the chain head
+     * to retain AuxPoW headers for, 0 to not store AuxPoW headers at all
+     * @throws BlockStoreException if something goes wrong
+     */
+    public AltcoinSPVBlockStore(final NetworkParameters params, final File file, final int capacity,
+                                final int retainAuxPoWBlocks) throws BlockStoreException {
+        this(params, file, capacity, retainAuxPoWBlocks, defaultArenaSize(retainAuxPoWBlocks));
+    }
+
+    private static int defaultArenaSize(final int retainAuxPoWBlocks) {
+        final long arenaSize = (long) retainAuxPoWBlocks * DEFAULT_AUXPOW_SIZE;
+        if (arenaSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Retaining AuxPoW headers for " + retainAuxPoWBlocks
+                + " blocks needs an arena of " + arenaSize + " bytes, more than " + Integer.MAX_VALUE);
+        }
+        return (int) arenaSize;
+    }
+
+    /**
+     * Creates and initializes a block store. Will create the given file if
+     * it's missing. An existing file must have been created with the same
+     * capacity and arena size.
+     *
+     * @param file file to use for the block store
+     * @param capacity number of block headers to hold
+     * @param retainAuxPoWBlocks number of blocks at and below the chain head
+     * to retain AuxPoW headers for, 0 to not store AuxPoW headers at all
+     * @param arenaSize size in bytes of the arena holding AuxPoW headers
+     * @throws BlockStoreException if something goes wrong
+     */
+    public AltcoinSPVBlockStore(final NetworkParameters params, final File file, final int capacity,
+                                final int retainAuxPoWBlocks, final int arenaSize) throws BlockStoreException {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive, was " + capacity);
+        }
+        if (retainAuxPoWBlocks < 0 || arenaSize < 0) {
+            throw new IllegalArgumentException("AuxPoW retention and arena size must not be negative");
+        }
+        this.params = params;
+        this.capacity = capacity;
+        this.retainAuxPoWBlocks = retainAuxPoWBlocks;
+        this.arenaSize = arenaSize;
+        this.arenaOffset = FILE_PROLOGUE_BYTES + capacity * RECORD_SIZE;
+        final long fileLength = FILE_PROLOGUE_BYTES + (long) capacity * RECORD_SIZE + arenaSize;
+        if (fileLength > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Capacity " + capacity + " and arena size " + arenaSize
+                + " are too large to map");
+        }
+
+        try {
+            final boolean exists = file.exists();
+            randomAccessFile = new RandomAccessFile(file, "rw");
+            if (!exists) {
+                log.info("Creating new AuxPoW SPV block chain file " + file);
+                randomAccessFile.setLength(fileLength);
+            } else if (randomAccessFile.length() != fileLength) {
+                throw new BlockStoreException("File size on disk does not match expected size: "
+                    + randomAccessFile.length() + " vs " + fileLength);
+            }
+
+            final FileChannel channel = randomAccessFile.getChannel();
+            fileLock = channel.tryLock();
+            if (fileLock == null) {
+                throw new ChainFileLockedException("Store file is already locked by another process");
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileLength);
+            index = new SlotIndex(buffer, FILE_PROLOGUE_BYTES, RECORD_SIZE, capacity);
+            occupied = new BitSet(capacity);
+
+            if (exists) {
+                if (buffer.getInt(0) != HEADER_MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+                    throw new BlockStoreException("Header bytes do not match an AuxPoW SPV block store");
+                }
+                if (buffer.getInt(CAPACITY_OFFSET) != capacity || buffer.getInt(ARENA_SIZE_OFFSET) != arenaSize) {
+                    throw new BlockStoreException("Store was created with capacity "
+                        + buffer.getInt(CAPACITY_OFFSET) + " and arena size " + buffer.getInt(ARENA_SIZE_OFFSET));
+                }
+                load();
+            } else {
+                initNewStore();
+            }
+        } catch (Exception e) {
+            try {
+                if (randomAccessFile != null) randomAccessFile.close();
+            } catch (IOException e2) {
+                throw new BlockStoreException(e2);
+            }
+            if (e instanceof BlockStoreException) {
+                throw (BlockStoreException) e;
+            }
+            throw new BlockStoreException(e);
+        }
+    }
+
+    private void initNewStore() throws BlockStoreException {
+        buffer.putInt(0, HEADER_MAGIC);
+        buffer.putInt(4, FORMAT_VERSION);
+        buffer.putInt(CAPACITY_OFFSET, capacity);
+        buffer.putInt(ARENA_SIZE_OFFSET, arenaSize);
+        final Block genesis = params.getGenesisBlock().cloneAsHeader();
+        final StoredBlock storedGenesis = new StoredBlock(genesis, genesis.getWork(), 0);
+        put(storedGenesis);
+        setChainHead(storedGenesis);
+    }
+
+    /**
+     * Rebuild the index from the records on disk, skipping empty or torn
+     * records, then load the chain head.
+     */
+    private void load() throws BlockStoreException {
+        nextSlot = buffer.getInt(NEXT_SLOT_OFFSET);
+        arenaHead = buffer.getLong(ARENA_HEAD_OFFSET);
+        if (nextSlot < 0 || nextSlot >= capacity || arenaHead < 0) {
+            log.warn("Block store cursor is damaged, resetting it");
+            nextSlot = 0;
+            arenaHead = 0;
+        }
+        int discarded = 0;
+        for (int slot = 0; slot < capacity; slot++) {
+            readRecord(slot);
+            if (isEmpty(record)) {
+                continue;
+            }
+            if (readInt(record, CHECKSUM_OFFSET) != checksum(record)
+                || index.find(record, 0) >= 0) {
+                discarded++;
+                continue;
+            }
+            index.insert(slot);
+            occupied.set(slot);
+        }
+        if (discarded > 0) {
+            log.info("Discarded {} damaged or duplicate records from block store", discarded);
+        }
+        // AuxPoW retention is measured from the chain head, so it must be known before any put
+        getChainHead();
+    }
+
+    @Override
+    public void put(final StoredBlock block) throws BlockStoreException {
+        final MappedByteBuffer buffer = this.buffer;
+        if (buffer == null) throw new BlockStoreException("Store closed");
+
+        lock.lock();
+        try {
+            putInternal(block);
+            writeCursors();
+        } finally { lock.unlock(); }
+    }
+
+    /**
+     * Store a batch of blocks, for example when loading headers from
+     * checkpoints or another store. This takes the lock and updates the file
+     * cursors once for the whole batch, rather than once per block. Blocks
+     * should be given in ascending height order, so the ring buffer evicts
+     * the oldest first.
+     */
+    public void putAll(final Collection<StoredBlock> blocks) throws BlockStoreException {
+        final MappedByteBuffer buffer = this.buffer;
+        if (buffer == null) throw new BlockStoreException("Store closed");
+
+        lock.lock();
+        try {
+            for (StoredBlock block : blocks) {
+                putInternal(block);
+            }
+            writeCursors();
+        } finally { lock.unlock(); }
+    }
+
+    private void putInternal(final StoredBlock block) {
+        block.serializeCompact(ByteBuffer.wrap(record, COMPACT_OFFSET, StoredBlock.COMPACT_SERIALIZED_SIZE));
+        System.arraycopy(block.getHeader().getHash().getBytes(), 0, record, 0, Sha256Hash.LENGTH);
+
+        int slot = index.find(record, 0);
+        long auxpowPosition = 0;
+        int auxpowLength = 0;
+        int auxpowChecksum = 0;
+        if (slot >= 0) {
+            // Already stored, so update it in place and keep any AuxPoW header already held
+            final int offset = recordOffset(slot);
+            auxpowPosition = buffer.getLong(offset + AUXPOW_POSITION_OFFSET);
+            auxpowLength = buffer.getInt(offset + AUXPOW_LENGTH_OFFSET);
+            auxpowChecksum = buffer.getInt(offset + AUXPOW_CHECKSUM_OFFSET);
+        } else {
+            slot = nextSlot;
+            nextSlot = (nextSlot + 1) % capacity;
+            if (occupied.get(slot)) {
+                index.remove(slot);
+                occupied.clear(slot);
+            }
+        }
+
+        // Keep an AuxPoW header still intact in the arena, rather than pushing others out by writing it again
+        final byte[] auxpow = !isInArena(auxpowPosition, auxpowLength)
+            && shouldRetainAuxPoW(block.getHeight()) && block.getHeader() instanceof AltcoinBlock
+            ? ((AltcoinBlock) block.getHeader()).getAuxPoWBytes()
+            : null;
+        if (auxpow != null && auxpow.length <= arenaSize) {
+            auxpowPosition = arenaHead;
+            auxpowLength = auxpow.length;
+            auxpowChecksum = checksum(auxpow, 0, auxpow.length);
+            writeArena(auxpow);
+        }
+        writeLong(auxpowPosition, record, AUXPOW_POSITION_OFFSET);
+        writeInt(auxpowLength, record, AUXPOW_LENGTH_OFFSET);
+        writeInt(auxpowChecksum, record, AUXPOW_CHECKSUM_OFFSET);
+        writeInt(checksum(record), record, CHECKSUM_OFFSET);
+
+        final int offset = recordOffset(slot);
+        for (int byteIdx = 0; byteIdx < RECORD_SIZE; byteIdx++) {
+            buffer.put(offset + byteIdx, record[byteIdx]);
+        }
+        if (!occupied.get(slot)) {
+            index.insert(slot);
+            occupied.set(slot);
+        }
+    }
+
+    private boolean shouldRetainAuxPoW(final int height) {
+        return retainAuxPoWBlocks > 0
+            && (lastChainHead == null || lastChainHead.getHeight() - height < retainAuxPoWBlocks);
+    }
+
+    /**
+     * Whether an AuxPoW header of the given length written at the given
+     * arena position lies entirely within the last arenaSize bytes written,
+     * and so is still intact.
+     */
+    private boolean isInArena(final long auxpowPosition, final int auxpowLength) {
+        return auxpowLength > 0 && auxpowPosition + auxpowLength <= arenaHead
+            && arenaHead - auxpowPosition <= arenaSize;
+    }
+
+    private void writeArena(final byte[] auxpow) {
+        final int position = (int) (arenaHead % arenaSize);
+        final int firstLength = Math.min(auxpow.length, arenaSize - position);
+        ((Buffer) buffer).position(arenaOffset + position);
+        buffer.put(auxpow, 0, firstLength);
+        ((Buffer) buffer).position(arenaOffset);
+        buffer.put(auxpow, firstLength, auxpow.length - firstLength);
+        arenaHead += auxpow.length;
+    }
+
+    private void writeCursors() {
+        buffer.putInt(NEXT_SLOT_OFFSET, nextSlot);
+        buffer.putLong(ARENA_HEAD_OFFSET, arenaHead);
+    }
+
+    @Override
+    @Nullable
+    public StoredBlock get(final Sha256Hash hash) throws BlockStoreException {
+        final MappedByteBuffer buffer = this.buffer;
+        if (buffer == null) throw new BlockStoreException("Store closed");
+
+        lock.lock();
+        try {
+            final int slot = index.find(hash.getBytes(), 0);
+            if (slot < 0) {
+                return null;
+            }
+            readRecord(slot);
+            final BigInteger chainWork = new BigInteger(1,
+                Arrays.copyOfRange(record, COMPACT_OFFSET, COMPACT_OFFSET + CHAIN_WORK_BYTES));
+            final int height = readInt(record, HEIGHT_OFFSET);
+            final long auxpowPosition = readLong(record, AUXPOW_POSITION_OFFSET);
+            final int auxpowLength = readInt(record, AUXPOW_LENGTH_OFFSET);
+            final int auxpowChecksum = readInt(record, AUXPOW_CHECKSUM_OFFSET);
+
+            Block header = null;
+            if (isInArena(auxpowPosition, auxpowLength)
+                && (lastChainHead == null || lastChainHead.getHeight() - height < retainAuxPoWBlocks)) {
+                final byte[] payload = new byte[Block.HEADER_SIZE + auxpowLength + 1];
+                System.arraycopy(record, BLOCK_HEADER_OFFSET, payload, 0, Block.HEADER_SIZE);
+                readArena(auxpowPosition, payload, Block.HEADER_SIZE, auxpowLength);
+                if (checksum(payload, Block.HEADER_SIZE, auxpowLength) != auxpowChecksum) {
+                    log.warn("Discarding damaged AuxPoW header for block " + hash);
+                } else {
+                    try {
+                        header = params.getDefaultSerializer().makeBlock(payload);
+                    } catch (ProtocolException e) {
+                        log.warn("Discarding unreadable AuxPoW header for block " + hash, e);
+                    }
+                }
+            }
+            if (header == null) {
+                // Extra byte for the 00 transactions length.
+                final byte[] payload = Arrays.copyOfRange(record, BLOCK_HEADER_OFFSET,
+                    BLOCK_HEADER_OFFSET + Block.HEADER_SIZE + 1);
+                payload[Block.HEADER_SIZE] = 0;
+                header = params.getDefaultSerializer().makeBlock(payload);
+            }
+            return new StoredBlock(header, chainWork, height);
+        } catch (ProtocolException e) {
+            throw new BlockStoreException(e);
+        } finally { lock.unlock(); }
+    }
+
+    private void readArena(final long arenaPosition, final byte[] dest, final int destOffset, final int length) {
+        final int position = (int) (arenaPosition % arenaSize);
+        final int firstLength = Math.min(length, arenaSize - position);
+        ((Buffer) buffer).position(arenaOffset + position);
+        buffer.get(dest, destOffset, firstLength);
+        ((Buffer) buffer).position(arenaOffset);
+        buffer.get(dest, destOffset + firstLength, length - firstLength);
+    }
+
+    @Override
+    public StoredBlock getChainHead() throws BlockStoreException {
+        final MappedByteBuffer buffer = this.buffer;
+        if (buffer == null) throw new BlockStoreException("Store closed");
+
+        lock.lock();
+        try {
+            if (lastChainHead == null) {
+                final byte[] headHash = new byte[Sha256Hash.LENGTH];
+                ((Buffer) buffer).position(CHAIN_HEAD_OFFSET);
+                buffer.get(headHash);
+                final Sha256Hash hash = Sha256Hash.wrap(headHash);
+                final StoredBlock block = get(hash);
+                if (block == null)
+                    throw new BlockStoreException("Corrupted block store: could not find chain head: " + hash);
+                lastChainHead = block;
+            }
+            return lastChainHead;
+        } finally { lock.unlock(); }
+    }
+
+    @Override
+    public void setChainHead(final StoredBlock chainHead) throws BlockStoreException {
+        final MappedByteBuffer buffer = this.buffer;
+        if (buffer == null) throw new BlockStoreException("Store closed");
+
+        lock.lock();
+        try {
+            lastChainHead = chainHead;
+            final byte[] headHash = chainHead.getHeader().getHash().getBytes();
+            ((Buffer) buffer).position(CHAIN_HEAD_OFFSET);
+            buffer.put(headHash);
+        } finally { lock.unlock(); }
+    }
+
+    /**
+     * Force any changes out to the storage device.
+     */
+    public void flush() throws BlockStoreException {
+        final MappedByteBuffer buffer = this.buffer;
+        if (buffer == null) throw new BlockStoreException("Store closed");
+
+        lock.lock();
+        try {
+            buffer.force();
+        } finally { lock.unlock(); }
+    }
+
+    @Override
+    public void close() throws BlockStoreException {
+        lock.lock();
+        try {
+            if (buffer == null) {
+                return;
+            }
+            buffer.force();
+            buffer = null;  // Allow it to be GCd and the underlying file mapping to go away.
+            fileLock.release();
+            randomAccessFile.close();
+        } catch (IOException e) {
+            throw new BlockStoreException(e);
+        } finally { lock.unlock(); }
+    }
+
+    @Override
+    public NetworkParameters getParams() {
+        return params;
+    }
+
+    /** Get the number of block headers the store can hold. */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /** Get the number of blocks at and below the chain head AuxPoW headers are retained for. */
+    public int getRetainAuxPoWBlocks() {
+        return retainAuxPoWBlocks;
+    }
+
+    /** Get the size in bytes of the arena holding AuxPoW headers. */
+    public int getArenaSize() {
+        return arenaSize;
+    }
+
+    private int recordOffset(final int slot) {
+        return FILE_PROLOGUE_BYTES + slot * RECORD_SIZE;
+    }
+
+    private void readRecord(final int slot) {
+        ((Buffer) buffer).position(recordOffset(slot));
+        buffer.get(record);
+    }
+
+    private int checksum(final byte[] recordBytes) {
+        return checksum(recordBytes, 0, CHECKSUM_OFFSET);
+    }
+
+    private int checksum(final byte[] bytes, final int offset, final int length) {
+        crc.reset();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+
+    private static boolean isEmpty(final byte[] recordBytes) {
+        for (int byteIdx = 0; byteIdx < RECORD_SIZE; byteIdx++) {
+            if (recordBytes[byteIdx] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long readLong(final byte[] buf, final int offset) {
+        long value = 0;
+        for (int byteIdx = 0; byteIdx < 8; byteIdx++) {
+            value = (value << 8) | (buf[offset + byteIdx] & 0xffL);
+        }
+        return value;
+    }
+
+    private static void writeLong(final long value, final byte[] buf, final int offset) {
+        for (int byteIdx = 0; byteIdx < 8; byteIdx++) {
+            buf[offset + byteIdx] = (byte) (value >>> (56 - byteIdx * 8));
+        }
+    }
+
+    private static int readInt(final byte[] buf, final int offset) {
+        return (buf[offset] & 0xff) << 24
+            | (buf[offset + 1] & 0xff) << 16
+            | (buf[offset + 2] & 0xff) << 8
+            | (buf[offset + 3] & 0xff);
+    }
+
+    private static void writeInt(final int value, final byte[] buf, final int offset) {
+        buf[offset] = (byte) (value >>> 24);
+        buf[offset + 1] = (byte) (value >>> 16);
+        buf[offset + 2] = (byte) (value >>> 8);
+        buf[offset + 3] = (byte) value;
+    }
+}
@@ -0,0 +1,313 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.libdohj.store;
+
+import org.bitcoinj.core.Sha256Hash;
+import org.libdohj.core.ScryptHashCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.BitSet;
+import java.util.zip.CRC32;
+
+/**
+ * A {@link ScryptHashCache} held in a memory mapped file of fixed size records,
+ * so cached hashes survive restarts.
+ *
+ * <p>The file holds up to a fixed number of records, each consisting of the
+ * block hash, scrypt hash, a sequence number and a CRC32 of the rest of the
+ * record. When full, the slot to overwrite is chosen by the CLOCK algorithm
+ * (entries which have been read since the hand last passed get a second
+ * chance). Records are written in place and only trusted on load if their
+ * checksum matches, so a record torn by a crash is simply dropped.</p>
+ *
+ * <p>Lookups use an in-memory open addressing index of slot numbers, rebuilt
+ * from the file on open, so the heap cost is a few bytes per entry.</p>
+ */
+public class MappedScryptHashCache implements ScryptHashCache, Closeable {
+    private static final Logger log = LoggerFactory.getLogger(MappedScryptHashCache.class);
+
+    /** The default number of hashes held in the cache. */
+    public static final int DEFAULT_CAPACITY = 1 << 20;
+
+    private static final int HEADER_MAGIC = 0x53435259; // "SCRY"
+    private static final int FORMAT_VERSION = 1;
+    private static final int FILE_HEADER_SIZE = 16;
+
+    private static final int KEY_OFFSET = 0;
+    private static final int VALUE_OFFSET = Sha256Hash.LENGTH;
+    private static final int SEQUENCE_OFFSET = VALUE_OFFSET + Sha256Hash.LENGTH;
+    private static final int CHECKSUM_OFFSET = SEQUENCE_OFFSET + 8;
+    static final int RECORD_SIZE = CHECKSUM_OFFSET + 4;
+
+    private final int capacity;
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+
+    private final SlotIndex index;
+    private final BitSet occupied;
+    private final BitSet referenced;
+    private final byte[] record = new byte[RECORD_SIZE];
+    private final CRC32 crc = new CRC32();
+
+    private int hand;
+    private long sequence;
+    private int size;
+    private long hits;
+    private long misses;
+    private boolean closed;
+
+    /**
+     * Open the cache at the given location with {@link #DEFAULT_CAPACITY},
+     * creating it if needed.
+     */
+    public MappedScryptHashCache(final File path) throws IOException {
+        this(path, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Open the cache at the given location, creating it if needed. If an
+     * existing file was created with a different capacity, it is discarded.
+     *
+     * @param path file to hold the cache.
+     * @param capacity maximum number of hashes to hold.
+     */
+    public MappedScryptHashCache(final File path, final int capacity) throws IOException {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive, was " + capacity);
+        }
+        this.capacity = capacity;
+        final long fileSize = FILE_HEADER_SIZE + (long) capacity * RECORD_SIZE;
+        if (fileSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Capacity " + capacity + " is too large to map");
+        }
+
+        final boolean exists = path.exists();
+        this.file = new RandomAccessFile(path, "rw");
+        try {
+            final boolean compatible = exists && file.length() == fileSize && isCompatible(file, capacity);
+            if (exists && !compatible) {
+                log.warn("Discarding incompatible scrypt hash cache {}", path);
+            }
+            if (!compatible) {
+                file.setLength(0);
+                file.setLength(fileSize);
+            }
+            this.buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+            if (!compatible) {
+                buffer.putInt(0, HEADER_MAGIC);
+                buffer.putInt(4, FORMAT_VERSION);
+                buffer.putInt(8, capacity);
+            }
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+
+        this.index = new SlotIndex(buffer, FILE_HEADER_SIZE, RECORD_SIZE, capacity);
+        this.occupied = new BitSet(capacity);
+        this.referenced = new BitSet(capacity);
+        load();
+    }
+
+    private static boolean isCompatible(final RandomAccessFile file, final int capacity) throws IOException {
+        file.seek(0);
+        return file.readInt() == HEADER_MAGIC
+            && file.readInt() == FORMAT_VERSION
+            && file.readInt() == capacity;
+    }
+
+    /**
+     * Rebuild the index from the records on disk, skipping empty or torn records,
+     * and place the clock hand after the most recently written record.
+     */
+    private void load() {
+        long maxSequence = 0;
+        int maxSequenceSlot = -1;
+        int discarded = 0;
+        for (int slot = 0; slot < capacity; slot++) {
+            readRecord(slot);
+            final long recordSequence = readLong(record, SEQUENCE_OFFSET);
+            if (recordSequence == 0) {
+                continue;
+            }
+            if (readInt(record, CHECKSUM_OFFSET) != checksum(record)
+                || index.find(record, KEY_OFFSET) >= 0) {
+                discarded++;
+                continue;
+            }
+            index.insert(slot);
+            occupied.set(slot);
+            size++;
+            if (recordSequence > maxSequence) {
+                maxSequence = recordSequence;
+                maxSequenceSlot = slot;
+            }
+        }
+        sequence = maxSequence;
+        hand = (maxSequenceSlot + 1) % capacity;
+        if (discarded > 0) {
+            log.info("Discarded {} damaged or duplicate records from scrypt hash cache", discarded);
+        }
+    }
+
+    @Override
+    @Nullable
+    public synchronized Sha256Hash get(final Sha256Hash blockHash) {
+        if (closed) {
+            return null;
+        }
+        final int slot = index.find(blockHash.getBytes(), 0);
+        if (slot < 0) {
+            misses++;
+            return null;
+        }
+        hits++;
+        referenced.set(slot);
+        final byte[] value = new byte[Sha256Hash.LENGTH];
+        for (int byteIdx = 0; byteIdx < Sha256Hash.LENGTH; byteIdx++) {
+            value[byteIdx] = buffer.get(recordOffset(slot) + VALUE_OFFSET + byteIdx);
+        }
+        return Sha256Hash.wrap(value);
+    }
+
+    @Override
+    public synchronized void put(final Sha256Hash blockHash, final Sha256Hash scryptHash) {
+        if (closed) {
+            return;
+        }
+        final byte[] key = blockHash.getBytes();
+        if (index.find(key, 0) >= 0) {
+            return;
+        }
+
+        // Advance the clock hand past recently used entries
+        while (referenced.get(hand)) {
+            referenced.clear(hand);
+            hand = (hand + 1) % capacity;
+        }
+        final int slot = hand;
+        hand = (hand + 1) % capacity;
+
+        if (occupied.get(slot)) {
+            index.remove(slot);
+            size--;
+        }
+
+        System.arraycopy(key, 0, record, KEY_OFFSET, Sha256Hash.LENGTH);
+        System.arraycopy(scryptHash.getBytes(), 0, record, VALUE_OFFSET, Sha256Hash.LENGTH);
+        writeLong(++sequence, record, SEQUENCE_OFFSET);
+        writeInt(checksum(record), record, CHECKSUM_OFFSET);
+        final int offset = recordOffset(slot);
+        for (int byteIdx = 0; byteIdx < RECORD_SIZE; byteIdx++) {
+            buffer.put(offset + byteIdx, record[byteIdx]);
+        }
+
+        occupied.set(slot);
+        index.insert(slot);
+        size++;
+    }
+
+    /**
+     * Get the number of hashes currently held.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * Force any changes out to the storage device.
+     */
+    public synchronized void flush() {
+        if (!closed) {
+            buffer.force();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        buffer.force();
+        file.close();
+    }
+
+    private static int recordOffset(final int slot) {
+        return FILE_HEADER_SIZE + slot * RECORD_SIZE;
+    }
+
+    private void readRecord(final int slot) {
+        final int offset = recordOffset(slot);
+        for (int byteIdx = 0; byteIdx < RECORD_SIZE; byteIdx++) {
+            record[byteIdx] = buffer.get(offset + byteIdx);
+        }
+    }
+
+    private int checksum(final byte[] recordBytes) {
+        crc.reset();
+        crc.update(recordBytes, 0, CHECKSUM_OFFSET);
+        return (int) crc.getValue();
+    }
+
+    private static long readLong(final byte[] buf, final int offset) {
+        long value = 0;
+        for (int byteIdx = 0; byteIdx < 8; byteIdx++) {
+            value = (value << 8) | (buf[offset + byteIdx] & 0xffL);
+        }
+        return value;
+    }
+
+    private static void writeLong(final long value, final byte[] buf, final int offset) {
+        for (int byteIdx = 0; byteIdx < 8; byteIdx++) {
+            buf[offset + byteIdx] = (byte) (value >>> (56 - byteIdx * 8));
+        }
+    }
+
+    private static int readInt(final byte[] buf, final int offset) {
+        return (buf[offset] & 0xff) << 24
+            | (buf[offset + 1] & 0xff) << 16
+            | (buf[offset + 2] & 0xff) << 8
+            | (buf[offset + 3] & 0xff);
+    }
+
+    private static void writeInt(final int value, final byte[] buf, final int offset) {
+        buf[offset] = (byte) (value >>> 24);
+        buf[offset + 1] = (byte) (value >>> 16);
+        buf[offset + 2] = (byte) (value >>> 8);
+        buf[offset + 3] = (byte) value;
+    }
+}
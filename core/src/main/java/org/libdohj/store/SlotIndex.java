@@ -0,0 +1,139 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.libdohj.store;
+
+import org.bitcoinj.core.Sha256Hash;
+
+import java.nio.ByteBuffer;
+
+/**
+ * In-memory open addressing index over fixed size records in a buffer, each
+ * starting with a 32 byte hash used as its key. Maps keys to slot numbers, so
+ * the heap cost is a few bytes per record; keys are compared against the
+ * buffer itself. Not thread safe.
+ */
+final class SlotIndex {
+    private final ByteBuffer buffer;
+    private final int firstRecordOffset;
+    private final int recordSize;
+
+    /** Open addressing table of slot + 1 (0 meaning empty), sized as a power of two. */
+    private final int[] index;
+    private final int indexMask;
+
+    /**
+     * @param buffer buffer holding the records.
+     * @param firstRecordOffset offset of slot 0 within the buffer.
+     * @param recordSize size of each record.
+     * @param capacity number of slots.
+     */
+    SlotIndex(final ByteBuffer buffer, final int firstRecordOffset, final int recordSize, final int capacity) {
+        this.buffer = buffer;
+        this.firstRecordOffset = firstRecordOffset;
+        this.recordSize = recordSize;
+        this.index = new int[Integer.highestOneBit(Math.max(capacity, 2) * 2 - 1) << 1];
+        this.indexMask = index.length - 1;
+    }
+
+    private int recordOffset(final int slot) {
+        return firstRecordOffset + slot * recordSize;
+    }
+
+    /**
+     * Starting position in the index for the given key. Block hashes are
+     * uniformly distributed, but mix anyway in case of crafted input.
+     */
+    private int home(final long keyPrefix) {
+        return (int) ((keyPrefix * 0x9E3779B97F4A7C15L) >>> 32) & indexMask;
+    }
+
+    private boolean keyMatches(final int slot, final byte[] key, final int keyOffset) {
+        final int offset = recordOffset(slot);
+        for (int longIdx = 0; longIdx < Sha256Hash.LENGTH; longIdx += 8) {
+            if (buffer.getLong(offset + longIdx) != readLong(key, keyOffset + longIdx)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Find the slot holding the given key, or -1 if absent.
+     */
+    int find(final byte[] key, final int keyOffset) {
+        for (int pos = home(readLong(key, keyOffset)); index[pos] != 0; pos = (pos + 1) & indexMask) {
+            final int slot = index[pos] - 1;
+            if (keyMatches(slot, key, keyOffset)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private int homeOfSlot(final int slot) {
+        return home(buffer.getLong(recordOffset(slot)));
+    }
+
+    /**
+     * Add the given slot, whose key must already be written and not already
+     * be in the index.
+     */
+    void insert(final int slot) {
+        int pos = homeOfSlot(slot);
+        while (index[pos] != 0) {
+            pos = (pos + 1) & indexMask;
+        }
+        index[pos] = slot + 1;
+    }
+
+    /**
+     * Remove the given slot, whose key must still be in the buffer, shifting
+     * later entries in the same probe sequence back so lookups do not need
+     * tombstones.
+     */
+    void remove(final int slot) {
+        int pos = homeOfSlot(slot);
+        while (index[pos] != slot + 1) {
+            pos = (pos + 1) & indexMask;
+        }
+        index[pos] = 0;
+        int next = pos;
+        while (true) {
+            next = (next + 1) & indexMask;
+            if (index[next] == 0) {
+                return;
+            }
+            final int nextHome = homeOfSlot(index[next] - 1);
+            // Leave the entry where it is if its home lies cyclically in (pos, next]
+            final boolean reachable = pos <= next
+                ? (pos < nextHome && nextHome <= next)
+                : (pos < nextHome || nextHome <= next);
+            if (!reachable) {
+                index[pos] = index[next];
+                index[next] = 0;
+                pos = next;
+            }
+        }
+    }
+
+    private static long readLong(final byte[] buf, final int offset) {
+        long value = 0;
+        for (int byteIdx = 0; byteIdx < 8; byteIdx++) {
+            value = (value << 8) | (buf[offset + byteIdx] & 0xffL);
+        }
+        return value;
+    }
+}
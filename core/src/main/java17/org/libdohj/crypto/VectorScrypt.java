@@ -0,0 +1,55 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.libdohj.crypto;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+
+/**
+ * Entry point to the SIMD scrypt implementation, Java 17+ version. The
+ * <code>jdk.incubator.vector</code> module must be enabled at runtime (via
+ * <code>--add-modules jdk.incubator.vector</code>), otherwise no provider is
+ * offered and the Java 8 implementations are used as normal.
+ */
+public final class VectorScrypt {
+    private static final Logger log = LoggerFactory.getLogger(VectorScrypt.class);
+
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+    private VectorScrypt() {
+    }
+
+    /**
+     * Create the vectorised scrypt provider, if the running JVM supports it.
+     *
+     * @return the provider, or null if it is unavailable.
+     */
+    @Nullable
+    public static ScryptProvider createProvider() {
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+            log.debug("{} is not enabled, vectorised scrypt is unavailable", VECTOR_MODULE);
+            return null;
+        }
+        try {
+            return new VectorScryptProvider();
+        } catch (LinkageError e) {
+            log.debug("Vectorised scrypt is unavailable: {}", e.toString());
+            return null;
+        }
+    }
+}
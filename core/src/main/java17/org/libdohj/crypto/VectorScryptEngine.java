@@ -0,0 +1,205 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.libdohj.crypto;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorSpecies;
+
+import static jdk.incubator.vector.VectorOperators.ROL;
+import static jdk.incubator.vector.VectorOperators.XOR;
+
+/**
+ * Scrypt engine which hashes one input per vector lane, using the
+ * <code>jdk.incubator.vector</code> API. The state is stored word-interleaved
+ * (word w of lane l at <code>w * lanes + l</code>) so every Salsa20/8 step is
+ * a single vector operation across all lanes, with no shuffles. ROMix's data
+ * dependent reads from V are done with a gather. PBKDF2 is done one lane at a
+ * time via the thread's {@link ScryptEngine}.
+ *
+ * <p>Uses 256 bit vectors (8 lanes) where the hardware prefers them, otherwise
+ * 128 bit (4 lanes). Each thread gets its own engine via {@link #get()}.
+ * Instances are not thread safe.</p>
+ */
+final class VectorScryptEngine {
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED.length() >= 8
+        ? IntVector.SPECIES_256 : IntVector.SPECIES_128;
+
+    private static final int N = ScryptEngine.N;
+    private static final int BLOCK_WORDS = 32;
+    private static final int SALSA_WORDS = 16;
+
+    private static final ThreadLocal<VectorScryptEngine> ENGINES = ThreadLocal.withInitial(VectorScryptEngine::new);
+
+    private final int lanes = SPECIES.length();
+    private final int[] x = new int[BLOCK_WORDS * lanes];
+    private final int[] v = new int[N * BLOCK_WORDS * lanes];
+    private final int[] gatherIndex = new int[lanes];
+
+    private VectorScryptEngine() {
+    }
+
+    /**
+     * Get the engine for the current thread.
+     */
+    static VectorScryptEngine get() {
+        return ENGINES.get();
+    }
+
+    /**
+     * Get the number of inputs hashed together by {@link #hash(byte[][], int, byte[][])}.
+     */
+    int getLanes() {
+        return lanes;
+    }
+
+    /**
+     * Calculate the scrypt hash of the {@link #getLanes()} inputs starting at
+     * the given offset, writing each result into the matching, pre-allocated,
+     * element of outputs.
+     */
+    void hash(final byte[][] inputs, final int offset, final byte[][] outputs) {
+        final ScryptEngine pbkdf2 = ScryptEngine.get();
+        for (int lane = 0; lane < lanes; lane++) {
+            final byte[] input = inputs[offset + lane];
+            pbkdf2.expand(input, 0, input.length, x, lane, lanes);
+        }
+        romix();
+        for (int lane = 0; lane < lanes; lane++) {
+            final byte[] input = inputs[offset + lane];
+            pbkdf2.compress(input, 0, input.length, x, lane, lanes, outputs[offset + lane], 0);
+        }
+    }
+
+    private void romix() {
+        final int stepWords = BLOCK_WORDS * lanes;
+        for (int i = 0; i < N; i++) {
+            System.arraycopy(x, 0, v, i * stepWords, stepWords);
+            blockMix();
+        }
+        for (int i = 0; i < N; i++) {
+            for (int lane = 0; lane < lanes; lane++) {
+                gatherIndex[lane] = (x[SALSA_WORDS * lanes + lane] & (N - 1)) * stepWords + lane;
+            }
+            for (int pos = 0; pos < stepWords; pos += lanes) {
+                IntVector.fromArray(SPECIES, x, pos)
+                    .lanewise(XOR, IntVector.fromArray(SPECIES, v, pos, gatherIndex, 0))
+                    .intoArray(x, pos);
+            }
+            blockMix();
+        }
+    }
+
+    /**
+     * BlockMix for r=1 across all lanes.
+     */
+    private void blockMix() {
+        final int half = SALSA_WORDS * lanes;
+        for (int pos = 0; pos < half; pos += lanes) {
+            IntVector.fromArray(SPECIES, x, pos)
+                .lanewise(XOR, IntVector.fromArray(SPECIES, x, pos + half))
+                .intoArray(x, pos);
+        }
+        salsa20_8(0);
+        for (int pos = 0; pos < half; pos += lanes) {
+            IntVector.fromArray(SPECIES, x, pos + half)
+                .lanewise(XOR, IntVector.fromArray(SPECIES, x, pos))
+                .intoArray(x, pos + half);
+        }
+        salsa20_8(half);
+    }
+
+    /**
+     * Apply the Salsa20/8 core to every lane of the half block starting at
+     * the given offset in x.
+     */
+    private void salsa20_8(final int base) {
+        final int lanes = this.lanes;
+        final int[] x = this.x;
+        final IntVector b0 = IntVector.fromArray(SPECIES, x, base + 0 * lanes);
+        final IntVector b1 = IntVector.fromArray(SPECIES, x, base + 1 * lanes);
+        final IntVector b2 = IntVector.fromArray(SPECIES, x, base + 2 * lanes);
+        final IntVector b3 = IntVector.fromArray(SPECIES, x, base + 3 * lanes);
+        final IntVector b4 = IntVector.fromArray(SPECIES, x, base + 4 * lanes);
+        final IntVector b5 = IntVector.fromArray(SPECIES, x, base + 5 * lanes);
+        final IntVector b6 = IntVector.fromArray(SPECIES, x, base + 6 * lanes);
+        final IntVector b7 = IntVector.fromArray(SPECIES, x, base + 7 * lanes);
+        final IntVector b8 = IntVector.fromArray(SPECIES, x, base + 8 * lanes);
+        final IntVector b9 = IntVector.fromArray(SPECIES, x, base + 9 * lanes);
+        final IntVector b10 = IntVector.fromArray(SPECIES, x, base + 10 * lanes);
+        final IntVector b11 = IntVector.fromArray(SPECIES, x, base + 11 * lanes);
+        final IntVector b12 = IntVector.fromArray(SPECIES, x, base + 12 * lanes);
+        final IntVector b13 = IntVector.fromArray(SPECIES, x, base + 13 * lanes);
+        final IntVector b14 = IntVector.fromArray(SPECIES, x, base + 14 * lanes);
+        final IntVector b15 = IntVector.fromArray(SPECIES, x, base + 15 * lanes);
+        IntVector x0 = b0, x1 = b1, x2 = b2, x3 = b3, x4 = b4, x5 = b5, x6 = b6, x7 = b7;
+        IntVector x8 = b8, x9 = b9, x10 = b10, x11 = b11, x12 = b12, x13 = b13, x14 = b14, x15 = b15;
+
+        for (int round = 0; round < 8; round += 2) {
+            // Columns
+            x4 = x4.lanewise(XOR, x0.add(x12).lanewise(ROL, 7));
+            x8 = x8.lanewise(XOR, x4.add(x0).lanewise(ROL, 9));
+            x12 = x12.lanewise(XOR, x8.add(x4).lanewise(ROL, 13));
+            x0 = x0.lanewise(XOR, x12.add(x8).lanewise(ROL, 18));
+            x9 = x9.lanewise(XOR, x5.add(x1).lanewise(ROL, 7));
+            x13 = x13.lanewise(XOR, x9.add(x5).lanewise(ROL, 9));
+            x1 = x1.lanewise(XOR, x13.add(x9).lanewise(ROL, 13));
+            x5 = x5.lanewise(XOR, x1.add(x13).lanewise(ROL, 18));
+            x14 = x14.lanewise(XOR, x10.add(x6).lanewise(ROL, 7));
+            x2 = x2.lanewise(XOR, x14.add(x10).lanewise(ROL, 9));
+            x6 = x6.lanewise(XOR, x2.add(x14).lanewise(ROL, 13));
+            x10 = x10.lanewise(XOR, x6.add(x2).lanewise(ROL, 18));
+            x3 = x3.lanewise(XOR, x15.add(x11).lanewise(ROL, 7));
+            x7 = x7.lanewise(XOR, x3.add(x15).lanewise(ROL, 9));
+            x11 = x11.lanewise(XOR, x7.add(x3).lanewise(ROL, 13));
+            x15 = x15.lanewise(XOR, x11.add(x7).lanewise(ROL, 18));
+
+            // Rows
+            x1 = x1.lanewise(XOR, x0.add(x3).lanewise(ROL, 7));
+            x2 = x2.lanewise(XOR, x1.add(x0).lanewise(ROL, 9));
+            x3 = x3.lanewise(XOR, x2.add(x1).lanewise(ROL, 13));
+            x0 = x0.lanewise(XOR, x3.add(x2).lanewise(ROL, 18));
+            x6 = x6.lanewise(XOR, x5.add(x4).lanewise(ROL, 7));
+            x7 = x7.lanewise(XOR, x6.add(x5).lanewise(ROL, 9));
+            x4 = x4.lanewise(XOR, x7.add(x6).lanewise(ROL, 13));
+            x5 = x5.lanewise(XOR, x4.add(x7).lanewise(ROL, 18));
+            x11 = x11.lanewise(XOR, x10.add(x9).lanewise(ROL, 7));
+            x8 = x8.lanewise(XOR, x11.add(x10).lanewise(ROL, 9));
+            x9 = x9.lanewise(XOR, x8.add(x11).lanewise(ROL, 13));
+            x10 = x10.lanewise(XOR, x9.add(x8).lanewise(ROL, 18));
+            x12 = x12.lanewise(XOR, x15.add(x14).lanewise(ROL, 7));
+            x13 = x13.lanewise(XOR, x12.add(x15).lanewise(ROL, 9));
+            x14 = x14.lanewise(XOR, x13.add(x12).lanewise(ROL, 13));
+            x15 = x15.lanewise(XOR, x14.add(x13).lanewise(ROL, 18));
+        }
+
+        x0.add(b0).intoArray(x, base + 0 * lanes);
+        x1.add(b1).intoArray(x, base + 1 * lanes);
+        x2.add(b2).intoArray(x, base + 2 * lanes);
+        x3.add(b3).intoArray(x, base + 3 * lanes);
+        x4.add(b4).intoArray(x, base + 4 * lanes);
+        x5.add(b5).intoArray(x, base + 5 * lanes);
+        x6.add(b6).intoArray(x, base + 6 * lanes);
+        x7.add(b7).intoArray(x, base + 7 * lanes);
+        x8.add(b8).intoArray(x, base + 8 * lanes);
+        x9.add(b9).intoArray(x, base + 9 * lanes);
+        x10.add(b10).intoArray(x, base + 10 * lanes);
+        x11.add(b11).intoArray(x, base + 11 * lanes);
+        x12.add(b12).intoArray(x, base + 12 * lanes);
+        x13.add(b13).intoArray(x, base + 13 * lanes);
+        x14.add(b14).intoArray(x, base + 14 * lanes);
+        x15.add(b15).intoArray(x, base + 15 * lanes);
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.libdohj.crypto;
+
+/**
+ * Scrypt provider backed by {@link VectorScryptEngine}. Batches are hashed
+ * in groups as wide as the engine's vectors; any remainder, and single
+ * inputs, go to {@link ScryptEngine}.
+ */
+class VectorScryptProvider implements ScryptProvider {
+    static final String NAME = "java-vector";
+
+    VectorScryptProvider() {
+        // Fail here, rather than on first use, if the vector API is unusable.
+        VectorScryptEngine.get();
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public byte[] scryptDigest(final byte[] input) {
+        return ScryptEngine.get().hash(input);
+    }
+
+    @Override
+    public byte[][] scryptDigest(final byte[][] inputs) {
+        final byte[][] outputs = new byte[inputs.length][];
+        for (int inputIdx = 0; inputIdx < inputs.length; inputIdx++) {
+            outputs[inputIdx] = new byte[ScryptEngine.HASH_LENGTH];
+        }
+        final VectorScryptEngine engine = VectorScryptEngine.get();
+        final int vectorCount = inputs.length - inputs.length % engine.getLanes();
+        for (int offset = 0; offset < vectorCount; offset += engine.getLanes()) {
+            engine.hash(inputs, offset, outputs);
+        }
+        final ScryptEngine scalar = ScryptEngine.get();
+        for (int inputIdx = vectorCount; inputIdx < inputs.length; inputIdx++) {
+            scalar.hash(inputs[inputIdx], 0, inputs[inputIdx].length, outputs[inputIdx], 0);
+        }
+        return outputs;
+    }
+}
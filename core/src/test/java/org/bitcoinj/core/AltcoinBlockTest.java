@@ -19,9 +19,21 @@ import org.junit.Before;
 import org.junit.Test;
 import org.libdohj.params.DogecoinMainNetParams;
 
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
 
 public class AltcoinBlockTest {
     private static final NetworkParameters params = DogecoinMainNetParams.get();
@@ -61,4 +73,203 @@ public class AltcoinBlockTest {
         expected.set(4);
         assertEquals(block.getVersionFlags(), expected);
     }
+
+    /**
+     * The parallel merkle root must match Block's sequential calculation,
+     * including trees with odd nodes either side of the size at which
+     * subtrees are calculated on a single thread.
+     */
+    @Test
+    public void shouldCalculateMerkleRootInParallel() {
+        final ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            for (int txCount : new int[] {1, 2, 3, 255, 256, 257, 511, 512, 513, 1000, 1025}) {
+                final List<Transaction> transactions = createTransactions(txCount);
+                final AltcoinBlock block = new AltcoinBlock(params, 1, Sha256Hash.ZERO_HASH, null,
+                    0, 0x1e0ffff0L, 0, transactions);
+                assertEquals("Transaction count " + txCount, block.getMerkleRoot(),
+                    block.calculateMerkleRoot(pool));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldVerifyLargeBlockMerkleRoot() {
+        final List<Transaction> transactions = createTransactions(AltcoinBlock.PARALLEL_MERKLE_ROOT_THRESHOLD + 1);
+        final Sha256Hash merkleRoot = new AltcoinBlock(params, 1, Sha256Hash.ZERO_HASH, null,
+            0, 0x1e0ffff0L, 0, transactions).getMerkleRoot();
+        final EnumSet<Block.VerifyFlag> flags = EnumSet.noneOf(Block.VerifyFlag.class);
+        final ForkJoinPool pool = new ForkJoinPool(3);
+        AltcoinBlock.setTransactionPool(pool);
+        try {
+            new AltcoinBlock(params, 1, Sha256Hash.ZERO_HASH, merkleRoot, 0, 0x1e0ffff0L, 0, transactions)
+                .verifyTransactions(-1, flags);
+            final AltcoinBlock tampered = new AltcoinBlock(params, 1, Sha256Hash.ZERO_HASH, Sha256Hash.ZERO_HASH,
+                0, 0x1e0ffff0L, 0, transactions);
+            assertThrows(VerificationException.class, () -> tampered.verifyTransactions(-1, flags));
+
+            // The root read from the header is checked, not one calculated from the transactions
+            final byte[] blockBytes = new AltcoinBlock(params, 1, Sha256Hash.ZERO_HASH, merkleRoot,
+                0, 0x1e0ffff0L, 0, transactions).bitcoinSerialize();
+            ((AltcoinBlock) params.getDefaultSerializer().makeBlock(blockBytes)).verifyTransactions(-1, flags);
+            blockBytes[36] ^= 1;
+            final AltcoinBlock parsed = (AltcoinBlock) params.getDefaultSerializer().makeBlock(blockBytes);
+            assertThrows(VerificationException.class, () -> parsed.verifyTransactions(-1, flags));
+        } finally {
+            AltcoinBlock.setTransactionPool(null);
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Large blocks must be rejected for the same reasons whether or not
+     * transaction IDs are calculated on a pool.
+     */
+    @Test
+    public void shouldRejectSameLargeBlocksWithPool() {
+        final EnumSet<Block.VerifyFlag> flags = EnumSet.noneOf(Block.VerifyFlag.class);
+        final String[] reasons = {"Merkle hashes do not match", "First tx is not coinbase",
+            "is coinbase when it should not be", "too many Signature Operations"};
+        final ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            for (int fault = 0; fault < reasons.length; fault++) {
+                final String expected = verifyFailure(createInvalidBlock(fault), flags);
+                assertNotNull("Fault " + fault, expected);
+                assertTrue(expected, expected.contains(reasons[fault]));
+                AltcoinBlock.setTransactionPool(pool);
+                try {
+                    assertEquals("Fault " + fault, expected, verifyFailure(createInvalidBlock(fault), flags));
+                } finally {
+                    AltcoinBlock.setTransactionPool(null);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Create a large block with one fault: a wrong merkle root, a first
+     * transaction which is not a coinbase, a second coinbase, or too many
+     * signature operations.
+     */
+    private static AltcoinBlock createInvalidBlock(final int fault) {
+        final List<Transaction> transactions = createTransactions(AltcoinBlock.PARALLEL_MERKLE_ROOT_THRESHOLD + 2);
+        switch (fault) {
+            case 1:
+                transactions.remove(0);
+                break;
+            case 2:
+                transactions.set(1, createTransactions(1).get(0));
+                break;
+            case 3:
+                final Transaction tx = new Transaction(params);
+                tx.addInput(new TransactionInput(params, tx, new byte[0],
+                    new TransactionOutPoint(params, 0, Sha256Hash.of(new byte[] {1, 2, 3}))));
+                final byte[] checkSigs = new byte[Block.MAX_BLOCK_SIGOPS + 1];
+                Arrays.fill(checkSigs, (byte) 0xac);
+                tx.addOutput(new TransactionOutput(params, tx, Coin.COIN, checkSigs));
+                transactions.set(1, tx);
+                break;
+            default:
+                break;
+        }
+        final Sha256Hash merkleRoot = fault == 0 ? Sha256Hash.ZERO_HASH
+            : new AltcoinBlock(params, 1, Sha256Hash.ZERO_HASH, null, 0, 0x1e0ffff0L, 0, transactions).getMerkleRoot();
+        return new AltcoinBlock(params, 1, Sha256Hash.ZERO_HASH, merkleRoot, 0, 0x1e0ffff0L, 0, transactions);
+    }
+
+    @Nullable
+    private static String verifyFailure(final AltcoinBlock block, final EnumSet<Block.VerifyFlag> flags) {
+        try {
+            block.verifyTransactions(-1, flags);
+            return null;
+        } catch (VerificationException e) {
+            return e.getMessage();
+        }
+    }
+
+    /**
+     * With a parse pool set, large blocks must parse to the same transactions
+     * and sizes as on a single thread, and serialize back unchanged.
+     */
+    @Test
+    public void shouldParseTransactionsInParallel() {
+        final byte[] blockBytes = new AltcoinBlock(params, 1, Sha256Hash.ZERO_HASH, null, 0, 0x1e0ffff0L, 0,
+            createTransactions(AltcoinBlock.PARALLEL_PARSE_THRESHOLD * 3 + 1)).bitcoinSerialize();
+        final AltcoinBlock expected = (AltcoinBlock) params.getDefaultSerializer().makeBlock(blockBytes);
+        final ForkJoinPool pool = new ForkJoinPool(3);
+        AltcoinBlock.setTransactionPool(pool);
+        try {
+            for (boolean retain : new boolean[] {false, true}) {
+                final AltcoinBlock actual = (AltcoinBlock) params.getSerializer(retain).makeBlock(blockBytes);
+                assertEquals(expected.getTransactions(), actual.getTransactions());
+                assertEquals(expected.getMessageSize(), actual.getMessageSize());
+                assertEquals(expected.getOptimalEncodingMessageSize(), actual.getOptimalEncodingMessageSize());
+                assertEquals(expected.getMerkleRoot(), actual.calculateMerkleRoot(pool));
+                assertArrayEquals(blockBytes, actual.bitcoinSerialize());
+            }
+        } finally {
+            AltcoinBlock.setTransactionPool(null);
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldRejectTruncatedBlockWhenParsingInParallel() {
+        final byte[] blockBytes = new AltcoinBlock(params, 1, Sha256Hash.ZERO_HASH, null, 0, 0x1e0ffff0L, 0,
+            createTransactions(AltcoinBlock.PARALLEL_PARSE_THRESHOLD)).bitcoinSerialize();
+        final byte[] truncated = Arrays.copyOf(blockBytes, blockBytes.length - 2);
+        AltcoinBlock.setTransactionPool(ForkJoinPool.commonPool());
+        try {
+            assertThrows(ProtocolException.class, () -> params.getDefaultSerializer().makeBlock(truncated));
+        } finally {
+            AltcoinBlock.setTransactionPool(null);
+        }
+    }
+
+    /**
+     * Boundaries of segwit transactions must include their witnesses, where
+     * the serializer allows them.
+     */
+    @Test
+    public void shouldScanWitnessTransactions() throws Exception {
+        final Transaction witnessTx = createTransactions(2).get(1);
+        final TransactionWitness witness = new TransactionWitness(2);
+        witness.setPush(0, new byte[72]);
+        witness.setPush(1, new byte[33]);
+        witnessTx.getInput(0).setWitness(witness);
+        final Transaction plainTx = createTransactions(3).get(2);
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        witnessTx.bitcoinSerializeToStream(stream, true);
+        final int witnessLength = stream.size();
+        plainTx.bitcoinSerializeToStream(stream, false);
+        final byte[] bytes = stream.toByteArray();
+        final MessageSerializer serializer = params.getDefaultSerializer().withProtocolVersion(
+            NetworkParameters.ProtocolVersion.WITNESS_VERSION.getBitcoinProtocolVersion());
+
+        final int[] offsets = ParallelTransactionParser.scan(bytes, 0, 2, serializer);
+        assertArrayEquals(new int[] {0, witnessLength, bytes.length}, offsets);
+        assertEquals(witnessLength, new Transaction(params, bytes, 0, null, serializer, Message.UNKNOWN_LENGTH, null)
+            .getMessageSize());
+        assertNull(ParallelTransactionParser.scan(bytes, 0, 3, serializer));
+    }
+
+    private static List<Transaction> createTransactions(final int txCount) {
+        final List<Transaction> transactions = new ArrayList<>(txCount);
+        for (int txIdx = 0; txIdx < txCount; txIdx++) {
+            final Transaction tx = new Transaction(params);
+            if (txIdx == 0) {
+                tx.addInput(new TransactionInput(params, tx, new byte[] {1, 2}));
+            } else {
+                tx.addInput(new TransactionInput(params, tx, new byte[0],
+                    new TransactionOutPoint(params, txIdx, Sha256Hash.of(new byte[] {(byte) txIdx}))));
+            }
+            tx.addOutput(new TransactionOutput(params, tx, Coin.COIN, new byte[] {(byte) txIdx}));
+            transactions.add(tx);
+        }
+        return transactions;
+    }
 }
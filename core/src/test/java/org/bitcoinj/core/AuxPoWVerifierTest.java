@@ -0,0 +1,223 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bitcoinj.core;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.libdohj.core.UInt256;
+import org.libdohj.params.DogecoinMainNetParams;
+import org.libdohj.params.DogecoinTestNet3Params;
+import org.libdohj.params.NamecoinMainNetParams;
+
+import java.math.BigInteger;
+import java.util.concurrent.Callable;
+
+import static org.bitcoinj.core.Util.getBytes;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the raw AuxPoW verifier makes the same decisions as
+ * {@link AuxPoW#checkProofOfWork(Sha256Hash, UInt256, boolean)}.
+ */
+public class AuxPoWVerifierTest {
+    private static final String ACCEPTED = "accepted";
+    private static final String MALFORMED = "malformed";
+    private static final String REJECTED = "rejected";
+
+    @Before
+    public void setUp() throws Exception {
+        Context context = new Context(DogecoinMainNetParams.get());
+    }
+
+    /**
+     * Dogecoin block #403,931, checked with scrypt.
+     */
+    @Test
+    public void shouldMatchParsedVerifierForScrypt() throws Exception {
+        checkMatchesParsedVerifier(DogecoinMainNetParams.get(), "auxpow_header.bin",
+            Sha256Hash.wrap("0c836b86991631d34a8a68054e2f62db919b39d1ee43c27ab3344d6aa82fa609"), 0x1b06f8f0);
+    }
+
+    /**
+     * Namecoin block #19,414, which has no merged mining header in the
+     * coinbase, checked with SHA-256.
+     */
+    @Test
+    public void shouldMatchParsedVerifierForSha256() throws Exception {
+        checkMatchesParsedVerifier(NamecoinMainNetParams.get(), "auxpow_header_no_tx_header.bin",
+            Sha256Hash.wrap("5fb89c3b18c27bc38d351d516177cbd3504c95ca0494cbbbbd52f2fb5f2ff1ec"), 0x1b00b269);
+    }
+
+    /**
+     * Networks which override the block difficulty hash must still get the
+     * overridden hash.
+     */
+    @Test
+    public void shouldMatchParsedVerifierForOverriddenDifficulty() throws Exception {
+        final NetworkParameters namecoinLikeParams = new DogecoinTestNet3Params() {
+            @Override
+            public BigInteger getBlockDifficulty(Block block) {
+                return block.getHash().toBigInteger();
+            }
+        };
+        checkMatchesParsedVerifier(namecoinLikeParams, "auxpow_header_no_tx_header.bin",
+            Sha256Hash.wrap("5fb89c3b18c27bc38d351d516177cbd3504c95ca0494cbbbbd52f2fb5f2ff1ec"), 0x1b00b269);
+    }
+
+    /**
+     * Non-canonical variable length integers must get the same decision as
+     * the parsed verifier, including when exceptions are not requested.
+     */
+    @Test
+    public void shouldMatchParsedVerifierForNonCanonicalVarInts() throws Exception {
+        final NetworkParameters params = DogecoinMainNetParams.get();
+        final byte[] auxpowAsBytes = getBytes(getClass().getResourceAsStream("auxpow_header.bin"));
+        final Sha256Hash hashAuxBlock = Sha256Hash.wrap("0c836b86991631d34a8a68054e2f62db919b39d1ee43c27ab3344d6aa82fa609");
+        final UInt256 target = UInt256.decodeCompactBits(0x1b06f8f0);
+        final AuxPoW auxpow = new AuxPoW(params, auxpowAsBytes, null, params.getDefaultSerializer());
+        // Version, then the input count, then the outpoint
+        final int scriptLengthOffset = 4 + 1 + 36;
+        final int coinbaseBranchOffset = auxpow.getCoinbase().getMessageSize() + 32;
+        final int chainBranchOffset = coinbaseBranchOffset + 1 + auxpow.getCoinbaseBranch().size() * 32 + 4;
+
+        for (int varIntOffset : new int[] {scriptLengthOffset, coinbaseBranchOffset, chainBranchOffset}) {
+            final byte[] mutated = widenVarInt(auxpowAsBytes, varIntOffset);
+            final String expected = checkQuietly(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    return new AuxPoW(params, mutated, null, params.getDefaultSerializer())
+                        .checkProofOfWork(hashAuxBlock, target, false);
+                }
+            });
+            final String actual = checkQuietly(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    return AuxPoWVerifier.get().checkProofOfWork(params, mutated, 0, hashAuxBlock, target, false);
+                }
+            });
+            assertEquals("Offset " + varIntOffset, expected, actual);
+            assertEquals("Offset " + varIntOffset, checkParsed(params, mutated, hashAuxBlock, target),
+                checkRaw(params, mutated, hashAuxBlock, target));
+        }
+    }
+
+    /**
+     * Re-encode the single byte variable length integer at the given offset
+     * in three bytes.
+     */
+    private static byte[] widenVarInt(final byte[] bytes, final int offset) {
+        assertTrue((bytes[offset] & 0xff) < 253);
+        final byte[] widened = new byte[bytes.length + 2];
+        System.arraycopy(bytes, 0, widened, 0, offset);
+        widened[offset] = (byte) 253;
+        widened[offset + 1] = bytes[offset];
+        widened[offset + 2] = 0;
+        System.arraycopy(bytes, offset + 1, widened, offset + 3, bytes.length - offset - 1);
+        return widened;
+    }
+
+    private void checkMatchesParsedVerifier(final NetworkParameters params, final String resource,
+            final Sha256Hash hashAuxBlock, final long bits) throws Exception {
+        final byte[] auxpowAsBytes = getBytes(getClass().getResourceAsStream(resource));
+        final UInt256 target = UInt256.decodeCompactBits(bits);
+        assertEquals(ACCEPTED, checkRaw(params, auxpowAsBytes, hashAuxBlock, target));
+        assertEquals(ACCEPTED, checkParsed(params, auxpowAsBytes, hashAuxBlock, target));
+
+        // Wrong child block, and a target the parent header does not meet
+        assertNotEquals(ACCEPTED, checkRaw(params, auxpowAsBytes, Sha256Hash.ZERO_HASH, target));
+        assertEquals(checkParsed(params, auxpowAsBytes, Sha256Hash.ZERO_HASH, target),
+            checkRaw(params, auxpowAsBytes, Sha256Hash.ZERO_HASH, target));
+        final UInt256 hardTarget = UInt256.decodeCompactBits(0x03000001);
+        assertNotEquals(ACCEPTED, checkRaw(params, auxpowAsBytes, hashAuxBlock, hardTarget));
+        assertEquals(checkParsed(params, auxpowAsBytes, hashAuxBlock, hardTarget),
+            checkRaw(params, auxpowAsBytes, hashAuxBlock, hardTarget));
+
+        // Flip a bit in every byte in turn, including inside the payload
+        // passed at an offset
+        final byte[] buffer = new byte[auxpowAsBytes.length + 7];
+        for (int byteIdx = 0; byteIdx < auxpowAsBytes.length; byteIdx++) {
+            final byte[] mutated = auxpowAsBytes.clone();
+            mutated[byteIdx] ^= 0x01;
+            System.arraycopy(mutated, 0, buffer, 7, mutated.length);
+            final String expected = checkParsed(params, mutated, hashAuxBlock, target);
+            final String actual = check(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    return AuxPoWVerifier.get().checkProofOfWork(params, buffer, 7, hashAuxBlock, target, true);
+                }
+            });
+            if (expected.equals(MALFORMED) || actual.equals(MALFORMED)) {
+                assertTrue("Byte " + byteIdx, !expected.equals(ACCEPTED) && !actual.equals(ACCEPTED));
+            } else {
+                assertEquals("Byte " + byteIdx, expected, actual);
+            }
+        }
+    }
+
+    private String checkRaw(final NetworkParameters params, final byte[] auxpowAsBytes,
+            final Sha256Hash hashAuxBlock, final UInt256 target) {
+        return check(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return AuxPoWVerifier.get().checkProofOfWork(params, auxpowAsBytes, 0, hashAuxBlock, target, true);
+            }
+        });
+    }
+
+    private String checkParsed(final NetworkParameters params, final byte[] auxpowAsBytes,
+            final Sha256Hash hashAuxBlock, final UInt256 target) {
+        return check(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                final AuxPoW auxpow = new AuxPoW(params, auxpowAsBytes, null, params.getDefaultSerializer());
+                return auxpow.checkProofOfWork(hashAuxBlock, target, true);
+            }
+        });
+    }
+
+    /**
+     * Summarise the outcome of a check which should not throw on rejection as
+     * "accepted", "rejected", or "malformed" if the header could not be read.
+     */
+    private static String checkQuietly(final Callable<Boolean> verification) {
+        try {
+            return verification.call() ? ACCEPTED : REJECTED;
+        } catch (ProtocolException | ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+            return MALFORMED;
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Summarise the outcome of a check as "accepted", the rejection message,
+     * or "malformed" if the header could not be read.
+     */
+    private static String check(final Callable<Boolean> verification) {
+        try {
+            assertTrue(verification.call());
+            return ACCEPTED;
+        } catch (ProtocolException | ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+            return MALFORMED;
+        } catch (VerificationException e) {
+            return e.getMessage();
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bitcoinj.core;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.libdohj.core.ProofOfWorkVerifier;
+import org.libdohj.params.DogecoinMainNetParams;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CheckpointTrustingVerifierTest {
+    private static final DogecoinMainNetParams params = DogecoinMainNetParams.get();
+
+    @Before
+    public void setUp() throws Exception {
+        Context context = new Context(params);
+    }
+
+    /**
+     * Build a chain of headers on top of genesis. These do not have valid proof
+     * of work, so will only be accepted if checkpointed.
+     */
+    private List<AltcoinBlock> buildChain(final int length) {
+        final List<AltcoinBlock> chain = new ArrayList<>();
+        Sha256Hash prev = params.getGenesisBlock().getHash();
+        for (int height = 1; height <= length; height++) {
+            final AltcoinBlock header = new AltcoinBlock(params, 1, prev, Sha256Hash.ZERO_HASH,
+                1386325540L + height * 60, 0x1e0ffff0L, height, Collections.<Transaction>emptyList());
+            chain.add(header);
+            prev = header.getHash();
+        }
+        return chain;
+    }
+
+    private static List<ProofOfWorkVerifier.Status> statuses(final List<ProofOfWorkVerifier.Result> results) {
+        final List<ProofOfWorkVerifier.Status> statuses = new ArrayList<>();
+        for (ProofOfWorkVerifier.Result result : results) {
+            statuses.add(result.getStatus());
+        }
+        return statuses;
+    }
+
+    @Test
+    public void shouldTrustHeadersLinkedToCheckpoint() throws Exception {
+        final List<AltcoinBlock> chain = buildChain(4);
+        final SortedMap<Integer, Sha256Hash> checkpoints = new TreeMap<>();
+        checkpoints.put(3, chain.get(2).getHash());
+        final CheckpointTrustingVerifier verifier = new CheckpointTrustingVerifier(checkpoints,
+            0, params.getGenesisBlock().getHash());
+
+        assertTrue(verifier.add(chain.subList(0, 2)).isEmpty());
+        assertEquals(2, verifier.getPendingCount());
+
+        final List<ProofOfWorkVerifier.Result> results = verifier.add(chain.subList(2, 4));
+        assertEquals(Arrays.asList(ProofOfWorkVerifier.Status.CHECKPOINTED, ProofOfWorkVerifier.Status.CHECKPOINTED,
+            ProofOfWorkVerifier.Status.CHECKPOINTED, ProofOfWorkVerifier.Status.INVALID), statuses(results));
+        assertTrue(chain.get(0).isCheckpointed());
+        chain.get(0).verifyProofOfWork();
+        assertFalse(chain.get(3).isCheckpointed());
+
+        // Header 4 is above the checkpoint and fails full verification, so rewind to 3
+        assertEquals(3, verifier.getTipHeight());
+        assertEquals(chain.get(2).getHash(), verifier.getTipHash());
+        assertEquals(0, verifier.getPendingCount());
+    }
+
+    @Test
+    public void shouldVerifyHeadersNotMatchingCheckpoint() throws Exception {
+        final List<AltcoinBlock> chain = buildChain(4);
+        final SortedMap<Integer, Sha256Hash> checkpoints = new TreeMap<>();
+        checkpoints.put(3, Sha256Hash.ZERO_HASH);
+        final CheckpointTrustingVerifier verifier = new CheckpointTrustingVerifier(checkpoints,
+            0, params.getGenesisBlock().getHash());
+
+        final List<ProofOfWorkVerifier.Result> results = verifier.add(chain);
+        assertEquals(Arrays.asList(ProofOfWorkVerifier.Status.INVALID, ProofOfWorkVerifier.Status.SKIPPED,
+            ProofOfWorkVerifier.Status.SKIPPED, ProofOfWorkVerifier.Status.SKIPPED), statuses(results));
+        assertFalse(chain.get(0).isCheckpointed());
+        assertEquals(0, verifier.getTipHeight());
+        assertEquals(params.getGenesisBlock().getHash(), verifier.getTipHash());
+    }
+
+    @Test
+    public void shouldRejectDisconnectedHeaders() throws Exception {
+        final List<AltcoinBlock> chain = buildChain(3);
+        final SortedMap<Integer, Sha256Hash> checkpoints = new TreeMap<>();
+        checkpoints.put(10, Sha256Hash.ZERO_HASH);
+        final CheckpointTrustingVerifier verifier = new CheckpointTrustingVerifier(checkpoints,
+            0, params.getGenesisBlock().getHash());
+
+        final List<ProofOfWorkVerifier.Result> results = verifier.add(Arrays.asList(chain.get(0), chain.get(2)));
+        assertEquals(Arrays.asList(ProofOfWorkVerifier.Status.INVALID), statuses(results));
+        assertEquals(1, verifier.getTipHeight());
+        assertEquals(1, verifier.getPendingCount());
+    }
+
+    @Test
+    public void shouldVerifyInFullWhenPendingLimitReached() throws Exception {
+        final List<AltcoinBlock> chain = buildChain(3);
+        final SortedMap<Integer, Sha256Hash> checkpoints = new TreeMap<>();
+        checkpoints.put(10, Sha256Hash.ZERO_HASH);
+        final CheckpointTrustingVerifier verifier = new CheckpointTrustingVerifier(checkpoints,
+            0, params.getGenesisBlock().getHash(), ForkJoinPool.commonPool(), 2);
+
+        final List<ProofOfWorkVerifier.Result> results = verifier.add(chain);
+        assertEquals(Arrays.asList(ProofOfWorkVerifier.Status.INVALID, ProofOfWorkVerifier.Status.SKIPPED,
+            ProofOfWorkVerifier.Status.SKIPPED), statuses(results));
+    }
+
+    @Test
+    public void shouldVerifyAboveLastCheckpoint() throws Exception {
+        final AltcoinBlock block1 = (AltcoinBlock) params.getDefaultSerializer().makeBlock(
+            Util.getBytes(getClass().getResourceAsStream("/org/bitcoinj/core/dogecoin_block1.bin")));
+        final CheckpointTrustingVerifier verifier = new CheckpointTrustingVerifier(params.getCheckpoints(),
+            0, params.getGenesisBlock().getHash());
+        // Block 1 is below the last main net checkpoint, so is held back
+        assertTrue(verifier.add(Collections.singletonList(block1)).isEmpty());
+        final List<ProofOfWorkVerifier.Result> results = verifier.flush();
+        assertEquals(Arrays.asList(ProofOfWorkVerifier.Status.VALID), statuses(results));
+        assertEquals(0, verifier.getPendingCount());
+    }
+}
@@ -3,12 +3,19 @@ package org.bitcoinj.core;
 import org.junit.Before;
 import org.junit.Test;
 import org.libdohj.core.AltcoinSerializer;
+import org.libdohj.core.ProofOfWorkVerifier;
+import org.libdohj.crypto.ScryptProvider;
+import org.libdohj.crypto.ScryptProviders;
 import org.libdohj.params.DogecoinMainNetParams;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -169,4 +176,150 @@ public class DogecoinBlockTest {
         final AltcoinBlock block = (AltcoinBlock)serializer.makeBlock(payload);
         assertTrue(block.checkProofOfWork(true));
     }
+
+    /**
+     * Hashing headers in bulk must find the parent header of a merge-mined
+     * block without building the AuxPoW header, and hand the hash on if it
+     * is built later.
+     */
+    @Test
+    public void shouldPrecomputeScryptHashWithoutBuildingAuxPoW() throws IOException {
+        byte[] payload = Util.getBytes(getClass().getResourceAsStream("dogecoin_block371337.bin"));
+        final Sha256Hash expected = ((AltcoinBlock) params.getDefaultSerializer().makeBlock(payload))
+            .getAuxPoW().getParentBlockHeader().getScryptHash();
+
+        final AltcoinBlock block = (AltcoinBlock) params.getDefaultSerializer().makeBlock(payload);
+        AltcoinBlock.precomputeScryptHashes(Collections.singletonList(block));
+        assertFalse(block.isAuxPoWBuilt());
+        assertEquals(expected, block.getAuxPoWParentScryptHash());
+        assertEquals(expected, block.getAuxPoW().getParentBlockHeader().getScryptHash());
+    }
+
+    /**
+     * Verifying a batch of headers checks AuxPoW headers from their
+     * serialized form, so must not build them.
+     */
+    @Test
+    public void shouldVerifyBatchWithoutBuildingAuxPoW() throws IOException {
+        byte[] payload = Util.getBytes(getClass().getResourceAsStream("dogecoin_block371337.bin"));
+        final AltcoinBlock block = (AltcoinBlock) params.getDefaultSerializer().makeBlock(payload);
+        final List<ProofOfWorkVerifier.Result> results = ProofOfWorkVerifier.verify(Collections.singletonList(block));
+        assertEquals(ProofOfWorkVerifier.Status.VALID, results.get(0).getStatus());
+        assertFalse(block.isAuxPoWBuilt());
+    }
+
+    /**
+     * The serialized AuxPoW check must use the parent header scrypt hash
+     * calculated in bulk, rather than hashing the parent header again.
+     */
+    @Test
+    public void shouldCheckAuxPoWWithPrecomputedScryptHash() throws IOException {
+        byte[] payload = Util.getBytes(getClass().getResourceAsStream("dogecoin_block371337.bin"));
+        final AltcoinBlock block = (AltcoinBlock) params.getDefaultSerializer().makeBlock(payload);
+        final ScryptProvider previous = ScryptProviders.getDefault();
+        ScryptProviders.setDefault(new ScryptProvider() {
+            @Override
+            public String getName() {
+                return "above-any-target";
+            }
+
+            @Override
+            public byte[] scryptDigest(final byte[] input) {
+                final byte[] hash = new byte[Sha256Hash.LENGTH];
+                Arrays.fill(hash, (byte) 0xff);
+                return hash;
+            }
+        });
+        try {
+            AltcoinBlock.precomputeScryptHashes(Collections.singletonList(block));
+        } finally {
+            ScryptProviders.setDefault(previous);
+        }
+        assertFalse(block.checkProofOfWork(false));
+        assertFalse(block.isAuxPoWBuilt());
+    }
+
+    /**
+     * A header cloned from a block parsed with its payload retained must not
+     * keep the block payload, only the AuxPoW header.
+     */
+    @Test
+    public void shouldCopyAuxPoWWhenCloningHeader() throws IOException {
+        final byte[] payload = Util.getBytes(getClass().getResourceAsStream("dogecoin_block371337.bin"));
+        final AltcoinBlock block = (AltcoinBlock) new AltcoinSerializer(params, true).makeBlock(payload);
+        final AltcoinBlock header = (AltcoinBlock) block.cloneAsHeader();
+        final byte[] expected = header.getAuxPoWBytes();
+
+        Arrays.fill(payload, (byte) 0);
+        assertArrayEquals(expected, header.getAuxPoWBytes());
+        assertTrue(header.checkProofOfWork(true));
+    }
+
+    /**
+     * AuxPoW headers are only parsed on demand, so check that blocks
+     * serialize back to their original bytes with and without the AuxPoW
+     * header having been built, and whether or not the payload is retained.
+     */
+    @Test
+    public void shouldSerializeUnparsedAuxPoW() throws IOException {
+        byte[] payload = Util.getBytes(getClass().getResourceAsStream("dogecoin_block371337.bin"));
+        for (boolean parseRetain : new boolean[] {false, true}) {
+            AltcoinSerializer serializer = new AltcoinSerializer(params, parseRetain);
+            final AltcoinBlock block = (AltcoinBlock)serializer.makeBlock(payload);
+            assertTrue(block.hasAuxPoW());
+            assertEquals(6, block.getTransactions().size());
+            assertEquals(payload.length, block.getMessageSize());
+            assertArrayEquals(payload, block.bitcoinSerialize());
+
+            final AltcoinBlock header = (AltcoinBlock) block.cloneAsHeader();
+            assertTrue(header.hasAuxPoW());
+
+            assertEquals("45df41e40aba5b2a03d08bd1202a1c02ef3954d8aa22ea6c5ae62fd00f290ea9",
+                block.getAuxPoW().getParentBlockHeader().getHashAsString());
+            assertArrayEquals(payload, block.bitcoinSerialize());
+        }
+    }
+
+    /**
+     * The block hash covers only the 80 byte header, so must not change when
+     * the AuxPoW header is held as an object, or has been released.
+     */
+    @Test
+    public void shouldHashHeaderWithoutAuxPoW() throws IOException {
+        byte[] payload = Util.getBytes(getClass().getResourceAsStream("dogecoin_block371337.bin"));
+        for (boolean parseRetain : new boolean[] {false, true}) {
+            AltcoinSerializer serializer = new AltcoinSerializer(params, parseRetain);
+            final AltcoinBlock block = (AltcoinBlock)serializer.makeBlock(payload);
+
+            final byte[] header = new byte[Block.HEADER_SIZE + 2];
+            block.encodeHeader(header, 1);
+            assertArrayEquals(Arrays.copyOf(payload, Block.HEADER_SIZE),
+                Arrays.copyOfRange(header, 1, Block.HEADER_SIZE + 1));
+
+            final AltcoinBlock clone = (AltcoinBlock) block.cloneAsHeader();
+            assertEquals(block.getHash(), clone.getHash());
+            clone.encodeHeader(header, 0);
+            assertArrayEquals(Arrays.copyOf(payload, Block.HEADER_SIZE), Arrays.copyOf(header, Block.HEADER_SIZE));
+            assertTrue(clone.checkProofOfWork(false));
+
+            block.getAuxPoW();
+            final AltcoinBlock builtClone = (AltcoinBlock) block.cloneAsHeader();
+            assertEquals(block.getHash(), builtClone.getHash());
+
+            final int auxpowLength = block.getAuxPoWBytes().length;
+            block.releaseAuxPoW();
+            assertArrayEquals(Arrays.copyOf(payload, Block.HEADER_SIZE),
+                Arrays.copyOf(block.bitcoinSerialize(), Block.HEADER_SIZE));
+            assertEquals(payload.length - auxpowLength, block.bitcoinSerialize().length);
+        }
+    }
+
+    @Test(expected = ProtocolException.class)
+    public void shouldRejectTruncatedAuxPoW() throws IOException {
+        byte[] payload = Util.getBytes(getClass().getResourceAsStream("dogecoin_block371337.bin"));
+        final AuxPoW auxpow = new AuxPoW(params, payload, Block.HEADER_SIZE, null, params.getDefaultSerializer());
+        // Cut the payload off part way through the AuxPoW parent header
+        params.getDefaultSerializer().makeBlock(Arrays.copyOf(payload,
+            Block.HEADER_SIZE + auxpow.getMessageSize() - 1));
+    }
 }
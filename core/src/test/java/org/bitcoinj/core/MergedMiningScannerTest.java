@@ -0,0 +1,130 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bitcoinj.core;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MergedMiningScannerTest {
+    /**
+     * Compare against a naive scan, over scripts built from a few fragments
+     * of the header and root so that partial and overlapping matches are
+     * common.
+     */
+    @Test
+    public void shouldMatchNaiveScan() {
+        final Random random = new Random(19414);
+        final MergedMiningScanner scanner = new MergedMiningScanner();
+        for (int trial = 0; trial < 20000; trial++) {
+            final byte[] root = new byte[32];
+            switch (trial % 4) {
+                case 0:
+                    random.nextBytes(root);
+                    break;
+                case 1:
+                    // Highly self-overlapping root
+                    for (int byteIdx = 0; byteIdx < root.length; byteIdx++) {
+                        root[byteIdx] = (byte) (byteIdx % 3 == 2 ? 1 : 0);
+                    }
+                    break;
+                case 2:
+                    // Root starting with the merged mining header
+                    random.nextBytes(root);
+                    System.arraycopy(AuxPoW.MERGED_MINING_HEADER, 0, root, 0, 4);
+                    break;
+                default:
+                    // Root made of repeated merged mining headers
+                    for (int byteIdx = 0; byteIdx < root.length; byteIdx++) {
+                        root[byteIdx] = AuxPoW.MERGED_MINING_HEADER[byteIdx % 4];
+                    }
+                    break;
+            }
+            final byte[] script = new byte[random.nextInt(120)];
+            int scriptIdx = 0;
+            while (scriptIdx < script.length) {
+                final int choice = random.nextInt(4);
+                final byte[] source = choice == 0 ? AuxPoW.MERGED_MINING_HEADER : root;
+                final int start = choice < 2 ? 0 : random.nextInt(source.length);
+                final int length = Math.min(script.length - scriptIdx,
+                    choice == 3 ? 1 : source.length - start);
+                if (choice == 3) {
+                    script[scriptIdx] = (byte) random.nextInt(3);
+                } else {
+                    System.arraycopy(source, start, script, scriptIdx, length);
+                }
+                scriptIdx += length;
+            }
+
+            final int[] expected = naiveScan(script, root);
+            final byte[] buffer = new byte[script.length + 3];
+            System.arraycopy(script, 0, buffer, 3, script.length);
+            final boolean single = scanner.scan(buffer, 3, script.length, root);
+            assertEquals("Trial " + trial, expected == null, !single);
+            if (single) {
+                assertEquals("Trial " + trial, expected[0], scanner.getHeaderIndex());
+                assertEquals("Trial " + trial, expected[1], scanner.getRootIndex());
+            }
+        }
+    }
+
+    @Test
+    public void shouldRejectMultipleHeaders() {
+        final byte[] root = new byte[32];
+        final byte[] script = new byte[40];
+        System.arraycopy(AuxPoW.MERGED_MINING_HEADER, 0, script, 0, 4);
+        System.arraycopy(AuxPoW.MERGED_MINING_HEADER, 0, script, 36, 4);
+        assertFalse(new MergedMiningScanner().scan(script, 0, script.length, root));
+    }
+
+    @Test
+    public void shouldFindRootAfterHeader() {
+        final byte[] root = new byte[32];
+        new Random(1).nextBytes(root);
+        final byte[] script = new byte[45];
+        System.arraycopy(AuxPoW.MERGED_MINING_HEADER, 0, script, 5, 4);
+        System.arraycopy(root, 0, script, 9, 32);
+        final MergedMiningScanner scanner = new MergedMiningScanner();
+        assertTrue(scanner.scan(script, 0, script.length, root));
+        assertEquals(5, scanner.getHeaderIndex());
+        assertEquals(9, scanner.getRootIndex());
+    }
+
+    /**
+     * The scan formerly done by AuxPoW.checkProofOfWork().
+     *
+     * @return header and root offsets, or null if there are multiple headers.
+     */
+    private static int[] naiveScan(final byte[] script, final byte[] root) {
+        int pcHead = -1;
+        int pc = -1;
+        for (int scriptIdx = 0; scriptIdx < script.length; scriptIdx++) {
+            if (AuxPoW.arrayMatch(script, scriptIdx, AuxPoW.MERGED_MINING_HEADER)) {
+                if (pcHead >= 0) {
+                    return null;
+                }
+                pcHead = scriptIdx;
+            } else if (AuxPoW.arrayMatch(script, scriptIdx, root)) {
+                pc = scriptIdx;
+            }
+        }
+        return new int[] {pcHead, pc};
+    }
+}
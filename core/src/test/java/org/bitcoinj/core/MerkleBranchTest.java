@@ -4,6 +4,8 @@ package org.bitcoinj.core;
 import org.bitcoinj.params.TestNet3Params;
 import org.junit.Test;
 
+import java.util.ArrayList;
+
 import static org.bitcoinj.core.Util.getBytes;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
@@ -56,4 +58,22 @@ public class MerkleBranchTest {
 
         assertEquals(expected, branch.calculateMerkleRoot(txId));
     }
+
+    /**
+     * A branch built from a list of hashes must serialize, compare and
+     * calculate its root the same as one parsed from the wire.
+     */
+    @Test
+    public void shouldMatchParsedBranchWhenBuiltFromHashes() throws Exception {
+        byte[] branchAsBytes = getBytes(getClass().getResourceAsStream("auxpow_merkle_branch2.bin"));
+        MerkleBranch parsed = new MerkleBranch(params, (ChildMessage) null, branchAsBytes, 0);
+        MerkleBranch built = new MerkleBranch(params, null, new ArrayList<>(parsed.getHashes()),
+            parsed.getIndex());
+        Sha256Hash txId = Sha256Hash.wrap("0c836b86991631d34a8a68054e2f62db919b39d1ee43c27ab3344d6aa82fa609");
+
+        assertEquals(parsed, built);
+        assertEquals(parsed.hashCode(), built.hashCode());
+        assertArrayEquals(branchAsBytes, built.bitcoinSerialize());
+        assertEquals(parsed.calculateMerkleRoot(txId), built.calculateMerkleRoot(txId));
+    }
 }
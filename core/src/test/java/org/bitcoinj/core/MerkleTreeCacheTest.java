@@ -0,0 +1,124 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bitcoinj.core;
+
+import org.libdohj.core.AltcoinSerializer;
+import org.libdohj.params.DogecoinMainNetParams;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class MerkleTreeCacheTest {
+    private static final NetworkParameters params = DogecoinMainNetParams.get();
+
+    @Before
+    public void setUp() throws Exception {
+        Context context = new Context(params);
+    }
+
+    /**
+     * Block 250,000 has six transactions, so the second level has an odd
+     * hash out which is paired with itself.
+     */
+    @Test
+    public void shouldProveEveryTransaction() throws Exception {
+        final AltcoinBlock block = loadBlock("dogecoin_block250000.bin");
+        final MerkleTree tree = MerkleTree.build(block);
+        final List<Transaction> transactions = block.getTransactions();
+
+        assertEquals(block.getMerkleRoot(), tree.getRoot());
+        assertEquals(6, tree.getTransactionCount());
+        assertEquals(3, tree.getDepth());
+        final List<MerkleBranch> branches = tree.getBranches();
+        for (int txIdx = 0; txIdx < transactions.size(); txIdx++) {
+            final Sha256Hash txId = transactions.get(txIdx).getTxId();
+            final MerkleBranch branch = tree.getBranch(txId);
+            assertNotNull(branch);
+            assertEquals(txIdx, tree.indexOf(txId));
+            assertEquals(txId, tree.getTxId(txIdx));
+            assertEquals(txIdx, branch.getIndex());
+            assertEquals(block.getMerkleRoot(), branch.calculateMerkleRoot(txId));
+            assertEquals(branch, tree.getBranch(txIdx));
+            assertEquals(branch, branches.get(txIdx));
+        }
+        assertNull(tree.getBranch(block.getHash()));
+        assertEquals(-1, tree.indexOf(block.getMerkleRoot()));
+    }
+
+    @Test
+    public void shouldProveSingleTransaction() throws Exception {
+        final AltcoinBlock block = loadBlock("dogecoin_block1.bin");
+        final MerkleTree tree = MerkleTree.build(block);
+        final Sha256Hash txId = block.getTransactions().get(0).getTxId();
+
+        assertEquals(0, tree.getDepth());
+        assertEquals(block.getMerkleRoot(), tree.getBranch(0).calculateMerkleRoot(txId));
+    }
+
+    @Test
+    public void shouldRejectMismatchedMerkleRoot() throws Exception {
+        final AltcoinBlock block = loadBlock("dogecoin_block250000.bin");
+        block.setMerkleRoot(Sha256Hash.ZERO_HASH);
+        try {
+            MerkleTree.build(block);
+            fail("Expected tree with incorrect merkle root to be rejected");
+        } catch (VerificationException expected) {
+        }
+    }
+
+    /**
+     * With room for only two of three trees, using the first tree again
+     * before caching the third means the second is evicted, not the first.
+     */
+    @Test
+    public void shouldCacheAndEvictLeastRecentlyUsed() throws Exception {
+        final AltcoinBlock first = loadBlock("dogecoin_block250000.bin");
+        final AltcoinBlock second = loadBlock("dogecoin_block1.bin");
+        final AltcoinBlock third = loadBlock("dogecoin_block371337.bin");
+        final MerkleTreeCache cache = new MerkleTreeCache(MerkleTree.build(first).getSizeInBytes()
+            + Math.max(MerkleTree.build(second).getSizeInBytes(), MerkleTree.build(third).getSizeInBytes()));
+
+        final MerkleTree tree = cache.get(first);
+        assertSame(tree, cache.get(first));
+        assertEquals(1, cache.getHitCount());
+        assertNotNull(cache.getBranch(first, first.getTransactions().get(5).getTxId()));
+        assertEquals(6, cache.getBranches(first).size());
+        cache.get(second);
+        assertEquals(2, cache.size());
+
+        cache.get(first);
+        cache.get(third);
+        assertSame(tree, cache.getIfPresent(first.getHash()));
+        assertNull(cache.getIfPresent(second.getHash()));
+        assertNotNull(cache.getIfPresent(third.getHash()));
+
+        cache.invalidate(third.getHash());
+        assertNull(cache.getIfPresent(third.getHash()));
+    }
+
+    private AltcoinBlock loadBlock(final String resource) throws Exception {
+        final byte[] payload = Util.getBytes(getClass().getResourceAsStream(resource));
+        final AltcoinSerializer serializer = (AltcoinSerializer) params.getDefaultSerializer();
+        return (AltcoinBlock) serializer.makeBlock(payload);
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.libdohj.core;
+
+import org.bitcoinj.core.AltcoinBlock;
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.FilteredBlock;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.PartialMerkleTree;
+import org.bitcoinj.core.ProtocolException;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.Util;
+import org.junit.Before;
+import org.junit.Test;
+import org.libdohj.params.DogecoinMainNetParams;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class AltcoinSerializerTest {
+    private static final NetworkParameters params = DogecoinMainNetParams.get();
+
+    private AltcoinSerializer serializer;
+
+    @Before
+    public void setUp() throws Exception {
+        Context context = new Context(params);
+        serializer = (AltcoinSerializer) params.getDefaultSerializer();
+    }
+
+    private AltcoinBlock loadBlock(final String name) throws Exception {
+        return (AltcoinBlock) serializer.makeBlock(
+            Util.getBytes(getClass().getResourceAsStream("/org/bitcoinj/core/" + name)));
+    }
+
+    /**
+     * Build a merkleblock message payload for the given block, matching every
+     * other transaction.
+     */
+    private static byte[] buildMerkleBlock(final AltcoinBlock block, final List<Sha256Hash> matched) throws Exception {
+        final List<Sha256Hash> txHashes = new ArrayList<>();
+        final byte[] includeBits = new byte[(block.getTransactions().size() + 7) / 8];
+        for (int txIdx = 0; txIdx < block.getTransactions().size(); txIdx++) {
+            final Transaction tx = block.getTransactions().get(txIdx);
+            txHashes.add(tx.getTxId());
+            if (txIdx % 2 == 0) {
+                includeBits[txIdx / 8] |= 1 << (txIdx % 8);
+                matched.add(tx.getTxId());
+            }
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(block.bitcoinSerialize(), 0, Block.HEADER_SIZE);
+        if (block.hasAuxPoW()) {
+            out.write(block.getAuxPoWBytes());
+        }
+        PartialMerkleTree.buildFromLeaves(params, includeBits, txHashes).bitcoinSerialize(out);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void shouldMakeFilteredBlock() throws Exception {
+        for (String name : new String[] {"dogecoin_block250000.bin", "dogecoin_block371337.bin"}) {
+            final AltcoinBlock block = loadBlock(name);
+            final List<Sha256Hash> matched = new ArrayList<>();
+            final byte[] payload = buildMerkleBlock(block, matched);
+            final FilteredBlock filtered = serializer.makeFilteredBlock(payload);
+            final AltcoinBlock header = (AltcoinBlock) filtered.getBlockHeader();
+            assertEquals(block.getHash(), header.getHash());
+            assertArrayEquals(payload, filtered.bitcoinSerialize());
+            assertArrayEquals(block.getAuxPoWBytes(), header.getAuxPoWBytes());
+            assertEquals(matched, filtered.getTransactionHashes());
+            header.verifyProofOfWork();
+        }
+    }
+
+    @Test(expected = ProtocolException.class)
+    public void shouldRejectMismatchedMerkleRoot() throws Exception {
+        final byte[] payload = buildMerkleBlock(loadBlock("dogecoin_block371337.bin"), new ArrayList<Sha256Hash>());
+        // Corrupt the last hash in the partial merkle tree
+        payload[payload.length - 3] ^= 1;
+        serializer.makeFilteredBlock(payload);
+    }
+
+    @Test(expected = ProtocolException.class)
+    public void shouldRejectTruncatedMerkleBlock() throws Exception {
+        final byte[] payload = buildMerkleBlock(loadBlock("dogecoin_block371337.bin"), new ArrayList<Sha256Hash>());
+        serializer.makeFilteredBlock(Arrays.copyOf(payload, 200));
+    }
+}
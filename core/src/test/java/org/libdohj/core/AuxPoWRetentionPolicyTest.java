@@ -0,0 +1,136 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.libdohj.core;
+
+import org.bitcoinj.core.AltcoinBlock;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.StoredBlock;
+import org.bitcoinj.core.Util;
+import org.junit.Before;
+import org.junit.Test;
+import org.libdohj.params.DogecoinMainNetParams;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AuxPoWRetentionPolicyTest {
+    private static final NetworkParameters params = DogecoinMainNetParams.get();
+
+    private byte[] payload;
+
+    @Before
+    public void setUp() throws Exception {
+        Context context = new Context(params);
+        payload = Util.getBytes(getClass().getResourceAsStream("/org/bitcoinj/core/dogecoin_block371337.bin"));
+    }
+
+    private StoredBlock auxpowBlock(final int height) {
+        final AltcoinBlock header = (AltcoinBlock) params.getDefaultSerializer().makeBlock(payload);
+        return new StoredBlock(header, BigInteger.valueOf(height), height);
+    }
+
+    private static StoredBlock plainBlock(final int height) {
+        return new StoredBlock(params.getGenesisBlock().cloneAsHeader(), BigInteger.valueOf(height), height);
+    }
+
+    private static boolean hasAuxPoW(final StoredBlock block) {
+        return ((AltcoinBlock) block.getHeader()).hasAuxPoW();
+    }
+
+    @Test
+    public void shouldReleaseOnceDeepEnough() {
+        final AuxPoWRetentionPolicy policy = new AuxPoWRetentionPolicy(3);
+        final StoredBlock block = auxpowBlock(10);
+        final Sha256Hash hash = block.getHeader().getHash();
+        policy.notifyNewBestBlock(block);
+        policy.notifyNewBestBlock(plainBlock(11));
+        policy.notifyNewBestBlock(plainBlock(12));
+        assertTrue(hasAuxPoW(block));
+        assertEquals(1, policy.getRetainedCount());
+
+        policy.notifyNewBestBlock(plainBlock(13));
+        assertFalse(hasAuxPoW(block));
+        assertEquals(hash, block.getHeader().getHash());
+        assertEquals(0, policy.getRetainedCount());
+        assertEquals(1, policy.getReleasedCount());
+    }
+
+    @Test
+    public void shouldKeepHashOfClonedHeader() {
+        final StoredBlock block = auxpowBlock(10);
+        final AltcoinBlock clone = (AltcoinBlock) block.getHeader().cloneAsHeader();
+        final Sha256Hash hash = clone.getHash();
+        clone.releaseAuxPoW();
+        assertFalse(clone.hasAuxPoW());
+        assertEquals(hash, clone.getHash());
+    }
+
+    @Test
+    public void shouldRetainBlocksFromReorganisation() {
+        final AuxPoWRetentionPolicy policy = new AuxPoWRetentionPolicy(2);
+        final StoredBlock first = auxpowBlock(10);
+        final StoredBlock second = auxpowBlock(11);
+        policy.reorganize(plainBlock(9), Collections.<StoredBlock>emptyList(), Arrays.asList(second, first));
+        assertEquals(2, policy.getRetainedCount());
+
+        policy.notifyNewBestBlock(plainBlock(12));
+        assertFalse(hasAuxPoW(first));
+        assertTrue(hasAuxPoW(second));
+        policy.notifyNewBestBlock(plainBlock(13));
+        assertFalse(hasAuxPoW(second));
+    }
+
+    @Test
+    public void shouldDropOldBlocksOnReorganisation() {
+        final AuxPoWRetentionPolicy policy = new AuxPoWRetentionPolicy(3);
+        final StoredBlock below = auxpowBlock(9);
+        final StoredBlock old = auxpowBlock(10);
+        final StoredBlock oldHead = auxpowBlock(11);
+        policy.notifyNewBestBlock(below);
+        policy.notifyNewBestBlock(old);
+        policy.notifyNewBestBlock(oldHead);
+        assertEquals(3, policy.getRetainedCount());
+
+        final StoredBlock first = auxpowBlock(10);
+        final StoredBlock second = auxpowBlock(11);
+        final StoredBlock third = auxpowBlock(12);
+        policy.reorganize(below, Arrays.asList(oldHead, old), Arrays.asList(third, second, first));
+        assertEquals(3, policy.getRetainedCount());
+        // The new head is reported again, which must not retain it twice
+        policy.notifyNewBestBlock(third);
+        assertEquals(3, policy.getRetainedCount());
+
+        policy.notifyNewBestBlock(auxpowBlock(13));
+        assertFalse(hasAuxPoW(below));
+        assertFalse(hasAuxPoW(first));
+        assertTrue(hasAuxPoW(second));
+        assertTrue(hasAuxPoW(old));
+        assertTrue(hasAuxPoW(oldHead));
+    }
+
+    @Test
+    public void shouldUseNetworkDepth() {
+        assertEquals(AuxPoWRetentionPolicy.DEFAULT_DEPTH,
+            new AuxPoWRetentionPolicy(DogecoinMainNetParams.get()).getDepth());
+    }
+}
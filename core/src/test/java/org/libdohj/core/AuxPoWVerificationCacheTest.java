@@ -0,0 +1,118 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.libdohj.core;
+
+import org.bitcoinj.core.AltcoinBlock;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Util;
+import org.bitcoinj.core.VerificationException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.libdohj.params.DogecoinMainNetParams;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AuxPoWVerificationCacheTest {
+    private static final DogecoinMainNetParams params = DogecoinMainNetParams.get();
+
+    private AuxPoWVerificationCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        Context context = new Context(params);
+        cache = new AuxPoWVerificationCache(2);
+        AltcoinBlock.setAuxPoWVerificationCache(cache);
+    }
+
+    @After
+    public void tearDown() {
+        AltcoinBlock.setAuxPoWVerificationCache(null);
+    }
+
+    private byte[] loadPayload(final String name) throws IOException {
+        return Util.getBytes(getClass().getResourceAsStream("/org/bitcoinj/core/" + name));
+    }
+
+    private AltcoinBlock makeBlock(final byte[] payload) {
+        return (AltcoinBlock) params.getDefaultSerializer().makeBlock(payload);
+    }
+
+    @Test
+    public void shouldRememberVerifiedAuxPoW() throws Exception {
+        final byte[] payload = loadPayload("dogecoin_block371337.bin");
+        makeBlock(payload).verifyProofOfWork();
+        assertEquals(0, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.size());
+
+        // A fresh copy of the block, and one whose AuxPoW header has been built
+        makeBlock(payload).verifyProofOfWork();
+        final AltcoinBlock parsed = makeBlock(payload);
+        parsed.getAuxPoW();
+        parsed.verifyProofOfWork();
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void shouldNotRememberFailedAuxPoW() throws Exception {
+        final byte[] payload = loadPayload("dogecoin_block371337.bin");
+        // Corrupt the parent coinbase transaction version, which is part of
+        // the AuxPoW header but not the block hash
+        payload[80] ^= 0x01;
+        for (int attempt = 0; attempt < 2; attempt++) {
+            try {
+                makeBlock(payload).verifyProofOfWork();
+                fail("Expected AuxPoW to be rejected");
+            } catch (VerificationException e) {
+                assertEquals("Aux POW merkle root incorrect", e.getMessage());
+            }
+        }
+        assertEquals(0, cache.getHitCount());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void shouldBoundSize() throws Exception {
+        for (String name : new String[] {"dogecoin_block371337.bin", "dogecoin_block748634.bin",
+            "dogecoin_block894863.bin"}) {
+            makeBlock(loadPayload(name)).verifyProofOfWork();
+        }
+        assertEquals(2, cache.getMaximumSize());
+        assertTrue(cache.size() <= 2);
+    }
+
+    @Test
+    public void shouldKeyOnChainAndChildBlock() {
+        final byte[] auxpow = new byte[100];
+        final Sha256Hash child = Sha256Hash.of(new byte[] {1});
+        final Sha256Hash key = AuxPoWVerificationCache.getKey(auxpow, 0, auxpow.length, child, 98);
+        assertEquals(key, AuxPoWVerificationCache.getKey(auxpow, 0, auxpow.length, child, 98));
+        assertNotEquals(key, AuxPoWVerificationCache.getKey(auxpow, 0, auxpow.length, child, 1));
+        assertNotEquals(key, AuxPoWVerificationCache.getKey(auxpow, 0, auxpow.length,
+            Sha256Hash.of(new byte[] {2}), 98));
+        assertNotEquals(key, AuxPoWVerificationCache.getKey(auxpow, 1, auxpow.length - 1, child, 98));
+        assertFalse(cache.contains(key));
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.libdohj.core;
+
+import org.bitcoinj.core.AltcoinBlock;
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.HeadersMessage;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.ProtocolException;
+import org.bitcoinj.core.Util;
+import org.bitcoinj.core.VarInt;
+import org.junit.Before;
+import org.junit.Test;
+import org.libdohj.params.DogecoinMainNetParams;
+import org.libdohj.params.DogecoinTestNet3Params;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class HeadersMessageReaderTest {
+    private static final NetworkParameters params = DogecoinMainNetParams.get();
+
+    private AltcoinSerializer serializer;
+    private AltcoinBlock plainBlock;
+    private AltcoinBlock auxpowBlock;
+    private byte[] message;
+
+    @Before
+    public void setUp() throws Exception {
+        Context context = new Context(params);
+        serializer = (AltcoinSerializer) params.getDefaultSerializer();
+        plainBlock = (AltcoinBlock) serializer.makeBlock(
+            Util.getBytes(getClass().getResourceAsStream("/org/bitcoinj/core/dogecoin_block250000.bin")));
+        auxpowBlock = (AltcoinBlock) serializer.makeBlock(
+            Util.getBytes(getClass().getResourceAsStream("/org/bitcoinj/core/dogecoin_block371337.bin")));
+        message = buildMessage(plainBlock, auxpowBlock, auxpowBlock, plainBlock);
+    }
+
+    /**
+     * Build a headers message payload for the given blocks.
+     */
+    private static byte[] buildMessage(final AltcoinBlock... blocks) throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(new VarInt(blocks.length).encode());
+        for (AltcoinBlock block : blocks) {
+            out.write(block.bitcoinSerialize(), 0, Block.HEADER_SIZE);
+            if (block.hasAuxPoW()) {
+                out.write(block.getAuxPoWBytes());
+            }
+            out.write(0);
+        }
+        return out.toByteArray();
+    }
+
+    private static List<AltcoinBlock> readAll(final HeadersMessageReader reader) {
+        final List<AltcoinBlock> headers = new ArrayList<>();
+        while (reader.hasNext()) {
+            headers.add(reader.next());
+        }
+        return headers;
+    }
+
+    private void assertMatchesHeadersMessage(final List<AltcoinBlock> headers) {
+        final List<Block> expected = new HeadersMessage(params, message).getBlockHeaders();
+        assertEquals(expected.size(), headers.size());
+        for (int headerIdx = 0; headerIdx < headers.size(); headerIdx++) {
+            final AltcoinBlock expectedHeader = (AltcoinBlock) expected.get(headerIdx);
+            final AltcoinBlock header = headers.get(headerIdx);
+            assertEquals(expectedHeader.getHash(), header.getHash());
+            assertArrayEquals(expectedHeader.getAuxPoWBytes(), header.getAuxPoWBytes());
+            header.verifyProofOfWork();
+        }
+    }
+
+    @Test
+    public void shouldReadFromStream() {
+        final HeadersMessageReader reader = serializer.makeHeadersReader(new ByteArrayInputStream(message));
+        assertEquals(4, reader.getCount());
+        final List<AltcoinBlock> headers = readAll(reader);
+        assertEquals(0, reader.getRemaining());
+        assertMatchesHeadersMessage(headers);
+        assertNull(headers.get(0).getAuxPoWBytes());
+        assertEquals(auxpowBlock.getHash(), headers.get(1).getHash());
+    }
+
+    @Test
+    public void shouldReadFromBuffer() {
+        final ByteBuffer buffer = ByteBuffer.allocate(message.length + 3);
+        buffer.put(message).put(new byte[] {1, 2, 3});
+        buffer.flip();
+        final List<AltcoinBlock> headers = readAll(serializer.makeHeadersReader(buffer));
+        assertEquals(message.length, buffer.position());
+        assertMatchesHeadersMessage(headers);
+    }
+
+    @Test
+    public void shouldUseCallersSerializer() {
+        final AltcoinSerializer testNetSerializer = new AltcoinSerializer(DogecoinTestNet3Params.get(), false);
+        for (AltcoinBlock header : readAll(testNetSerializer.makeHeadersReader(ByteBuffer.wrap(message)))) {
+            assertSame(DogecoinTestNet3Params.get(), header.getParams());
+        }
+    }
+
+    @Test
+    public void shouldReadEmptyMessage() {
+        assertFalse(serializer.makeHeadersReader(ByteBuffer.wrap(new byte[] {0})).hasNext());
+    }
+
+    @Test
+    public void shouldRejectTruncatedMessage() {
+        for (int length = 1; length < message.length; length += 7) {
+            final HeadersMessageReader reader = serializer.makeHeadersReader(
+                new ByteArrayInputStream(Arrays.copyOf(message, length)));
+            try {
+                readAll(reader);
+                fail("Expected truncated message of " + length + " bytes to be rejected");
+            } catch (ProtocolException expected) {
+                // Expected
+            }
+        }
+    }
+
+    @Test(expected = ProtocolException.class)
+    public void shouldRejectHeaderWithTransactions() throws Exception {
+        final byte[] bad = buildMessage(plainBlock);
+        bad[bad.length - 1] = 1;
+        readAll(serializer.makeHeadersReader(ByteBuffer.wrap(bad)));
+    }
+
+    @Test(expected = ProtocolException.class)
+    public void shouldRejectTooManyHeaders() {
+        serializer.makeHeadersReader(ByteBuffer.wrap(new VarInt(HeadersMessage.MAX_HEADERS + 1).encode()));
+    }
+}
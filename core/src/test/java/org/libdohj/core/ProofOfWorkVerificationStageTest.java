@@ -0,0 +1,246 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.libdohj.core;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.bitcoinj.core.AltcoinBlock;
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.Util;
+import org.bitcoinj.core.VerificationException;
+import org.junit.Before;
+import org.junit.Test;
+import org.libdohj.params.DogecoinMainNetParams;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ProofOfWorkVerificationStageTest {
+    private static final DogecoinMainNetParams params = DogecoinMainNetParams.get();
+
+    @Before
+    public void setUp() throws Exception {
+        Context context = new Context(params);
+    }
+
+    private AltcoinBlock loadBlock(final String name) throws IOException {
+        final byte[] payload = Util.getBytes(getClass().getResourceAsStream("/org/bitcoinj/core/" + name));
+        return (AltcoinBlock) params.getDefaultSerializer().makeBlock(payload);
+    }
+
+    @Test
+    public void shouldDeliverResultsInSubmissionOrder() throws Exception {
+        final List<AltcoinBlock> headers = new ArrayList<>();
+        for (String name : new String[] {"dogecoin_block1.bin", "dogecoin_block250000.bin",
+            "dogecoin_block371337.bin", "dogecoin_block748634.bin", "dogecoin_block894863.bin"}) {
+            headers.add(loadBlock(name));
+        }
+        final List<AltcoinBlock> delivered = Collections.synchronizedList(new ArrayList<AltcoinBlock>());
+        final List<ListenableFuture<ProofOfWorkVerifier.Result>> futures = new ArrayList<>();
+        final CountDownLatch allDelivered = new CountDownLatch(headers.size());
+        try (ProofOfWorkVerificationStage stage = new ProofOfWorkVerificationStage(3, 2)) {
+            for (AltcoinBlock header : headers) {
+                final ListenableFuture<ProofOfWorkVerifier.Result> future = stage.submit(header);
+                future.addListener(new Runnable() {
+                    @Override
+                    public void run() {
+                        delivered.add(header);
+                        allDelivered.countDown();
+                    }
+                }, MoreExecutors.directExecutor());
+                futures.add(future);
+            }
+            for (int headerIdx = 0; headerIdx < headers.size(); headerIdx++) {
+                final ProofOfWorkVerifier.Result result = futures.get(headerIdx).get(30, TimeUnit.SECONDS);
+                assertSame(headers.get(headerIdx), result.getHeader());
+                assertEquals(ProofOfWorkVerifier.Status.VALID, result.getStatus());
+            }
+            // Listeners run on the verification threads, after get() may return
+            assertTrue(allDelivered.await(30, TimeUnit.SECONDS));
+            assertEquals(headers, delivered);
+            assertEquals(headers.size(), stage.getSubmittedCount());
+            assertEquals(0, stage.getUndeliveredCount());
+        }
+    }
+
+    @Test
+    public void shouldSubmitHeadersAsRead() throws Exception {
+        final ByteArrayOutputStream message = new ByteArrayOutputStream();
+        final String[] names = {"dogecoin_block250000.bin", "dogecoin_block371337.bin"};
+        message.write(names.length);
+        for (String name : names) {
+            final AltcoinBlock block = loadBlock(name);
+            message.write(block.bitcoinSerialize(), 0, Block.HEADER_SIZE);
+            if (block.hasAuxPoW()) {
+                message.write(block.getAuxPoWBytes());
+            }
+            message.write(0);
+        }
+        final HeadersMessageReader reader = ((AltcoinSerializer) params.getDefaultSerializer())
+            .makeHeadersReader(ByteBuffer.wrap(message.toByteArray()));
+        try (ProofOfWorkVerificationStage stage = new ProofOfWorkVerificationStage(1, 1)) {
+            final List<ListenableFuture<ProofOfWorkVerifier.Result>> futures = stage.submitAll(reader);
+            assertEquals(names.length, futures.size());
+            for (int headerIdx = 0; headerIdx < names.length; headerIdx++) {
+                final ProofOfWorkVerifier.Result result = futures.get(headerIdx).get(30, TimeUnit.SECONDS);
+                assertEquals(loadBlock(names[headerIdx]).getHash(), result.getHeader().getHash());
+                assertEquals(ProofOfWorkVerifier.Status.VALID, result.getStatus());
+            }
+        }
+    }
+
+    /**
+     * A header which finishes early must not be delivered ahead of one
+     * submitted before it.
+     */
+    @Test
+    public void shouldHoldBackResultsBehindSlowHeaders() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AltcoinBlock slow = new BlockingHeader(release);
+        final AltcoinBlock fast = new FailingHeader();
+        try (ProofOfWorkVerificationStage stage = new ProofOfWorkVerificationStage(2, 1)) {
+            final ListenableFuture<ProofOfWorkVerifier.Result> slowFuture = stage.submit(slow);
+            final ListenableFuture<ProofOfWorkVerifier.Result> fastFuture = stage.submit(fast);
+            Thread.sleep(100);
+            assertFalse(fastFuture.isDone());
+            release.countDown();
+            assertEquals(ProofOfWorkVerifier.Status.VALID, slowFuture.get(30, TimeUnit.SECONDS).getStatus());
+            final ProofOfWorkVerifier.Result fastResult = fastFuture.get(30, TimeUnit.SECONDS);
+            assertEquals(ProofOfWorkVerifier.Status.INVALID, fastResult.getStatus());
+            assertNotNull(fastResult.getCause());
+        }
+    }
+
+    /**
+     * Headers held back behind a slow one keep their space in the stage until
+     * delivered, so the number of undelivered headers stays bounded.
+     */
+    @Test
+    public void shouldHoldCapacityUntilDelivered() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        try (ProofOfWorkVerificationStage stage = new ProofOfWorkVerificationStage(2, 1)) {
+            final ListenableFuture<ProofOfWorkVerifier.Result> slowFuture = stage.submit(new BlockingHeader(release));
+            final List<ListenableFuture<ProofOfWorkVerifier.Result>> fastFutures = new ArrayList<>();
+            for (int headerIdx = 0; headerIdx < 2; headerIdx++) {
+                final ListenableFuture<ProofOfWorkVerifier.Result> future = stage.trySubmit(new FailingHeader());
+                assertNotNull(future);
+                fastFutures.add(future);
+            }
+            // The fast headers finish, but cannot be delivered before the slow one
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            while (stage.getQueueDepth() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            Thread.sleep(100);
+            assertTrue(stage.isSaturated());
+            assertNull(stage.trySubmit(new FailingHeader()));
+            assertEquals(3, stage.getUndeliveredCount());
+
+            release.countDown();
+            assertEquals(ProofOfWorkVerifier.Status.VALID, slowFuture.get(30, TimeUnit.SECONDS).getStatus());
+            for (ListenableFuture<ProofOfWorkVerifier.Result> future : fastFutures) {
+                assertEquals(ProofOfWorkVerifier.Status.INVALID, future.get(30, TimeUnit.SECONDS).getStatus());
+            }
+            assertFalse(stage.isSaturated());
+        }
+    }
+
+    @Test
+    public void shouldRefuseHeadersWhenSaturated() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        try (ProofOfWorkVerificationStage stage = new ProofOfWorkVerificationStage(1, 2)) {
+            final List<ListenableFuture<ProofOfWorkVerifier.Result>> futures = new ArrayList<>();
+            for (int headerIdx = 0; headerIdx < 3; headerIdx++) {
+                final ListenableFuture<ProofOfWorkVerifier.Result> future = stage.trySubmit(new BlockingHeader(release));
+                assertNotNull(future);
+                futures.add(future);
+            }
+            assertTrue(stage.isSaturated());
+            assertNull(stage.trySubmit(new BlockingHeader(release)));
+            assertEquals(1, stage.getRejectedCount());
+            assertEquals(2, stage.getQueueCapacity());
+
+            release.countDown();
+            for (ListenableFuture<ProofOfWorkVerifier.Result> future : futures) {
+                assertEquals(ProofOfWorkVerifier.Status.VALID, future.get(30, TimeUnit.SECONDS).getStatus());
+            }
+            assertFalse(stage.isSaturated());
+            assertEquals(0, stage.getQueueDepth());
+            assertTrue(stage.getMaxWaitNanos() >= stage.getMeanWaitNanos());
+        }
+    }
+
+    /**
+     * Capacity is released on delivery, while the worker is still finishing
+     * its task, so a waiting submit() must not find the executor full.
+     */
+    @Test
+    public void shouldNotRejectHeadersWhenSaturatedThroughSubmit() throws Exception {
+        final AltcoinBlock genesis = (AltcoinBlock) params.getGenesisBlock();
+        final List<ListenableFuture<ProofOfWorkVerifier.Result>> futures = new ArrayList<>();
+        try (ProofOfWorkVerificationStage stage = new ProofOfWorkVerificationStage(1, 1)) {
+            for (int headerIdx = 0; headerIdx < 20000; headerIdx++) {
+                futures.add(stage.submit(genesis));
+            }
+            for (ListenableFuture<ProofOfWorkVerifier.Result> future : futures) {
+                assertEquals(ProofOfWorkVerifier.Status.VALID, future.get(30, TimeUnit.SECONDS).getStatus());
+            }
+        }
+    }
+
+    private static class BlockingHeader extends AltcoinBlock {
+        private final CountDownLatch release;
+
+        private BlockingHeader(final CountDownLatch release) {
+            super(DogecoinMainNetParams.get(), 1);
+            this.release = release;
+        }
+
+        @Override
+        public void verifyProofOfWork() throws VerificationException {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new VerificationException(e);
+            }
+        }
+    }
+
+    private static class FailingHeader extends AltcoinBlock {
+        private FailingHeader() {
+            super(DogecoinMainNetParams.get(), 1);
+        }
+
+        @Override
+        public void verifyProofOfWork() throws VerificationException {
+            throw new VerificationException("Hash is higher than target");
+        }
+    }
+}
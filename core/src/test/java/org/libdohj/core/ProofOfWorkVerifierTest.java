@@ -0,0 +1,162 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.libdohj.core;
+
+import org.bitcoinj.core.AltcoinBlock;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Util;
+import org.junit.Before;
+import org.junit.Test;
+import org.libdohj.crypto.JavaScryptProvider;
+import org.libdohj.crypto.ScryptProvider;
+import org.libdohj.crypto.ScryptProviders;
+import org.libdohj.params.DogecoinMainNetParams;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ProofOfWorkVerifierTest {
+    private static final DogecoinMainNetParams params = DogecoinMainNetParams.get();
+
+    @Before
+    public void setUp() throws Exception {
+        Context context = new Context(params);
+    }
+
+    private AltcoinBlock loadBlock(final String name) throws IOException {
+        final byte[] payload = Util.getBytes(getClass().getResourceAsStream("/org/bitcoinj/core/" + name));
+        return (AltcoinBlock) params.getDefaultSerializer().makeBlock(payload);
+    }
+
+    /**
+     * Build a batch from real Dogecoin blocks, including merge-mined blocks.
+     */
+    private List<AltcoinBlock> loadHeaders() throws IOException {
+        final List<AltcoinBlock> headers = new ArrayList<>();
+        for (String name : new String[] {"dogecoin_block1.bin", "dogecoin_block250000.bin",
+            "dogecoin_block371337.bin", "dogecoin_block748634.bin", "dogecoin_block894863.bin"}) {
+            headers.add(loadBlock(name));
+        }
+        return headers;
+    }
+
+    @Test
+    public void shouldAcceptValidHeaders() throws Exception {
+        final List<AltcoinBlock> headers = loadHeaders();
+        final List<ProofOfWorkVerifier.Result> results = params.verifyHeadersProofOfWork(headers,
+            ForkJoinPool.commonPool());
+        assertEquals(headers.size(), results.size());
+        for (int headerIdx = 0; headerIdx < headers.size(); headerIdx++) {
+            assertSame(headers.get(headerIdx), results.get(headerIdx).getHeader());
+            assertEquals(ProofOfWorkVerifier.Status.VALID, results.get(headerIdx).getStatus());
+        }
+        assertEquals(-1, ProofOfWorkVerifier.indexOfFirstFailure(results));
+    }
+
+    @Test
+    public void shouldStopAtFirstFailure() throws Exception {
+        final List<AltcoinBlock> headers = loadHeaders();
+        final AltcoinBlock invalid = (AltcoinBlock) headers.get(0).cloneAsHeader();
+        invalid.setNonce(invalid.getNonce() + 1);
+        headers.add(2, invalid);
+
+        final ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            final List<ProofOfWorkVerifier.Result> results = params.verifyHeadersProofOfWork(headers, pool);
+            assertEquals(headers.size(), results.size());
+            assertEquals(2, ProofOfWorkVerifier.indexOfFirstFailure(results));
+            assertEquals(ProofOfWorkVerifier.Status.VALID, results.get(1).getStatus());
+            assertEquals(ProofOfWorkVerifier.Status.INVALID, results.get(2).getStatus());
+            assertNotNull(results.get(2).getCause());
+            for (int headerIdx = 3; headerIdx < headers.size(); headerIdx++) {
+                assertEquals(ProofOfWorkVerifier.Status.SKIPPED, results.get(headerIdx).getStatus());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Hashes calculated in bulk must match those calculated one at a time,
+     * including for the parent headers of merge-mined blocks.
+     */
+    @Test
+    public void shouldPrecomputeScryptHashes() throws Exception {
+        final AtomicInteger batchedInputs = new AtomicInteger();
+        final ScryptProvider previous = ScryptProviders.getDefault();
+        ScryptProviders.setDefault(new JavaScryptProvider() {
+            @Override
+            public byte[][] scryptDigest(final byte[][] inputs) throws GeneralSecurityException {
+                batchedInputs.addAndGet(inputs.length);
+                return super.scryptDigest(inputs);
+            }
+        });
+        try {
+            final List<AltcoinBlock> batch = loadHeaders();
+            AltcoinBlock.precomputeScryptHashes(batch);
+            assertEquals(batch.size(), batchedInputs.get());
+            ScryptProviders.setDefault(previous);
+
+            final List<AltcoinBlock> expected = loadHeaders();
+            for (int headerIdx = 0; headerIdx < batch.size(); headerIdx++) {
+                assertEquals(proofOfWorkHeader(expected.get(headerIdx)).getScryptHash(),
+                    proofOfWorkHeader(batch.get(headerIdx)).getScryptHash());
+            }
+            assertEquals(-1, ProofOfWorkVerifier.indexOfFirstFailure(ProofOfWorkVerifier.verify(batch)));
+        } finally {
+            ScryptProviders.setDefault(previous);
+        }
+    }
+
+    private static AltcoinBlock proofOfWorkHeader(final AltcoinBlock block) {
+        return block.getAuxPoW() == null ? block : block.getAuxPoW().getParentBlockHeader();
+    }
+
+    /**
+     * Verifying from a task already running on the pool must not wait for a
+     * free worker, as there may never be one.
+     */
+    @Test
+    public void shouldWorkFromWithinPool() throws Exception {
+        final List<AltcoinBlock> headers = loadHeaders();
+        final ForkJoinPool pool = new ForkJoinPool(1);
+        try {
+            final List<ProofOfWorkVerifier.Result> results = pool.submit(
+                new Callable<List<ProofOfWorkVerifier.Result>>() {
+                    @Override
+                    public List<ProofOfWorkVerifier.Result> call() {
+                        return ProofOfWorkVerifier.verify(headers, pool);
+                    }
+                }).get(60, TimeUnit.SECONDS);
+            assertEquals(-1, ProofOfWorkVerifier.indexOfFirstFailure(results));
+        } finally {
+            pool.shutdown();
+        }
+        assertTrue(ProofOfWorkVerifier.verify(new ArrayList<AltcoinBlock>()).isEmpty());
+    }
+}
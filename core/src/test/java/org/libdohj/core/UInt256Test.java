@@ -0,0 +1,101 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.libdohj.core;
+
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Utils;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class UInt256Test {
+    private static final BigInteger MAX_VALUE = BigInteger.ONE.shiftLeft(256).subtract(BigInteger.ONE);
+
+    @Test
+    public void shouldDecodeKnownCompactBits() {
+        assertEquals(new BigInteger("00000fffff000000000000000000000000000000000000000000000000000000", 16),
+            UInt256.decodeCompactBits(0x1e0fffffL).toBigInteger());
+        assertEquals(BigInteger.valueOf(0x12), UInt256.decodeCompactBits(0x01123456L).toBigInteger());
+        assertEquals(BigInteger.valueOf(0x1234), UInt256.decodeCompactBits(0x02123456L).toBigInteger());
+        assertEquals(BigInteger.ZERO, UInt256.decodeCompactBits(0x00123456L).toBigInteger());
+        assertNull(UInt256.decodeCompactBits(0x04923456L));
+        assertNull(UInt256.decodeCompactBits(0x01fedcbaL));
+        assertNull(UInt256.decodeCompactBits(0x22123456L));
+        assertEquals(UInt256.ZERO, UInt256.decodeCompactBits(0x22000000L));
+    }
+
+    /**
+     * Every exponent, with random mantissas, must agree with bitcoinj wherever
+     * the result is a non-negative 256 bit number.
+     */
+    @Test
+    public void shouldMatchBitcoinjDecoding() {
+        final Random random = new Random(256);
+        for (int size = 0; size < 0x100; size++) {
+            for (int iteration = 0; iteration < 20; iteration++) {
+                final long compact = ((long) size << 24) | random.nextInt(0x1000000);
+                final BigInteger expected = Utils.decodeCompactBits(compact);
+                final UInt256 actual = UInt256.decodeCompactBits(compact);
+                if (expected.signum() < 0 || expected.compareTo(MAX_VALUE) > 0) {
+                    assertNull(Long.toHexString(compact), actual);
+                } else {
+                    assertEquals(Long.toHexString(compact), expected, actual.toBigInteger());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void shouldCompareAgainstHashes() {
+        final Random random = new Random(32);
+        final byte[] bytes = new byte[UInt256.LENGTH];
+        for (int iteration = 0; iteration < 1000; iteration++) {
+            random.nextBytes(bytes);
+            // Share a prefix with the hash most of the time, to exercise the lower words
+            final byte[] targetBytes = bytes.clone();
+            for (int byteIdx = random.nextInt(UInt256.LENGTH + 1); byteIdx < UInt256.LENGTH; byteIdx++) {
+                targetBytes[byteIdx] = (byte) random.nextInt();
+            }
+            final Sha256Hash hash = Sha256Hash.wrap(bytes.clone());
+            final UInt256 target = UInt256.fromBytes(targetBytes);
+            final int expected = Integer.signum(new BigInteger(1, targetBytes).compareTo(hash.toBigInteger()));
+            assertEquals(expected, Integer.signum(target.compareTo(hash)));
+            assertEquals(expected, Integer.signum(target.compareTo(UInt256.fromBytes(bytes))));
+        }
+    }
+
+    @Test
+    public void shouldRoundTrip() {
+        final BigInteger value = new BigInteger("80000000000000017fffffffffffffff0123456789abcdeffedcba9876543210", 16);
+        final UInt256 converted = UInt256.valueOf(value);
+        assertEquals(value, converted.toBigInteger());
+        assertEquals(value.toString(16), converted.toString());
+        assertEquals(converted, UInt256.fromBytes(converted.toBytes()));
+        assertEquals(converted.hashCode(), UInt256.fromBytes(converted.toBytes()).hashCode());
+        assertEquals(MAX_VALUE, UInt256.valueOf(MAX_VALUE).toBigInteger());
+        assertTrue(UInt256.ZERO.isZero());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectOversizedValue() {
+        UInt256.valueOf(MAX_VALUE.add(BigInteger.ONE));
+    }
+}
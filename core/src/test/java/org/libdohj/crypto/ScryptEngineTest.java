@@ -0,0 +1,69 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.libdohj.crypto;
+
+import com.lambdaworks.crypto.SCrypt;
+import org.bitcoinj.core.Utils;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class ScryptEngineTest {
+    @Test
+    public void shouldMatchKnownVector() {
+        final byte[] input = new byte[80];
+        for (int i = 0; i < input.length; i++) {
+            input[i] = (byte) i;
+        }
+        assertEquals("bc540a1a801df96e493005c71e010e2d387607fbf0fec416fd3c2645aa1ba9d2",
+            Utils.HEX.encode(ScryptEngine.get().hash(input)));
+    }
+
+    /**
+     * Compare against the lambdaworks reference implementation, including keys
+     * shorter than, equal to and longer than a SHA-256 block.
+     */
+    @Test
+    public void shouldMatchLambdaworks() throws Exception {
+        final Random random = new Random(1024);
+        for (int length : new int[] {1, 32, 64, 65, 80, 200}) {
+            final byte[] input = new byte[length];
+            random.nextBytes(input);
+            assertArrayEquals("Length " + length, SCrypt.scryptJ(input, input, 1024, 1, 1, 32),
+                ScryptEngine.get().hash(input));
+        }
+    }
+
+    /**
+     * Scratch memory is reused between calls, so make sure nothing leaks from
+     * one hash into the next, and that offset and output variants agree.
+     */
+    @Test
+    public void shouldBeRepeatable() {
+        final byte[] buffer = new byte[100];
+        new Random(80).nextBytes(buffer);
+        final byte[] expected = ScryptEngine.get().hash(buffer, 10, 80);
+        ScryptEngine.get().hash(buffer);
+        final byte[] actual = new byte[ScryptEngine.HASH_LENGTH + 4];
+        ScryptEngine.get().hash(buffer, 10, 80, actual, 4);
+        final byte[] actualHash = new byte[ScryptEngine.HASH_LENGTH];
+        System.arraycopy(actual, 4, actualHash, 0, ScryptEngine.HASH_LENGTH);
+        assertArrayEquals(expected, actualHash);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.libdohj.crypto;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class ScryptProvidersTest {
+    private static final ScryptProvider BROKEN_PROVIDER = new ScryptProvider() {
+        @Override
+        public String getName() {
+            return "broken";
+        }
+
+        @Override
+        public byte[] scryptDigest(byte[] input) {
+            return new byte[ScryptEngine.HASH_LENGTH];
+        }
+    };
+
+    @Test
+    public void pureJavaProvidersShouldPassSelfTest() {
+        assertTrue(ScryptProviders.selfTest(new JavaScryptProvider()));
+        assertTrue(ScryptProviders.selfTest(new BouncyCastleScryptProvider()));
+        assertTrue(ScryptProviders.selfTest(new LambdaworksScryptProvider(false)));
+    }
+
+    /**
+     * Only offered on Java 17+ with the vector API enabled, see the
+     * testJava17 Gradle task.
+     */
+    @Test
+    public void vectorProviderShouldPassSelfTestIfAvailable() throws Exception {
+        final ScryptProvider provider = VectorScrypt.createProvider();
+        if (provider != null) {
+            assertTrue(ScryptProviders.selfTest(provider));
+            final byte[][] inputs = new byte[19][80];
+            for (int inputIdx = 0; inputIdx < inputs.length; inputIdx++) {
+                inputs[inputIdx][inputIdx] = (byte) inputIdx;
+            }
+            final byte[][] outputs = provider.scryptDigest(inputs);
+            for (int inputIdx = 0; inputIdx < inputs.length; inputIdx++) {
+                assertArrayEquals(ScryptEngine.get().hash(inputs[inputIdx]), outputs[inputIdx]);
+            }
+        }
+    }
+
+    @Test
+    public void shouldRejectIncorrectProvider() {
+        assertFalse(ScryptProviders.selfTest(BROKEN_PROVIDER));
+        final ScryptProvider selected = ScryptProviders.select(
+            Arrays.asList(BROKEN_PROVIDER, new JavaScryptProvider()), null);
+        assertEquals(JavaScryptProvider.NAME, selected.getName());
+    }
+
+    @Test
+    public void shouldHonourPreferredProvider() {
+        final ScryptProvider selected = ScryptProviders.select(ScryptProviders.getBuiltInProviders(),
+            BouncyCastleScryptProvider.NAME);
+        assertEquals(BouncyCastleScryptProvider.NAME, selected.getName());
+    }
+
+    @Test
+    public void shouldSelectWorkingProvider() {
+        final ScryptProvider selected = ScryptProviders.select(ScryptProviders.getBuiltInProviders(), null);
+        assertTrue(ScryptProviders.selfTest(selected));
+        assertNotNull(ScryptProviders.getSelectionReport());
+    }
+
+    /**
+     * Without a benchmark, the first working provider is used even if a later
+     * one is faster.
+     */
+    @Test
+    public void shouldSelectFirstWorkingProvider() {
+        final ScryptProvider selected = ScryptProviders.select(Arrays.asList(BROKEN_PROVIDER,
+            new BouncyCastleScryptProvider(), new JavaScryptProvider()), null);
+        assertEquals(BouncyCastleScryptProvider.NAME, selected.getName());
+    }
+
+    @Test
+    public void shouldSelectFastestWorkingProvider() {
+        final ScryptProvider selected = ScryptProviders.selectFastest(Arrays.asList(BROKEN_PROVIDER,
+            new JavaScryptProvider(), new BouncyCastleScryptProvider()));
+        assertTrue(ScryptProviders.selfTest(selected));
+        assertTrue(ScryptProviders.getSelectionReport().contains(BouncyCastleScryptProvider.NAME + "="));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldFailWithoutWorkingProvider() {
+        ScryptProviders.select(Collections.singletonList(BROKEN_PROVIDER), null);
+    }
+}
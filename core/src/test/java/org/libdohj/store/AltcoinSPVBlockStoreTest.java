@@ -0,0 +1,324 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.libdohj.store;
+
+import org.bitcoinj.core.AltcoinBlock;
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.StoredBlock;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.Util;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.libdohj.params.DogecoinMainNetParams;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class AltcoinSPVBlockStoreTest {
+    private static final NetworkParameters params = DogecoinMainNetParams.get();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        Context context = new Context(params);
+        file = new File(folder.getRoot(), "spvchain");
+    }
+
+    /**
+     * Build a chain of headers following the given block. The headers are not
+     * valid blocks, but are enough to exercise the store.
+     */
+    private static List<StoredBlock> buildChain(final StoredBlock start, final int count) {
+        final List<StoredBlock> chain = new ArrayList<>();
+        StoredBlock prev = start;
+        for (int i = 0; i < count; i++) {
+            final Block header = new AltcoinBlock(params, 1, prev.getHeader().getHash(), Sha256Hash.ZERO_HASH,
+                prev.getHeader().getTimeSeconds() + 60, prev.getHeader().getDifficultyTarget(), i,
+                Collections.<Transaction>emptyList());
+            prev = new StoredBlock(header, prev.getChainWork().add(BigInteger.ONE), prev.getHeight() + 1);
+            chain.add(prev);
+        }
+        return chain;
+    }
+
+    private AltcoinBlock loadAuxPoWBlock() throws Exception {
+        return loadAuxPoWBlock("dogecoin_block371337.bin");
+    }
+
+    private AltcoinBlock loadAuxPoWBlock(final String name) throws Exception {
+        final byte[] payload = Util.getBytes(getClass().getResourceAsStream("/org/bitcoinj/core/" + name));
+        return (AltcoinBlock) params.getDefaultSerializer().makeBlock(payload);
+    }
+
+    @Test
+    public void shouldPersistAcrossReopen() throws Exception {
+        final List<StoredBlock> chain;
+        AltcoinSPVBlockStore store = new AltcoinSPVBlockStore(params, file, 100, 10);
+        try {
+            assertEquals(params.getGenesisBlock().getHash(), store.getChainHead().getHeader().getHash());
+            chain = buildChain(store.getChainHead(), 20);
+            for (StoredBlock block : chain) {
+                store.put(block);
+            }
+            store.setChainHead(chain.get(chain.size() - 1));
+        } finally {
+            store.close();
+        }
+
+        store = new AltcoinSPVBlockStore(params, file, 100, 10);
+        try {
+            assertEquals(chain.get(chain.size() - 1), store.getChainHead());
+            for (StoredBlock block : chain) {
+                final StoredBlock stored = store.get(block.getHeader().getHash());
+                assertEquals(block, stored);
+                assertEquals(block.getChainWork(), stored.getChainWork());
+            }
+            assertNotNull(store.get(params.getGenesisBlock().getHash()));
+            assertNull(store.get(Sha256Hash.ZERO_HASH));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void shouldRetainAuxPoW() throws Exception {
+        final AltcoinBlock block = loadAuxPoWBlock();
+        final byte[] auxpow = block.getAuxPoWBytes();
+        assertNotNull(auxpow);
+        final StoredBlock stored = new StoredBlock(block.cloneAsHeader(), BigInteger.TEN, 371337);
+        AltcoinSPVBlockStore store = new AltcoinSPVBlockStore(params, file, 100, 10);
+        try {
+            store.put(stored);
+            store.setChainHead(stored);
+            assertEquals(block.getHash(), store.getChainHead().getHeader().getHash());
+        } finally {
+            store.close();
+        }
+
+        store = new AltcoinSPVBlockStore(params, file, 100, 10);
+        try {
+            final AltcoinBlock header = (AltcoinBlock) store.getChainHead().getHeader();
+            assertEquals(block.getHash(), header.getHash());
+            assertArrayEquals(auxpow, header.getAuxPoWBytes());
+            header.verifyProofOfWork();
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void shouldDropAuxPoWBelowRetention() throws Exception {
+        final AltcoinBlock block = loadAuxPoWBlock();
+        final StoredBlock stored = new StoredBlock(block.cloneAsHeader(), BigInteger.TEN, 371337);
+        final AltcoinSPVBlockStore store = new AltcoinSPVBlockStore(params, file, 100, 10);
+        try {
+            store.put(stored);
+            final List<StoredBlock> chain = buildChain(stored, 10);
+            store.putAll(chain);
+            store.setChainHead(chain.get(8));
+            assertTrue(((AltcoinBlock) store.get(block.getHash()).getHeader()).hasAuxPoW());
+
+            store.setChainHead(chain.get(9));
+            final AltcoinBlock header = (AltcoinBlock) store.get(block.getHash()).getHeader();
+            assertFalse(header.hasAuxPoW());
+            assertEquals(block.getHash(), header.getHash());
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void shouldDropAuxPoWWhenArenaWraps() throws Exception {
+        final AltcoinBlock first = loadAuxPoWBlock("dogecoin_block371337.bin");
+        final AltcoinBlock second = loadAuxPoWBlock("dogecoin_block748634.bin");
+        final int arenaSize = Math.max(first.getAuxPoWBytes().length, second.getAuxPoWBytes().length) + 10;
+        final AltcoinSPVBlockStore store = new AltcoinSPVBlockStore(params, file, 100, 10, arenaSize);
+        try {
+            final StoredBlock firstStored = new StoredBlock(first.cloneAsHeader(), BigInteger.TEN, 371337);
+            store.put(firstStored);
+            store.setChainHead(firstStored);
+            assertTrue(((AltcoinBlock) store.get(first.getHash()).getHeader()).hasAuxPoW());
+
+            // The second AuxPoW header overwrites the start of the first
+            store.put(new StoredBlock(second.cloneAsHeader(), BigInteger.TEN, 371338));
+            final AltcoinBlock header = (AltcoinBlock) store.get(first.getHash()).getHeader();
+            assertFalse(header.hasAuxPoW());
+            assertEquals(first.getHash(), header.getHash());
+            assertArrayEquals(second.getAuxPoWBytes(),
+                ((AltcoinBlock) store.get(second.getHash()).getHeader()).getAuxPoWBytes());
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void shouldNotRewriteAuxPoWOnRepeatedPut() throws Exception {
+        final AltcoinBlock first = loadAuxPoWBlock("dogecoin_block371337.bin");
+        final AltcoinBlock second = loadAuxPoWBlock("dogecoin_block748634.bin");
+        final int arenaSize = first.getAuxPoWBytes().length + second.getAuxPoWBytes().length;
+        final AltcoinSPVBlockStore store = new AltcoinSPVBlockStore(params, file, 100, 10, arenaSize);
+        try {
+            final StoredBlock firstStored = new StoredBlock(first.cloneAsHeader(), BigInteger.TEN, 371337);
+            final StoredBlock secondStored = new StoredBlock(second.cloneAsHeader(), BigInteger.TEN, 371338);
+            store.put(firstStored);
+            store.put(secondStored);
+            store.setChainHead(secondStored);
+            // Storing the second block again, as a reorg back to it would, must not push out the first
+            store.put(secondStored);
+            assertArrayEquals(first.getAuxPoWBytes(),
+                ((AltcoinBlock) store.get(first.getHash()).getHeader()).getAuxPoWBytes());
+            assertArrayEquals(second.getAuxPoWBytes(),
+                ((AltcoinBlock) store.get(second.getHash()).getHeader()).getAuxPoWBytes());
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectRetentionTooLargeForArena() throws Exception {
+        new AltcoinSPVBlockStore(params, file, 100, Integer.MAX_VALUE / AltcoinSPVBlockStore.DEFAULT_AUXPOW_SIZE + 1);
+    }
+
+    @Test
+    public void shouldApplyRetentionAfterReopen() throws Exception {
+        final AltcoinBlock block = loadAuxPoWBlock();
+        AltcoinSPVBlockStore store = new AltcoinSPVBlockStore(params, file, 100, 10);
+        try {
+            final List<StoredBlock> chain = buildChain(new StoredBlock(params.getGenesisBlock(), BigInteger.ONE, 1000), 1);
+            store.put(chain.get(0));
+            store.setChainHead(chain.get(0));
+        } finally {
+            store.close();
+        }
+
+        store = new AltcoinSPVBlockStore(params, file, 100, 10);
+        try {
+            // Far below the chain head loaded from disk, so the AuxPoW header is not stored
+            final StoredBlock stored = new StoredBlock(block.cloneAsHeader(), BigInteger.TEN, 5);
+            store.put(stored);
+            store.setChainHead(stored);
+            final AltcoinBlock header = (AltcoinBlock) store.get(block.getHash()).getHeader();
+            assertFalse(header.hasAuxPoW());
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void shouldDropDamagedAuxPoW() throws Exception {
+        final AltcoinBlock block = loadAuxPoWBlock();
+        final StoredBlock stored = new StoredBlock(block.cloneAsHeader(), BigInteger.TEN, 371337);
+        AltcoinSPVBlockStore store = new AltcoinSPVBlockStore(params, file, 100, 10);
+        try {
+            store.put(stored);
+            store.setChainHead(stored);
+        } finally {
+            store.close();
+        }
+
+        // Flip a byte in the coinbase transaction script, which still parses
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            final long position = AltcoinSPVBlockStore.FILE_PROLOGUE_BYTES
+                + 100L * AltcoinSPVBlockStore.RECORD_SIZE + 50;
+            raf.seek(position);
+            final int value = raf.read();
+            raf.seek(position);
+            raf.write(value ^ 0xff);
+        } finally {
+            raf.close();
+        }
+
+        store = new AltcoinSPVBlockStore(params, file, 100, 10);
+        try {
+            final AltcoinBlock header = (AltcoinBlock) store.getChainHead().getHeader();
+            assertFalse(header.hasAuxPoW());
+            assertEquals(block.getHash(), header.getHash());
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void shouldEvictOldestWhenFull() throws Exception {
+        final AltcoinSPVBlockStore store = new AltcoinSPVBlockStore(params, file, 4, 0);
+        try {
+            final List<StoredBlock> chain = buildChain(store.getChainHead(), 10);
+            for (StoredBlock block : chain) {
+                store.put(block);
+            }
+            assertNull(store.get(params.getGenesisBlock().getHash()));
+            for (int i = 0; i < chain.size(); i++) {
+                final StoredBlock stored = store.get(chain.get(i).getHeader().getHash());
+                if (i < 6) {
+                    assertNull(stored);
+                } else {
+                    assertEquals(chain.get(i), stored);
+                }
+            }
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void shouldLoadInBulk() throws Exception {
+        final List<StoredBlock> chain;
+        AltcoinSPVBlockStore store = new AltcoinSPVBlockStore(params, file, 1000, 0);
+        try {
+            chain = buildChain(store.getChainHead(), 500);
+            store.putAll(chain);
+            store.setChainHead(chain.get(chain.size() - 1));
+            store.flush();
+        } finally {
+            store.close();
+        }
+
+        store = new AltcoinSPVBlockStore(params, file, 1000, 0);
+        try {
+            for (StoredBlock block : chain) {
+                assertEquals(block, store.get(block.getHeader().getHash()));
+            }
+            // Writing continues from where the batch left off
+            final List<StoredBlock> next = buildChain(store.getChainHead(), 1);
+            store.put(next.get(0));
+            assertEquals(next.get(0), store.get(next.get(0).getHeader().getHash()));
+            assertEquals(chain.get(0), store.get(chain.get(0).getHeader().getHash()));
+        } finally {
+            store.close();
+        }
+    }
+}
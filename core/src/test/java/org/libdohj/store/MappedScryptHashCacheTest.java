@@ -0,0 +1,143 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.libdohj.store;
+
+import org.bitcoinj.core.AltcoinBlock;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Util;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.libdohj.params.LitecoinMainNetParams;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class MappedScryptHashCacheTest {
+    private static final NetworkParameters params = LitecoinMainNetParams.get();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        Context context = new Context(params);
+        file = new File(folder.getRoot(), "scrypt.cache");
+    }
+
+    private static Sha256Hash hash(final int value) {
+        return Sha256Hash.of(new byte[] {(byte) (value >> 8), (byte) value});
+    }
+
+    @Test
+    public void shouldPersistAcrossReopen() throws Exception {
+        try (MappedScryptHashCache cache = new MappedScryptHashCache(file, 100)) {
+            for (int i = 0; i < 50; i++) {
+                cache.put(hash(i), hash(i + 1000));
+            }
+            assertEquals(50, cache.size());
+        }
+        try (MappedScryptHashCache cache = new MappedScryptHashCache(file, 100)) {
+            assertEquals(50, cache.size());
+            for (int i = 0; i < 50; i++) {
+                assertEquals(hash(i + 1000), cache.get(hash(i)));
+            }
+            assertNull(cache.get(hash(51)));
+            assertEquals(50, cache.getHitCount());
+            assertEquals(1, cache.getMissCount());
+        }
+    }
+
+    @Test
+    public void shouldEvictUnreferencedEntries() throws Exception {
+        try (MappedScryptHashCache cache = new MappedScryptHashCache(file, 4)) {
+            for (int i = 0; i < 4; i++) {
+                cache.put(hash(i), hash(i + 1000));
+            }
+            // Give entry 0 a second chance, so entry 1 is evicted instead
+            assertEquals(hash(1000), cache.get(hash(0)));
+            cache.put(hash(4), hash(1004));
+            assertEquals(4, cache.size());
+            assertEquals(hash(1000), cache.get(hash(0)));
+            assertNull(cache.get(hash(1)));
+            assertEquals(hash(1004), cache.get(hash(4)));
+
+            // Churn through enough entries to check the index stays consistent
+            for (int i = 5; i < 500; i++) {
+                cache.put(hash(i), hash(i + 1000));
+                assertEquals(hash(i + 1000), cache.get(hash(i)));
+            }
+            assertEquals(4, cache.size());
+        }
+    }
+
+    @Test
+    public void shouldDropTornRecords() throws Exception {
+        try (MappedScryptHashCache cache = new MappedScryptHashCache(file, 10)) {
+            cache.put(hash(1), hash(1001));
+            cache.put(hash(2), hash(1002));
+        }
+        // Corrupt the scrypt hash in the second record
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            final long offset = file.length() - 9 * MappedScryptHashCache.RECORD_SIZE + 40;
+            raf.seek(offset);
+            final int value = raf.read();
+            raf.seek(offset);
+            raf.write(value ^ 0xff);
+        }
+        try (MappedScryptHashCache cache = new MappedScryptHashCache(file, 10)) {
+            assertEquals(1, cache.size());
+            assertEquals(hash(1001), cache.get(hash(1)));
+            assertNull(cache.get(hash(2)));
+        }
+    }
+
+    @Test
+    public void shouldDiscardCacheWithDifferentCapacity() throws Exception {
+        try (MappedScryptHashCache cache = new MappedScryptHashCache(file, 10)) {
+            cache.put(hash(1), hash(1001));
+        }
+        try (MappedScryptHashCache cache = new MappedScryptHashCache(file, 20)) {
+            assertEquals(0, cache.size());
+        }
+    }
+
+    @Test
+    public void shouldBeConsultedByBlocks() throws Exception {
+        final byte[] payload = Util.getBytes(getClass().getResourceAsStream("/org/bitcoinj/core/litecoin_block1.bin"));
+        try (MappedScryptHashCache cache = new MappedScryptHashCache(file, 10)) {
+            AltcoinBlock.setScryptHashCache(cache);
+            final AltcoinBlock block = (AltcoinBlock) params.getDefaultSerializer().makeBlock(payload);
+            final Sha256Hash expected = block.getScryptHash();
+            assertEquals(expected, cache.get(block.getHash()));
+
+            // A fresh copy of the block should take its hash from the cache
+            final AltcoinBlock copy = (AltcoinBlock) params.getDefaultSerializer().makeBlock(payload);
+            assertEquals(expected, copy.getScryptHash());
+            assertEquals(2, cache.getHitCount());
+        } finally {
+            AltcoinBlock.setScryptHashCache(null);
+        }
+    }
+}